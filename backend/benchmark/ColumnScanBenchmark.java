@@ -0,0 +1,162 @@
+package benchmark;
+
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 列存储扫描基准测试
+ * 比较逐个访问商品对象（按行）和扫描 ProductColumns 的基本类型数组（按列）两种方式
+ * 计算库存估值、低库存商品数、低库存商品列表和按类别汇总的耗时，并比较两种方式的内存占用。
+ *
+ * 按行扫描按随机顺序访问商品对象，与遍历 ConcurrentHashMap 时访问顺序和对象在堆上的位置无关的情况一致。
+ * 内存占用为构建前后的已用堆之差（构建后做GC），商品对象包括ID和名称字符串。
+ *
+ * 运行方式：java -Xmx4g benchmark.ColumnScanBenchmark [商品数，默认10000000] [每个用例的秒数，默认3]
+ */
+public class ColumnScanBenchmark {
+    private static final String[] CATEGORIES = {"电子产品", "办公用品", "家具", "食品饮料", "日用百货"};
+    private static final String[] NAMES = {"无线鼠标", "机械键盘", "办公椅", "打印纸", "保温杯", "台灯", "收纳箱", "显示器"};
+    private static final int THRESHOLD = 10;
+    private static final int LIMIT = 100;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+
+        long before = usedHeap();
+        Product[] products = new Product[size];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++) {
+            products[i] = new Product(String.format("P%08d", i), NAMES[i % NAMES.length] + " " + i,
+                    1 + random.nextInt(100000) / 100.0, random.nextInt(1000), CATEGORIES[i % CATEGORIES.length]);
+        }
+        long rowBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ProductColumns columns = new ProductColumns();
+        for (Product product : products) {
+            columns.productAdded(product, product.getQuantity());
+        }
+        long columnBytes = usedHeap() - before;
+
+        // 打乱访问顺序
+        Product[] rows = products.clone();
+        for (int i = rows.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Product tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+
+        System.out.printf("商品数: %d%n", size);
+        System.out.printf("内存占用: 商品对象(含ID和名称) %.1f MB，%.1f 字节/商品；列存储 %.1f MB，%.1f 字节/商品（数组容量 %.1f MB）%n",
+                rowBytes / 1e6, rowBytes / (double) size, columnBytes / 1e6, columnBytes / (double) size,
+                columns.memoryBytes() / 1e6);
+        check(rows, columns);
+
+        System.out.println("用例\t按行(ms/次)\t按列(ms/次)\t加速比");
+        compare("库存估值", seconds, () -> rowValueCents(rows), columns::totalValueCents);
+        compare("低库存商品数", seconds, () -> rowCountBelow(rows, THRESHOLD), () -> columns.countBelow(THRESHOLD));
+        compare("低库存商品(前100)", seconds, () -> rowFindBelow(rows, THRESHOLD, LIMIT).size(),
+                () -> columns.findBelow(THRESHOLD, LIMIT).size());
+        compare("按类别汇总", seconds, () -> rowCategoryTotals(rows).size(), () -> columns.categoryTotals().size());
+    }
+
+    private static void compare(String name, double seconds, Scan rowScan, Scan columnScan) {
+        double row = measure(rowScan, seconds);
+        double column = measure(columnScan, seconds);
+        System.out.printf("%s\t%.2f\t%.2f\t%.1fx%n", name, row, column, row / column);
+    }
+
+    /**
+     * 先预热1/3的时间，再测量平均每次的毫秒数
+     */
+    private static double measure(Scan scan, double seconds) {
+        long warmupEnd = System.nanoTime() + (long) (seconds / 3 * 1e9);
+        while (System.nanoTime() < warmupEnd) {
+            sink += scan.run();
+        }
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        int runs = 0;
+        do {
+            sink += scan.run();
+            runs++;
+        } while (System.nanoTime() < end);
+        return (System.nanoTime() - start) / 1e6 / runs;
+    }
+
+    /**
+     * 两种方式的结果应一致
+     */
+    private static void check(Product[] rows, ProductColumns columns) {
+        boolean same = rowValueCents(rows) == columns.totalValueCents()
+                && rowCountBelow(rows, THRESHOLD) == columns.countBelow(THRESHOLD);
+        List<Product> expected = rowFindBelow(rows, THRESHOLD, LIMIT);
+        List<Product> actual = columns.findBelow(THRESHOLD, LIMIT);
+        same &= expected.equals(actual);
+        Map<String, long[]> totals = rowCategoryTotals(rows);
+        for (ProductColumns.CategoryTotals category : columns.categoryTotals()) {
+            long[] expectedTotals = totals.get(category.getCategory());
+            same &= expectedTotals != null && expectedTotals[0] == category.getProductCount()
+                    && expectedTotals[1] == category.getValueCents();
+        }
+        if (!same) {
+            throw new IllegalStateException("按行和按列的扫描结果不一致");
+        }
+    }
+
+    private static long rowValueCents(Product[] rows) {
+        long total = 0;
+        for (Product product : rows) {
+            total += Math.round(product.getPrice() * 100) * product.getQuantity();
+        }
+        return total;
+    }
+
+    private static long rowCountBelow(Product[] rows, int threshold) {
+        int count = 0;
+        for (Product product : rows) {
+            if (product.getQuantity() < threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<Product> rowFindBelow(Product[] rows, int threshold, int limit) {
+        List<Product> matched = new ArrayList<>();
+        for (Product product : rows) {
+            if (product.getQuantity() < threshold) {
+                matched.add(product);
+            }
+        }
+        matched.sort(Comparator.comparingInt(Product::getQuantity).thenComparing(Product::getId));
+        return new ArrayList<>(matched.subList(0, Math.min(limit, matched.size())));
+    }
+
+    private static Map<String, long[]> rowCategoryTotals(Product[] rows) {
+        Map<String, long[]> totals = new HashMap<>();
+        for (Product product : rows) {
+            long[] category = totals.computeIfAbsent(product.getCategory(), key -> new long[2]);
+            category[0]++;
+            category[1] += Math.round(product.getPrice() * 100) * product.getQuantity();
+        }
+        return totals;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Scan {
+        long run();
+    }
+}
@@ -0,0 +1,105 @@
+package benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import controller.ProductController;
+import controller.ResponseCompression;
+import dao.ProductDao;
+import model.Product;
+import service.ProductService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 响应压缩基准测试
+ * 通过HTTP获取完整商品列表，分别不压缩、gzip、deflate，输出每次请求传输的字节数、耗时
+ * 和服务端统计的压缩CPU时间（压缩级别通过 -Dinventory.http.compressLevel 指定）。
+ *
+ * 运行方式：java benchmark.CompressionBenchmark [商品数] [请求次数]
+ */
+public class CompressionBenchmark {
+    private static final String[] CATEGORIES = {"电子产品", "办公用品", "家具", "食品饮料", "日用百货"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        ProductService productService = new ProductService(new ProductDao());
+        for (int i = 0; i < count; i++) {
+            productService.addProduct(new Product(String.format("P%06d", i), "商品" + i,
+                    (i % 1000) + 0.99, i % 500, CATEGORIES[i % CATEGORIES.length]));
+        }
+        ProductController productController = new ProductController(productService);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/products", productController::handleProducts);
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/products";
+
+        System.out.println("商品数: " + count + "，压缩级别: " + ResponseCompression.LEVEL);
+        System.out.println("编码\t传输(字节/次)\t解压后(字节)\t耗时(ms/次)\t压缩CPU(ms/次)");
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            run(report, url, "identity", requests);
+            run(report, url, "gzip", requests);
+            run(report, url, "deflate", requests);
+        }
+        server.stop(0);
+    }
+
+    private static void run(boolean report, String url, String encoding, int requests) throws IOException {
+        long cpuBefore = ResponseCompression.getCompressNanos();
+        long transferred = 0;
+        long decoded = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestProperty("Accept-Encoding", encoding);
+            CountingInputStream raw = new CountingInputStream(connection.getInputStream());
+            String contentEncoding = connection.getHeaderField("Content-Encoding");
+            InputStream in = "gzip".equals(contentEncoding) ? new GZIPInputStream(raw)
+                    : "deflate".equals(contentEncoding) ? new InflaterInputStream(raw) : raw;
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                decoded += n;
+            }
+            in.close();
+            transferred += raw.count;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        if (report) {
+            System.out.printf("%s\t%d\t%d\t%.2f\t%.2f%n", encoding, transferred / requests, decoded / requests,
+                    elapsed / requests, (ResponseCompression.getCompressNanos() - cpuBefore) / 1e6 / requests);
+        }
+    }
+
+    private static class CountingInputStream extends java.io.FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package benchmark;
+
+import dao.ProductDao;
+import dao.UserDao;
+import model.Product;
+import service.AuthService;
+import service.ProductService;
+import util.JsonUtil;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热点路径基准测试套件
+ * 对不同的商品数量和线程数，测量DAO查询、统计、JSON序列化/解析和token验证的每次耗时和分配字节数，
+ * 观察各实现随商品数量增长的变化；可以把结果保存为CSV，并与之前保存的基线比较，耗时超出容差时以非0状态退出。
+ *
+ * 每个用例先预热，再在固定时间内由多个线程循环调用，返回值写入各线程的字段，防止被JIT消除。
+ *
+ * 运行方式：java -Xmx8g benchmark.HotPathBenchmark [选项]
+ *   --sizes 1000,10000,100000,1000000   商品数量（10000000需要较大的堆）
+ *   --threads 1,4                        线程数
+ *   --warmup 1 --time 2                  每个用例的预热/测量秒数
+ *   --filter json                        只运行名称包含该字符串的用例
+ *   --csv 结果.csv                       保存结果
+ *   --baseline 基线.csv --tolerance 0.2  与基线比较（耗时超过基线20%视为退化）
+ */
+public class HotPathBenchmark {
+    private static final String[] CATEGORIES = {"电子产品", "办公用品", "家具", "食品饮料", "日用百货"};
+    private static final String[] NAMES = {"无线鼠标", "机械键盘", "办公椅", "打印纸", "保温杯", "台灯", "收纳箱", "显示器"};
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_SESSIONS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int[] sizes = parseInts(options.getOrDefault("sizes", "1000,10000,100000,1000000"));
+        int[] threadCounts = parseInts(options.getOrDefault("threads", "1," + Runtime.getRuntime().availableProcessors()));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "1"));
+        double time = Double.parseDouble(options.getOrDefault("time", "2"));
+        String filter = options.get("filter");
+
+        List<Result> results = new ArrayList<>();
+        System.out.println("用例\t商品数\t线程数\t耗时(ns/次)\t吞吐量(次/s)\t分配(字节/次)");
+        for (int size : sizes) {
+            Catalog catalog = new Catalog(size);
+            for (Case benchmarkCase : catalog.cases()) {
+                if (filter != null && !benchmarkCase.name.contains(filter)) {
+                    continue;
+                }
+                for (int threads : Arrays.stream(threadCounts).distinct().toArray()) {
+                    run(benchmarkCase, threads, warmup);
+                    Result result = run(benchmarkCase, threads, time);
+                    result.size = size;
+                    results.add(result);
+                    System.out.printf("%s\t%d\t%d\t%.1f\t%.0f\t%d%n", result.name, size, threads,
+                            result.nanosPerOp, result.opsPerSecond, result.bytesPerOp);
+                }
+            }
+            catalog.close();
+        }
+
+        if (options.containsKey("csv")) {
+            writeCsv(new File(options.get("csv")), results);
+        }
+        if (options.containsKey("baseline")) {
+            double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.2"));
+            if (!compare(new File(options.get("baseline")), results, tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * 测试数据：商品、服务和token
+     */
+    private static class Catalog {
+        final int size;
+        final ProductDao productDao = new ProductDao();
+        final ProductService productService = new ProductService(productDao);
+        final AuthService sessionAuth;
+        final AuthService signedAuth;
+        final String[] sessionTokens;
+        final String[] signedTokens;
+        final List<Product> page;
+        final byte[] productBody;
+
+        Catalog(int size) {
+            this.size = size;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < size; i++) {
+                productService.addProduct(new Product(String.format("P%08d", i),
+                        NAMES[i % NAMES.length] + " " + i, 1 + random.nextInt(100000) / 100.0,
+                        random.nextInt(1000), CATEGORIES[i % CATEGORIES.length]));
+            }
+            page = productService.getAllProducts(null, PAGE_SIZE);
+            productBody = ("{\"id\":\"P00000001\",\"name\":\"无线鼠标 静音版\",\"price\":129.9,"
+                    + "\"quantity\":300,\"category\":\"电子产品\"}").getBytes(StandardCharsets.UTF_8);
+
+            // 会话数与商品数相同（最多100万）
+            sessionAuth = new AuthService(new UserDao());
+            signedAuth = new AuthService(new UserDao(), 24 * 60 * 60 * 1000L,
+                    "benchmark-signing-key-0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+            int sessions = Math.min(size, MAX_SESSIONS);
+            sessionTokens = new String[sessions];
+            for (int i = 0; i < sessions; i++) {
+                sessionTokens[i] = sessionAuth.login("admin", "admin123");
+            }
+            signedTokens = new String[Math.min(sessions, 1024)];
+            for (int i = 0; i < signedTokens.length; i++) {
+                signedTokens[i] = signedAuth.login("admin", "admin123");
+            }
+        }
+
+        List<Case> cases() {
+            List<Case> cases = new ArrayList<>();
+            // 名称中包含编号的查询只命中少量商品；按名称词查询命中1/8的商品（取前一页）
+            cases.add(new Case("dao.findProductsByName(编号)",
+                    random -> productDao.findProductsByName(" " + random.nextInt(size))));
+            cases.add(new Case("dao.findProductsByName(名称词,分页)",
+                    random -> productDao.findProductsByName(NAMES[random.nextInt(NAMES.length)], null, PAGE_SIZE)));
+            cases.add(new Case("service.getTotalInventoryValue",
+                    random -> productService.getTotalInventoryValue()));
+            cases.add(new Case("service.getLowStockProducts(10,100)",
+                    random -> productService.getLowStockProducts(10, PAGE_SIZE)));
+            cases.add(new Case("json.toJson(100个商品)",
+                    random -> JsonUtil.toJson(page)));
+            cases.add(new Case("json.fromJson(商品)",
+                    random -> JsonUtil.fromJson(productBody, 0, productBody.length, Product.class)));
+            cases.add(new Case("auth.validateToken(会话)",
+                    random -> sessionAuth.validateToken(sessionTokens[random.nextInt(sessionTokens.length)])));
+            cases.add(new Case("auth.validateToken(签名)",
+                    random -> signedAuth.validateToken(signedTokens[random.nextInt(signedTokens.length)])));
+            return cases;
+        }
+
+        void close() {
+            sessionAuth.close();
+            signedAuth.close();
+        }
+    }
+
+    /**
+     * 在指定时间内用多个线程循环执行用例
+     */
+    private static Result run(Case benchmarkCase, int threads, double seconds) throws InterruptedException {
+        Worker[] workers = new Worker[threads];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(benchmarkCase, ready, start, deadline);
+            workers[t] = worker;
+            worker.start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        deadline[0] = begin + (long) (seconds * 1e9);
+        start.countDown();
+        long operations = 0;
+        long bytes = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            operations += worker.operations;
+            bytes += worker.allocated;
+        }
+        long elapsed = System.nanoTime() - begin;
+        Result result = new Result();
+        result.name = benchmarkCase.name;
+        result.threads = threads;
+        result.opsPerSecond = operations / (elapsed / 1e9);
+        result.nanosPerOp = operations > 0 ? (double) elapsed * threads / operations : 0;
+        result.bytesPerOp = operations > 0 ? bytes / operations : 0;
+        return result;
+    }
+
+    private static class Worker extends Thread {
+        private final Case benchmarkCase;
+        private final CountDownLatch ready;
+        private final CountDownLatch start;
+        private final long[] deadline;
+        long operations;
+        long allocated;
+        Object sink;  // 保存返回值，防止调用被消除
+
+        Worker(Case benchmarkCase, CountDownLatch ready, CountDownLatch start, long[] deadline) {
+            this.benchmarkCase = benchmarkCase;
+            this.ready = ready;
+            this.start = start;
+            this.deadline = deadline;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            ready.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long end = deadline[0];
+            long before = allocatedBytes();
+            long count = 0;
+            // 每64次检查一次时间，减少 nanoTime 的开销
+            do {
+                for (int i = 0; i < 64; i++) {
+                    sink = benchmarkCase.operation.run(random);
+                }
+                count += 64;
+            } while (System.nanoTime() < end);
+            allocated = allocatedBytes() - before;
+            operations = count;
+        }
+    }
+
+    private interface Operation {
+        Object run(ThreadLocalRandom random);
+    }
+
+    private static class Case {
+        final String name;
+        final Operation operation;
+
+        Case(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+    }
+
+    private static class Result {
+        String name;
+        int size;
+        int threads;
+        double nanosPerOp;
+        double opsPerSecond;
+        long bytesPerOp;
+
+        String key() {
+            return name + "," + size + "," + threads;
+        }
+    }
+
+    private static void writeCsv(File file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println("case,size,threads,nanosPerOp,bytesPerOp");
+            for (Result result : results) {
+                out.printf("%s,%.1f,%d%n", result.key(), result.nanosPerOp, result.bytesPerOp);
+            }
+        }
+        System.out.println("结果已保存到 " + file);
+    }
+
+    /**
+     * 与基线比较，输出退化的用例
+     * @return 没有退化时返回true
+     */
+    private static boolean compare(File baseline, List<Result> results, double tolerance) throws IOException {
+        Map<String, Double> base = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(baseline), StandardCharsets.UTF_8))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length >= 4) {
+                    base.put(fields[0] + "," + fields[1] + "," + fields[2], Double.parseDouble(fields[3]));
+                }
+            }
+        }
+        boolean passed = true;
+        System.out.println("与基线比较（容差 " + Math.round(tolerance * 100) + "%）:");
+        for (Result result : results) {
+            Double expected = base.get(result.key());
+            if (expected == null) {
+                continue;
+            }
+            double change = result.nanosPerOp / expected - 1;
+            boolean regressed = change > tolerance;
+            passed &= !regressed;
+            System.out.printf("%s\t%s\t%.1f -> %.1f ns\t%+.0f%%%n", regressed ? "退化" : "正常", result.key(),
+                    expected, result.nanosPerOp, change * 100);
+        }
+        return passed;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("无效的选项: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static int[] parseInts(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+}
@@ -0,0 +1,351 @@
+package benchmark;
+
+import config.ApiServer;
+import config.ServerExecutors;
+import controller.AuthController;
+import controller.ProductController;
+import controller.StaticFileController;
+import dao.ProductDao;
+import dao.UserDao;
+import model.Product;
+import service.AuthService;
+import service.ProductService;
+import util.LatencyHistogram;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * HTTP引擎基准测试：内置HttpServer 与 NioHttpServer
+ * 在本进程内分别用两种引擎启动 ApiServer（相同的路由和处理函数），客户端用一个Selector线程维持大量保持连接，
+ * 每个连接循环发送商品查询（GET /api/product，经过token验证），收到全部响应后再发送下一批；
+ * 管线深度大于1时每批连续发送多个请求、不等待响应（HTTP/1.1管线化）。
+ * 输出每种引擎在各个连接数下的吞吐量、p50/p99延迟（从一批请求发出到收到该请求的响应）、
+ * 错误数（非200响应和连接断开时未完成的请求）和服务器主动断开连接的次数（断开后客户端重新连接）。
+ *
+ * 运行方式：java benchmark.HttpEngineBenchmark [连接数列表，如100,1000,5000] [每轮秒数] [管线深度] [处理线程数]
+ * 连接数较大时需要足够的文件描述符（客户端和服务器各占一个，ulimit -n）
+ */
+public class HttpEngineBenchmark {
+    private static final int PRODUCTS = 10_000;
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long CONNECT_TIMEOUT_NANOS = 30_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        String[] connectionCounts = (args.length > 0 ? args[0] : "100,1000,5000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        ProductService productService = new ProductService(new ProductDao());
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.addProduct(new Product("E" + i, "商品" + i, 10.0, 1000, "基准测试"));
+        }
+        AuthService authService = new AuthService(new UserDao());
+
+        System.out.println("每轮: " + seconds + "秒，管线深度: " + depth + "，处理线程数: " + threads
+                + "，CPU核数: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("引擎\t连接数\t吞吐量(req/s)\tp50(ms)\tp99(ms)\t错误数\t服务器断开次数\t线程数");
+        for (String count : connectionCounts) {
+            int connections = Integer.parseInt(count.trim());
+            for (String engine : new String[] {ApiServer.ENGINE_BUILTIN, ApiServer.ENGINE_NIO}) {
+                runRound(engine, productService, authService, connections, seconds, depth, threads);
+            }
+        }
+    }
+
+    /**
+     * 用指定引擎启动服务器并执行一轮测试
+     */
+    private static void runRound(String engine, ProductService productService, AuthService authService,
+                                 int connections, int seconds, int depth, int threads) throws Exception {
+        ApiServer server = new ApiServer(new ProductController(productService), new AuthController(authService),
+                new StaticFileController(new File("web"), 0), 0, 4096,
+                ServerExecutors.bounded(threads, Math.max(1000, connections * depth)));
+        server.setEngine(engine);
+        server.start();
+        try {
+            Round round = new Round(new InetSocketAddress("127.0.0.1", server.getPort()),
+                    login(server.getPort()), connections, depth);
+            round.run(seconds);
+            System.out.printf("%s\t%d\t%.0f\t%.2f\t%.2f\t%d\t%d\t%d%n", engine, connections,
+                    round.latency.getCount() / (double) seconds, round.latency.valueAtPercentile(50) / 1e6,
+                    round.latency.valueAtPercentile(99) / 1e6, round.errors, round.serverCloses, round.threads);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String login(int port) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                        URI.create("http://127.0.0.1:" + port + "/api/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"admin\",\"password\":\"admin123\"}"))
+                .header("Content-Type", "application/json").build(), HttpResponse.BodyHandlers.ofString());
+        String body = response.body();
+        int start = body.indexOf("\"token\":\"");
+        if (response.statusCode() != 200 || start < 0) {
+            throw new IllegalStateException("登录失败: " + body);
+        }
+        start += 9;
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    /**
+     * 一轮测试的客户端：一个Selector线程驱动所有连接
+     */
+    private static final class Round {
+        final InetSocketAddress address;
+        final String token;
+        final int connections;
+        final int depth;
+        final Selector selector;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long errors;
+        long serverCloses;
+        int threads;
+        private long measureFrom;
+        private long measureUntil;
+
+        Round(InetSocketAddress address, String token, int connections, int depth) throws IOException {
+            this.address = address;
+            this.token = token;
+            this.connections = connections;
+            this.depth = depth;
+            this.selector = Selector.open();
+        }
+
+        void run(int seconds) throws IOException {
+            List<Client> clients = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                Client client = new Client();
+                clients.add(client);
+                connect(client);
+            }
+            // 先建立全部连接再开始计时
+            long connectDeadline = System.nanoTime() + CONNECT_TIMEOUT_NANOS;
+            int connected = 0;
+            while (connected < connections && System.nanoTime() < connectDeadline) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isConnectable() && client.channel.finishConnect()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                            connected++;
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                        key.cancel();
+                        client.channel.close();
+                        connect(client);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            if (connected < connections) {
+                throw new IOException("只建立了 " + connected + "/" + connections + " 个连接");
+            }
+
+            measureFrom = System.nanoTime() + WARMUP_NANOS;
+            measureUntil = measureFrom + seconds * 1_000_000_000L;
+            for (Client client : clients) {
+                send(client);
+            }
+            long threadSampleAt = measureFrom + (measureUntil - measureFrom) / 2;
+            long drainUntil = measureUntil + 2_000_000_000L;
+            while (System.nanoTime() < drainUntil) {
+                selector.select(100);
+                long now = System.nanoTime();
+                if (threads == 0 && now >= threadSampleAt) {
+                    threads = Thread.activeCount();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key, (Client) key.attachment());
+                }
+                selector.selectedKeys().clear();
+                if (now >= measureUntil && allIdle(clients)) {
+                    break;
+                }
+            }
+            for (Client client : clients) {
+                client.channel.close();
+            }
+            selector.close();
+        }
+
+        private boolean allIdle(List<Client> clients) {
+            for (Client client : clients) {
+                if (client.outstanding > 0 && client.channel.isOpen()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void connect(Client client) throws IOException {
+            client.channel = SocketChannel.open();
+            client.channel.configureBlocking(false);
+            client.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            client.channel.connect(address);
+            client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+            client.in.clear();
+            client.outstanding = 0;
+        }
+
+        private void handle(SelectionKey key, Client client) {
+            try {
+                if (key.isConnectable()) {
+                    // 服务器断开后重新建立的连接
+                    if (client.channel.finishConnect()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        send(client);
+                    }
+                    return;
+                }
+                if (key.isWritable()) {
+                    client.channel.write(client.out);
+                    if (!client.out.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                if (key.isReadable()) {
+                    if (client.channel.read(client.in) < 0) {
+                        throw new IOException("服务器关闭了连接");
+                    }
+                    client.in.flip();
+                    long now = System.nanoTime();
+                    int length;
+                    while (client.outstanding > 0 && (length = responseLength(client.in)) > 0) {
+                        if (client.in.get(client.in.position() + 9) != '2') {
+                            errors++;
+                        } else if (client.sentAt >= measureFrom && now <= measureUntil) {
+                            latency.record(now - client.sentAt);
+                        }
+                        client.in.position(client.in.position() + length);
+                        client.outstanding--;
+                    }
+                    client.in.compact();
+                    if (client.outstanding == 0) {
+                        send(client);
+                    }
+                }
+            } catch (IOException e) {
+                serverCloses++;
+                errors += client.outstanding;
+                key.cancel();
+                try {
+                    client.channel.close();
+                    if (System.nanoTime() < measureUntil) {
+                        connect(client);
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * 发送下一批请求（测量结束后不再发送）
+         */
+        private void send(Client client) throws IOException {
+            long now = System.nanoTime();
+            if (now >= measureUntil) {
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            StringBuilder batch = new StringBuilder(depth * 128);
+            for (int i = 0; i < depth; i++) {
+                batch.append("GET /api/product?id=E").append(random.nextInt(PRODUCTS))
+                        .append(" HTTP/1.1\r\nHost: localhost\r\nAuthorization: Bearer ").append(token)
+                        .append("\r\n\r\n");
+            }
+            client.out = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.ISO_8859_1));
+            client.sentAt = now;
+            client.outstanding = depth;
+            client.channel.write(client.out);
+            if (client.out.hasRemaining()) {
+                client.channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private static final class Client {
+        SocketChannel channel;
+        ByteBuffer out;
+        final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        long sentAt;
+        int outstanding;
+    }
+
+    /**
+     * 缓冲区开头的完整响应的长度（支持 Content-Length 和分块传输）
+     * @return 响应还不完整时返回-1
+     */
+    static int responseLength(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int headEnd = indexOf(buffer, start, limit, "\r\n\r\n");
+        if (headEnd < 0) {
+            return -1;
+        }
+        byte[] head = new byte[headEnd - start];
+        buffer.get(start, head);
+        String headers = new String(head, StandardCharsets.ISO_8859_1).toLowerCase();
+        int bodyStart = headEnd + 4;
+        if (headers.contains("\r\ntransfer-encoding: chunked")) {
+            int position = bodyStart;
+            while (true) {
+                int lineEnd = indexOf(buffer, position, limit, "\r\n");
+                if (lineEnd < 0) {
+                    return -1;
+                }
+                int size = 0;
+                for (int i = position; i < lineEnd && buffer.get(i) != ';'; i++) {
+                    size = size * 16 + Character.digit(buffer.get(i), 16);
+                }
+                position = lineEnd + 2;
+                if (size == 0) {
+                    return position + 2 <= limit ? position + 2 - start : -1;
+                }
+                position += size + 2;
+                if (position > limit) {
+                    return -1;
+                }
+            }
+        }
+        int index = headers.indexOf("\r\ncontent-length:");
+        int contentLength = 0;
+        if (index >= 0) {
+            int end = headers.indexOf("\r\n", index + 2);
+            contentLength = Integer.parseInt(headers.substring(index + 17, end < 0 ? headers.length() : end).trim());
+        }
+        int total = bodyStart + contentLength - start;
+        return total <= limit - start ? total : -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int limit, String pattern) {
+        outer:
+        for (int i = from; i + pattern.length() <= limit; i++) {
+            for (int j = 0; j < pattern.length(); j++) {
+                if (buffer.get(i + j) != pattern.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package benchmark;
+
+import dao.ProductDao;
+import dao.ProductJournal;
+import model.Product;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 持久化模式基准测试
+ * 1. 批量装载商品并做一次快照
+ * 2. 从快照恢复，统计恢复耗时
+ * 3. 多线程并发入库/出库（组提交+fsync），统计提交延迟和吞吐量
+ * 4. 从快照+日志尾部恢复，统计恢复耗时
+ *
+ * 运行方式：java benchmark.JournalBenchmark [商品数] [线程数] [秒数] [数据目录]
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File dir = args.length > 3 ? new File(args[3]) : Files.createTempDirectory("journal-bench").toFile();
+        System.out.println("商品数: " + productCount + "，线程数: " + threads + "，数据目录: " + dir);
+
+        // 1. 装载（不fsync）并做快照
+        ProductDao dao = open(dir, false);
+        long begin = System.nanoTime();
+        for (int i = 0; i < productCount; i++) {
+            dao.addProduct(new Product("SKU" + i, "商品" + i, 9.99, 1000, "类别" + (i % 50)));
+        }
+        System.out.printf("装载: %.2f秒%n", seconds(begin));
+        begin = System.nanoTime();
+        dao.checkpoint();
+        System.out.printf("快照: %.2f秒%n", seconds(begin));
+        dao.closePersistence();
+
+        // 2. 仅从快照恢复
+        begin = System.nanoTime();
+        dao = open(dir, true);
+        System.out.printf("恢复（仅快照）: %.2f秒%n", seconds(begin));
+
+        // 3. 并发入库/出库，每次操作都等待落盘
+        long[][] latencies = new long[threads][];
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ProductDao target = dao;
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    String id = "SKU" + random.nextInt(productCount);
+                    long start = System.nanoTime();
+                    if (random.nextBoolean()) {
+                        target.stockIn(id, 1);
+                    } else {
+                        target.stockOut(id, 1);
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, samples.length * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                latencies[index] = Arrays.copyOf(samples, count);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("提交: %,.0f ops/s，延迟 p50=%.2fms p99=%.2fms p999=%.2fms%n",
+                all.length / (double) seconds, percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999));
+        dao.closePersistence();
+
+        // 4. 从快照+日志尾部恢复
+        begin = System.nanoTime();
+        dao = open(dir, true);
+        System.out.printf("恢复（快照+日志）: %.2f秒%n", seconds(begin));
+        dao.closePersistence();
+    }
+
+    private static ProductDao open(File dir, boolean sync) throws IOException {
+        ProductDao dao = new ProductDao();
+        // 基准测试中关闭定时快照，避免干扰测量
+        dao.enablePersistence(new ProductJournal(dir, sync, Long.MAX_VALUE / 1000, Long.MAX_VALUE));
+        return dao;
+    }
+
+    private static double seconds(long begin) {
+        return (System.nanoTime() - begin) / 1e9;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
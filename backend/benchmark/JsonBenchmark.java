@@ -0,0 +1,175 @@
+package benchmark;
+
+import model.Product;
+import util.JsonUtil;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JSON序列化基准测试
+ * 对比商品列表响应的两种生成方式：
+ * 原方式（StringBuilder递归拼接字符串，再 getBytes 复制为字节数组后写出）与
+ * 流式方式（JsonUtil.writeJson 直接编码写入输出流），输出耗时、每次分配的字节数，并校验两者结果一致。
+ *
+ * 运行方式：java benchmark.JsonBenchmark [商品数] [轮数]
+ */
+public class JsonBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Product> products = new ArrayList<>(productCount);
+        Random random = new Random(42);
+        String[] categories = {"电子产品", "家居用品", "食品饮料", "服装鞋帽", "Office \"Supplies\""};
+        for (int i = 0; i < productCount; i++) {
+            double price = (random.nextInt(1_000_000) + 1) / 100.0;
+            products.add(new Product("P" + i, "商品" + i + " Item", price, random.nextInt(10_000),
+                    categories[i % categories.length]));
+        }
+
+        // 校验：两种方式输出的内容一致（较大的数字原方式会写成科学计数法，因此按数值比较数字）
+        CountingStream check = new CountingStream(true);
+        JsonUtil.writeJson(products, check);
+        String streamed = new String(check.bytes(), StandardCharsets.UTF_8);
+        String legacy = legacyToJson(products);
+        System.out.println("商品数: " + productCount + "，响应大小: " + check.count + " 字节（原方式 "
+                + legacy.getBytes(StandardCharsets.UTF_8).length + " 字节），结果一致: " + sameJson(streamed, legacy));
+
+        System.out.println("方式\t平均耗时(ms)\t每次分配(MB)");
+        for (int warmup = 0; warmup < 2; warmup++) {
+            runLegacy(products, rounds, warmup == 1);
+            runStreaming(products, rounds, warmup == 1);
+        }
+    }
+
+    private static void runLegacy(List<Product> products, int rounds, boolean report) throws IOException {
+        CountingStream out = new CountingStream(false);
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            byte[] response = legacyToJson(products).getBytes(StandardCharsets.UTF_8);
+            out.write(response);
+        }
+        report(report, "原方式", start, allocated, rounds);
+    }
+
+    private static void runStreaming(List<Product> products, int rounds, boolean report) throws IOException {
+        CountingStream out = new CountingStream(false);
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            JsonUtil.writeJson(products, out);
+        }
+        report(report, "流式", start, allocated, rounds);
+    }
+
+    private static void report(boolean report, String label, long start, long allocated, int rounds) {
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - allocated;
+        if (report) {
+            System.out.printf("%s\t%.2f\t%.2f%n", label, elapsed / 1e6 / rounds, bytes / 1024.0 / 1024.0 / rounds);
+        }
+    }
+
+    /**
+     * 逐个比较两段JSON的记号，数字按数值比较
+     */
+    private static boolean sameJson(String a, String b) {
+        Pattern token = Pattern.compile("\"(?:\\\\.|[^\"\\\\])*\"|-?[0-9][0-9.eE+-]*|[\\[\\]{}:,]");
+        Matcher ma = token.matcher(a);
+        Matcher mb = token.matcher(b);
+        while (ma.find()) {
+            if (!mb.find()) {
+                return false;
+            }
+            String ta = ma.group();
+            String tb = mb.group();
+            boolean number = ta.charAt(0) == '-' || Character.isDigit(ta.charAt(0));
+            if (number ? Double.parseDouble(ta) != Double.parseDouble(tb) : !ta.equals(tb)) {
+                return false;
+            }
+        }
+        return !mb.find();
+    }
+
+    /**
+     * 当前线程累计分配的字节数（不支持时返回0）
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * 原来的序列化方式（StringBuilder递归拼接）
+     */
+    private static String legacyToJson(Object obj) {
+        if (obj instanceof Product) {
+            Product product = (Product) obj;
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            sb.append("\"id\":").append(legacyToJson(product.getId())).append(",");
+            sb.append("\"name\":").append(legacyToJson(product.getName())).append(",");
+            sb.append("\"price\":").append(product.getPrice()).append(",");
+            sb.append("\"quantity\":").append(product.getQuantity()).append(",");
+            sb.append("\"category\":").append(legacyToJson(product.getCategory())).append(",");
+            sb.append("\"totalValue\":").append(product.getTotalValue());
+            sb.append("}");
+            return sb.toString();
+        }
+        if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            StringBuilder sb = new StringBuilder();
+            sb.append("[");
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) sb.append(",");
+                sb.append(legacyToJson(list.get(i)));
+            }
+            sb.append("]");
+            return sb.toString();
+        }
+        String str = obj.toString();
+        return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * 只计数的输出流（模拟网络连接），需要时保留写入的内容用于校验
+     */
+    private static class CountingStream extends OutputStream {
+        private final java.io.ByteArrayOutputStream copy;
+        private long count;
+
+        CountingStream(boolean keep) {
+            this.copy = keep ? new java.io.ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public void write(int b) {
+            count++;
+            if (copy != null) {
+                copy.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+            if (copy != null) {
+                copy.write(b, off, len);
+            }
+        }
+
+        byte[] bytes() {
+            return copy.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package benchmark;
+
+import model.Product;
+import util.JsonUtil;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 请求体解析基准测试
+ * 对写入类接口（入库/出库、新增商品）的请求体，对比原方式（按行解码为字符串，再按逗号和冒号拆分）
+ * 与字节级单遍解析（JsonUtil.fromJson(InputStream, ...)），输出每次解析的耗时和分配字节数，
+ * 并展示名称中含逗号、引号时两种方式的解析结果。
+ *
+ * 运行方式：java benchmark.JsonParseBenchmark [每轮次数]
+ */
+public class JsonParseBenchmark {
+    private static final String STOCK_BODY = "{\"id\":\"P000123\",\"amount\":25}";
+    private static final String PRODUCT_BODY = "{\"id\":\"P000123\",\"name\":\"无线鼠标, 静音版 \\\"2代\\\"\","
+            + "\"price\":129.9,\"quantity\":300,\"category\":\"电子产品\"}";
+    private static final String PLAIN_PRODUCT_BODY = "{\"id\":\"P000123\",\"name\":\"无线鼠标 静音版 \\\"2代\\\"\","
+            + "\"price\":129.9,\"quantity\":300,\"category\":\"电子产品\"}";
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        Product legacy = legacyParseProduct(legacyReadBody(stream(PRODUCT_BODY)));
+        Product parsed = JsonUtil.fromJson(stream(PRODUCT_BODY), -1, Product.class);
+        System.out.println("请求体: " + PRODUCT_BODY);
+        System.out.println("原方式解析: name=" + legacy.getName() + " price=" + legacy.getPrice()
+                + " category=" + legacy.getCategory());
+        System.out.println("单遍解析:   name=" + parsed.getName() + " price=" + parsed.getPrice()
+                + " category=" + parsed.getCategory());
+
+        byte[] stock = STOCK_BODY.getBytes(StandardCharsets.UTF_8);
+        // 计时使用名称不含逗号的请求体，两种方式的解析结果相同，比较的是同样的工作量
+        byte[] product = PLAIN_PRODUCT_BODY.getBytes(StandardCharsets.UTF_8);
+
+        System.out.println("请求\t方式\t耗时(ns/次)\t分配(字节/次)");
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            run(report, "入库/出库", "原方式", iterations, () -> legacyParseStock(legacyReadBody(new ByteArrayInputStream(stock))));
+            run(report, "入库/出库", "单遍解析", iterations, () -> parseStock(stock));
+            run(report, "新增商品", "原方式", iterations, () -> legacyParseProduct(legacyReadBody(new ByteArrayInputStream(product))));
+            run(report, "新增商品", "单遍解析", iterations, () -> JsonUtil.fromJson(new ByteArrayInputStream(product), product.length, Product.class));
+        }
+    }
+
+    private static Object parseStock(byte[] body) throws IOException {
+        return JsonUtil.fromJson(new ByteArrayInputStream(body), body.length, controller.ProductController.StockOperation.class);
+    }
+
+    private static void run(boolean report, String request, String label, int iterations, Parse parse) throws IOException {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += parse.run() != null ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - allocated;
+        if (report) {
+            System.out.printf("%s\t%s\t%.1f\t%d%n", request, label, (double) elapsed / iterations,
+                    bytes / iterations);
+        }
+        if (sink != iterations) {
+            throw new IllegalStateException("解析失败");
+        }
+    }
+
+    private interface Parse {
+        Object run() throws IOException;
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 当前线程累计分配的字节数（不支持时返回0）
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // ---------- 原来的解析方式 ----------
+
+    private static String legacyReadBody(InputStream is) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static Object legacyParseStock(String json) {
+        Map<String, String> map = legacyParseObject(json.trim());
+        return new Object[] {map.get("id"), Integer.parseInt(map.getOrDefault("amount", "0"))};
+    }
+
+    private static Product legacyParseProduct(String json) {
+        Map<String, String> map = legacyParseObject(json.trim());
+        return new Product(map.get("id"), map.get("name"), Double.parseDouble(map.getOrDefault("price", "0")),
+                Integer.parseInt(map.getOrDefault("quantity", "0")), map.get("category"));
+    }
+
+    private static Map<String, String> legacyParseObject(String json) {
+        Map<String, String> map = new HashMap<>();
+        if (json.startsWith("{") && json.endsWith("}")) {
+            json = json.substring(1, json.length() - 1);
+        }
+        for (String pair : json.split(",")) {
+            String[] keyValue = pair.split(":", 2);
+            if (keyValue.length == 2) {
+                map.put(legacyUnquote(keyValue[0].trim()), legacyUnquote(keyValue[1].trim()));
+            }
+        }
+        return map;
+    }
+
+    private static String legacyUnquote(String str) {
+        str = str.trim();
+        if (str.startsWith("\"") && str.endsWith("\"")) {
+            str = str.substring(1, str.length() - 1);
+        }
+        return str.replace("\\\"", "\"").replace("\\n", "\n").replace("\\r", "\r")
+                .replace("\\t", "\t").replace("\\\\", "\\");
+    }
+}
@@ -0,0 +1,312 @@
+package benchmark;
+
+import config.ApiServer;
+import config.ServerExecutors;
+import controller.AuthController;
+import controller.ProductController;
+import controller.StaticFileController;
+import dao.ProductDao;
+import dao.UserDao;
+import model.Product;
+import service.AuthService;
+import service.ProductService;
+import util.LatencyHistogram;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端HTTP压测
+ * 在本进程内以随机端口启动 ApiServer，通过 /api/login 登录，按配置的比例混合发送
+ * 商品查询、搜索、分页、统计、低库存查询和并发入库/出库请求，按请求类型输出吞吐量、p50/p99/p999延迟和错误数。
+ *
+ * 两种模式：
+ *   闭环（默认）  --connections 个客户端各自循环：收到响应后立即发送下一个请求
+ *   固定速率      --rate 每秒请求数：按计划时间发送，不等待之前的响应；延迟从计划发送时间算起，
+ *                服务器变慢时排队等待的时间也计入延迟（避免协调遗漏）
+ *
+ * 运行方式：java benchmark.LoadGenerator [选项]
+ *   --products 10000 --duration 10 --warmup 2
+ *   --connections 32                     闭环模式的客户端数
+ *   --rate 2000 --maxInFlight 1000       固定速率模式（同时未完成的请求数上限）
+ *   --mix get=30,search=15,page=15,stats=10,lowstock=10,in=10,out=10
+ *   --executor bounded --threads 10 --queue 1000   服务器线程模型（同 inventory.http.*）
+ *   --engine builtin                     HTTP引擎（builtin 或 nio，同 inventory.http.engine）
+ */
+public class LoadGenerator {
+    private static final String[] NAMES = {"无线鼠标", "机械键盘", "办公椅", "打印纸", "保温杯", "台灯", "收纳箱", "显示器"};
+    private static final String[] CATEGORIES = {"电子产品", "办公用品", "家具", "食品饮料", "日用百货"};
+    private static final String DEFAULT_MIX = "get=30,search=15,page=15,stats=10,lowstock=10,in=10,out=10";
+
+    private final int products;
+    private final String baseUrl;
+    private final String token;
+    private final HttpClient client;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private volatile long measureFrom;  // 此时间之前计划发送的请求不计入统计（预热）
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        int products = Integer.parseInt(options.getOrDefault("products", "10000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "10"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+
+        // 启动服务器
+        ProductService productService = new ProductService(new ProductDao());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < products; i++) {
+            productService.addProduct(new Product(productId(i), NAMES[i % NAMES.length] + " " + i,
+                    1 + random.nextInt(100000) / 100.0, 100 + random.nextInt(1000), CATEGORIES[i % CATEGORIES.length]));
+        }
+        AuthService authService = new AuthService(new UserDao());
+        ExecutorService executor = ServerExecutors.create(options.getOrDefault("executor", ServerExecutors.BOUNDED),
+                Integer.parseInt(options.getOrDefault("threads", "10")),
+                Integer.parseInt(options.getOrDefault("queue", "1000")));
+        ApiServer server = new ApiServer(new ProductController(productService), new AuthController(authService),
+                new StaticFileController(new File("web"), 0), 0, 1024, executor);
+        server.setEngine(options.getOrDefault("engine", ApiServer.ENGINE_BUILTIN));
+        server.start();
+
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10)).build();
+            String baseUrl = "http://127.0.0.1:" + server.getPort();
+            LoadGenerator generator = new LoadGenerator(products, baseUrl, login(client, baseUrl), client,
+                    options.getOrDefault("mix", DEFAULT_MIX));
+
+            System.out.println("商品数: " + products + "，预热: " + warmup + "秒，测量: " + duration + "秒，混合比例: "
+                    + options.getOrDefault("mix", DEFAULT_MIX));
+            double elapsed;
+            if (options.containsKey("rate")) {
+                int rate = Integer.parseInt(options.get("rate"));
+                System.out.println("固定速率模式: " + rate + " 请求/秒");
+                elapsed = generator.runConstantRate(rate, Integer.parseInt(options.getOrDefault("maxInFlight", "1000")), warmup, duration);
+            } else {
+                int connections = Integer.parseInt(options.getOrDefault("connections", "32"));
+                System.out.println("闭环模式: " + connections + " 个客户端");
+                elapsed = generator.runClosedLoop(connections, warmup, duration);
+            }
+            generator.report(elapsed);
+            System.out.println("服务器拒绝(503): " + ServerExecutors.getRejectedCount());
+        } finally {
+            server.stop();
+            authService.close();
+        }
+    }
+
+    LoadGenerator(int products, String baseUrl, String token, HttpClient client, String mix) {
+        this.products = products;
+        this.baseUrl = baseUrl;
+        this.token = token;
+        this.client = client;
+        List<Operation> selected = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                selected.add(new Operation(parts[0].trim()));
+                total += weight;
+                weights.add(total);
+            }
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("混合比例中没有请求类型");
+        }
+        this.operations = selected.toArray(new Operation[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 闭环模式：每个客户端收到响应后立即发送下一个请求
+     * @return 测量阶段的秒数（到最后一个请求完成为止）
+     */
+    double runClosedLoop(int connections, int warmup, int duration) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup * 1_000_000_000L;
+        long end = measureFrom + duration * 1_000_000_000L;
+        Thread[] clients = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            clients[c] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    Operation operation = pick(random);
+                    long begin = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(operation.request(random), HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    operation.record(begin, System.nanoTime(), status);
+                }
+            }, "load-client-" + c);
+            clients[c].start();
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        return (System.nanoTime() - measureFrom) / 1e9;
+    }
+
+    /**
+     * 固定速率模式：按计划时间发送，延迟从计划时间算起
+     * @return 测量阶段的秒数（到最后一个请求完成为止，服务器跟不上时大于配置的时长）
+     */
+    double runConstantRate(int rate, int maxInFlight, int warmup, int duration) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup * 1_000_000_000L;
+        long total = (long) rate * (warmup + duration);
+        double interval = 1e9 / rate;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long i = 0; i < total; i++) {
+            long intended = start + (long) (i * interval);
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // 未完成的请求过多时等待空位，等待时间计入这些请求的延迟
+            inFlight.acquire();
+            Operation operation = pick(random);
+            client.sendAsync(operation.request(random), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        operation.record(intended, System.nanoTime(), error != null ? -1 : response.statusCode());
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(maxInFlight);  // 等待全部完成
+        return (System.nanoTime() - measureFrom) / 1e9;
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /**
+     * 输出每种请求的统计和合计
+     */
+    void report(double seconds) {
+        System.out.println("请求类型\t请求数\t吞吐量(req/s)\tp50(ms)\tp99(ms)\tp999(ms)\t4xx\t错误(5xx/连接)");
+        long clientErrors = 0;
+        long errors = 0;
+        for (Operation operation : operations) {
+            print(operation.name, operation.latency, operation.clientErrors.sum(), operation.errors.sum(), seconds);
+            clientErrors += operation.clientErrors.sum();
+            errors += operation.errors.sum();
+        }
+        print("合计", totalLatency, clientErrors, errors, seconds);
+    }
+
+    private static void print(String name, LatencyHistogram latency, long clientErrors, long errors, double seconds) {
+        System.out.printf("%s\t%d\t%.0f\t%.2f\t%.2f\t%.2f\t%d\t%d%n", name, latency.getCount(),
+                latency.getCount() / seconds, latency.valueAtPercentile(50) / 1e6,
+                latency.valueAtPercentile(99) / 1e6, latency.valueAtPercentile(99.9) / 1e6, clientErrors, errors);
+    }
+
+    private static String login(HttpClient client, String baseUrl) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"admin\",\"password\":\"admin123\"}"))
+                .header("Content-Type", "application/json").build(), HttpResponse.BodyHandlers.ofString());
+        String body = response.body();
+        int start = body.indexOf("\"token\":\"");
+        if (response.statusCode() != 200 || start < 0) {
+            throw new IllegalStateException("登录失败: " + body);
+        }
+        start += 9;
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    private static String productId(int i) {
+        return String.format("L%07d", i);
+    }
+
+    private static String encode(String value) {
+        return java.net.URLEncoder.encode(value, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一种请求类型及其统计
+     */
+    private class Operation {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+            request(ThreadLocalRandom.current());  // 名称无效时在启动阶段失败
+        }
+
+        HttpRequest request(ThreadLocalRandom random) {
+            String id = productId(random.nextInt(products));
+            switch (name) {
+                case "get":
+                    return get("/api/product?id=" + id);
+                case "search":
+                    return get("/api/products?name=" + encode(NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(products)));
+                case "page":
+                    return get("/api/products?limit=50&cursor=" + Base64.getUrlEncoder().withoutPadding()
+                            .encodeToString(id.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+                case "stats":
+                    return get("/api/statistics");
+                case "lowstock":
+                    return get("/api/low-stock?threshold=150&limit=50");
+                case "in":
+                    return post("/api/stock-in", "{\"id\":\"" + id + "\",\"amount\":" + (1 + random.nextInt(5)) + "}");
+                case "out":
+                    return post("/api/stock-out", "{\"id\":\"" + id + "\",\"amount\":" + (1 + random.nextInt(5)) + "}");
+                default:
+                    throw new IllegalArgumentException("未知的请求类型: " + name
+                            + "（可选 get、search、page、stats、lowstock、in、out）");
+            }
+        }
+
+        private HttpRequest get(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Authorization", "Bearer " + token).GET().build();
+        }
+
+        private HttpRequest post(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Authorization", "Bearer " + token).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+
+        /**
+         * 记录一次请求（计划发送时间在预热期内的不计入）
+         */
+        void record(long intended, long completed, int status) {
+            if (intended < measureFrom) {
+                return;
+            }
+            latency.record(completed - intended);
+            totalLatency.record(completed - intended);
+            if (status < 0 || status >= 500) {
+                errors.increment();
+            } else if (status >= 400) {
+                clientErrors.increment();
+            }
+        }
+    }
+}
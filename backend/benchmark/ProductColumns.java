@@ -0,0 +1,364 @@
+package benchmark;
+
+import dao.ProductChangeListener;
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按列存储的商品数据
+ * 把商品的价格（整数分）、库存数量和类别ID分别保存在基本类型数组中，同一下标对应同一个商品（一行），
+ * 库存估值、低库存筛选和按类别汇总只顺序扫描这几个数组，不访问分散在堆上的商品对象；
+ * 扫描是简单的计数循环，JIT可以展开并向量化。
+ *
+ * 只用于 ColumnScanBenchmark 比较按行和按列扫描：实时的库存统计和低库存查询已由 InventoryStatistics
+ * 和 QuantityIndex 增量维护，不需要扫描。
+ *
+ * 作为变更监听器注册到 ProductDao（addChangeListener 会先加入已有商品），之后随每次修改同步更新；
+ * 商品的行号保存在列存储自己的表中（Product 没有重写 equals，按对象区分），多个列存储互不影响。
+ * 数组按固定大小分块，增长时只增加新块、不复制已有数据；删除商品空出的行由之后新增的商品复用。
+ * 同一商品的列更新在该商品上串行执行，最后一次更新总能看到商品的最终值；
+ * 扫描期间并发的修改可能只看到一部分（与逐个遍历商品对象相同，不是一致快照）。
+ */
+class ProductColumns implements ProductChangeListener {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;  // 每块65536行
+    private static final int FREE = -1;                      // 空行的类别ID
+    private static final int NO_CATEGORY = -2;               // 没有类别的商品
+    // 空行的库存数量取最大值、价格取0：估值和低库存扫描不需要判断空行
+    private static final int FREE_QUANTITY = Integer.MAX_VALUE;
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int rows;                               // 使用过的行数（扫描范围）
+    private int[] freeRows = new int[16];                    // 可复用的空行（由this保护）
+    private int freeCount;
+
+    private final Map<Product, Integer> rowOf = new ConcurrentHashMap<>();        // 商品 -> 行号
+    private final Map<String, Integer> categoryIds = new ConcurrentHashMap<>();  // 类别 -> 类别ID
+    private volatile String[] categoryNames = new String[0];                   // 类别ID -> 类别
+
+    @Override
+    public void productAdded(Product product, int quantity) {
+        synchronized (product) {
+            if (rowOf.containsKey(product)) {
+                return;
+            }
+            int row = allocate();
+            Chunk chunk = chunks[row >>> CHUNK_BITS];
+            int i = row & (CHUNK_SIZE - 1);
+            chunk.products[i] = product;
+            chunk.priceCents[i] = toCents(product.getPrice());
+            chunk.quantities[i] = product.getQuantity();
+            chunk.categories[i] = categoryId(product.getCategory());
+            rowOf.put(product, row);
+        }
+    }
+
+    @Override
+    public void productRemoved(Product product, int quantity) {
+        int row;
+        synchronized (product) {
+            Integer removed = rowOf.remove(product);
+            if (removed == null) {
+                return;
+            }
+            row = removed;
+            Chunk chunk = chunks[row >>> CHUNK_BITS];
+            int i = row & (CHUNK_SIZE - 1);
+            chunk.products[i] = null;
+            chunk.priceCents[i] = 0;
+            chunk.quantities[i] = FREE_QUANTITY;
+            chunk.categories[i] = FREE;
+        }
+        release(row);
+    }
+
+    @Override
+    public void productUpdated(Product product, String oldName, double oldPrice, String oldCategory, int quantity) {
+        synchronized (product) {
+            Integer row = rowOf.get(product);
+            if (row != null) {
+                Chunk chunk = chunks[row >>> CHUNK_BITS];
+                int i = row & (CHUNK_SIZE - 1);
+                chunk.priceCents[i] = toCents(product.getPrice());
+                chunk.categories[i] = categoryId(product.getCategory());
+            }
+        }
+    }
+
+    @Override
+    public void stockChanged(Product product, double price, String category, int delta, long stockState) {
+        // 并发的入库/出库回调顺序不确定，写入商品当前的数量而不是回调参数
+        synchronized (product) {
+            Integer row = rowOf.get(product);
+            if (row != null) {
+                chunks[row >>> CHUNK_BITS].quantities[row & (CHUNK_SIZE - 1)] = product.getQuantity();
+            }
+        }
+    }
+
+    /**
+     * 库存总价值（分）
+     */
+    public long totalValueCents() {
+        Chunk[] chunks = this.chunks;
+        int rows = this.rows;
+        long total = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            int n = rowsInChunk(c, rows);
+            if (n <= 0) {
+                break;
+            }
+            total += chunks[c].valueCents(n);
+        }
+        return total;
+    }
+
+    /**
+     * 库存数量小于阈值的商品数
+     */
+    public int countBelow(int threshold) {
+        Chunk[] chunks = this.chunks;
+        int rows = this.rows;
+        int count = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            int n = rowsInChunk(c, rows);
+            if (n <= 0) {
+                break;
+            }
+            count += chunks[c].countBelow(n, threshold);
+        }
+        return count;
+    }
+
+    /**
+     * 查找库存数量小于阈值的商品，按库存数量、商品ID升序
+     * 扫描数量列筛选，只对命中的行访问商品对象；结果多于limit时用大小为limit的堆保留最小的部分
+     * @param threshold 库存阈值
+     * @param limit 最多返回的数量
+     */
+    public List<Product> findBelow(int threshold, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        Comparator<long[]> order = Comparator.<long[]>comparingLong(entry -> entry[0])
+                .thenComparing(entry -> idAt((int) entry[1]));
+        PriorityQueue<long[]> kept = new PriorityQueue<>(order.reversed());  // {数量, 行号}，堆顶为最大的一个
+        List<Product> products = new ArrayList<>();
+        Chunk[] chunks = this.chunks;
+        int rows = this.rows;
+        for (int c = 0; c < chunks.length; c++) {
+            int n = rowsInChunk(c, rows);
+            if (n <= 0) {
+                break;
+            }
+            int[] quantities = chunks[c].quantities;
+            for (int i = 0; i < n; i++) {
+                int quantity = quantities[i];
+                if (quantity >= threshold) {
+                    continue;
+                }
+                int row = (c << CHUNK_BITS) | i;
+                if (productAt(row) == null) {
+                    continue;  // 行刚被释放
+                }
+                long[] entry = {quantity, row};
+                if (kept.size() < limit) {
+                    kept.add(entry);
+                } else if (order.compare(entry, kept.peek()) < 0) {
+                    kept.poll();
+                    kept.add(entry);
+                }
+            }
+        }
+        List<long[]> sorted = new ArrayList<>(kept);
+        sorted.sort(order);
+        for (long[] entry : sorted) {
+            Product product = productAt((int) entry[1]);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * 按类别汇总商品数和库存价值（只包含当前有商品的类别，按类别排序）
+     */
+    public List<CategoryTotals> categoryTotals() {
+        String[] names = this.categoryNames;
+        long[] counts = new long[names.length];
+        long[] values = new long[names.length];
+        Chunk[] chunks = this.chunks;
+        int rows = this.rows;
+        for (int c = 0; c < chunks.length; c++) {
+            int n = rowsInChunk(c, rows);
+            if (n <= 0) {
+                break;
+            }
+            chunks[c].sumByCategory(n, counts, values);
+        }
+        List<CategoryTotals> result = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (counts[id] > 0) {
+                result.add(new CategoryTotals(names[id], counts[id], values[id]));
+            }
+        }
+        result.sort(Comparator.comparing(CategoryTotals::getCategory));
+        return result;
+    }
+
+    /**
+     * 当前的商品数
+     */
+    public synchronized int size() {
+        return rows - freeCount;
+    }
+
+    /**
+     * 列数组占用的内存（字节，对象引用按压缩指针的4字节计算，不包括行号表）
+     */
+    public long memoryBytes() {
+        return (long) chunks.length * CHUNK_SIZE * (Long.BYTES + Integer.BYTES + Integer.BYTES + 4);
+    }
+
+    private Product productAt(int row) {
+        return chunks[row >>> CHUNK_BITS].products[row & (CHUNK_SIZE - 1)];
+    }
+
+    private String idAt(int row) {
+        Product product = productAt(row);
+        return product != null ? product.getId() : "";  // 比较期间被删除的行
+    }
+
+    private static int rowsInChunk(int chunk, int rows) {
+        return Math.min(CHUNK_SIZE, rows - (chunk << CHUNK_BITS));
+    }
+
+    /**
+     * 分配一行：优先复用空行，否则使用新行（需要时增加一块）
+     */
+    private synchronized int allocate() {
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+        int row = rows;
+        if ((row >>> CHUNK_BITS) >= chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        rows = row + 1;
+        return row;
+    }
+
+    private synchronized void release(int row) {
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+    }
+
+    private int categoryId(String category) {
+        if (category == null) {
+            return NO_CATEGORY;
+        }
+        Integer id = categoryIds.get(category);
+        if (id != null) {
+            return id;
+        }
+        synchronized (categoryIds) {
+            id = categoryIds.get(category);
+            if (id == null) {
+                String[] names = Arrays.copyOf(categoryNames, categoryNames.length + 1);
+                id = categoryNames.length;
+                names[id] = category;
+                categoryNames = names;
+                categoryIds.put(category, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * 价格换算为整数分（与 InventoryStatistics 的换算一致）
+     */
+    private static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    /**
+     * 一块连续的行
+     */
+    private static class Chunk {
+        final Product[] products = new Product[CHUNK_SIZE];
+        final long[] priceCents = new long[CHUNK_SIZE];
+        final int[] quantities = new int[CHUNK_SIZE];
+        final int[] categories = new int[CHUNK_SIZE];
+
+        Chunk() {
+            Arrays.fill(quantities, FREE_QUANTITY);
+            Arrays.fill(categories, FREE);
+        }
+
+        long valueCents(int n) {
+            long[] prices = priceCents;
+            int[] quantities = this.quantities;
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                total += prices[i] * quantities[i];
+            }
+            return total;
+        }
+
+        int countBelow(int n, int threshold) {
+            int[] quantities = this.quantities;
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                count += quantities[i] < threshold ? 1 : 0;
+            }
+            return count;
+        }
+
+        void sumByCategory(int n, long[] counts, long[] values) {
+            long[] prices = priceCents;
+            int[] quantities = this.quantities;
+            int[] categories = this.categories;
+            for (int i = 0; i < n; i++) {
+                int category = categories[i];
+                // 扫描开始后新出现的类别不在本次结果中
+                if (category >= 0 && category < counts.length) {
+                    counts[category]++;
+                    values[category] += prices[i] * quantities[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个类别的汇总结果
+     */
+    static class CategoryTotals {
+        private final String category;
+        private final long productCount;
+        private final long valueCents;
+
+        CategoryTotals(String category, long productCount, long valueCents) {
+            this.category = category;
+            this.productCount = productCount;
+            this.valueCents = valueCents;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getProductCount() {
+            return productCount;
+        }
+
+        public long getValueCents() {
+            return valueCents;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import config.ServerExecutors;
+import controller.ProductController;
+import dao.ProductDao;
+import dao.ProductJournal;
+import model.Product;
+import service.ProductService;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP线程模型基准测试
+ * 用大量长连接并发调用入库接口（启用持久化并fsync，请求线程会阻塞等待落盘），
+ * 依次测试各个线程模型，输出吞吐量、p50/p99延迟和被拒绝（503）的请求数。
+ *
+ * 运行方式：java benchmark.ServerBenchmark [连接数] [每轮秒数] [bounded线程数] [队列长度]
+ */
+public class ServerBenchmark {
+    private static final int PRODUCTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int queue = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("连接数: " + connections + "，每轮: " + seconds + "秒，CPU核数: " + cores);
+        System.out.println("线程模型\t吞吐量(req/s)\tp50(ms)\tp99(ms)\t503次数");
+        runRound("bounded(" + threads + ")", ServerExecutors.bounded(threads, queue), connections, seconds);
+        runRound("bounded(" + threads * 20 + ")", ServerExecutors.bounded(threads * 20, queue), connections, seconds);
+        runRound("work-stealing(" + cores + ")", ServerExecutors.create(ServerExecutors.WORK_STEALING, cores, queue),
+                connections, seconds);
+        ExecutorService virtual = ServerExecutors.virtualThreads();
+        if (virtual != null) {
+            runRound("virtual", virtual, connections, seconds);
+        } else {
+            System.out.println("virtual\t（当前Java版本不支持虚拟线程）");
+        }
+    }
+
+    /**
+     * 使用指定线程池启动服务器并执行一轮测试
+     */
+    private static void runRound(String label, ExecutorService executor, int connections, int seconds) throws Exception {
+        File dir = Files.createTempDirectory("server-benchmark").toFile();
+        ProductDao productDao = new ProductDao();
+        productDao.enablePersistence(new ProductJournal(dir, true, 3600, Long.MAX_VALUE));
+        ProductService productService = new ProductService(productDao);
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.addProduct(new Product("B" + i, "商品" + i, 10.0, 1000, "基准测试"));
+        }
+        ProductController productController = new ProductController(productService);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/api/stock-in", exchange -> {
+            if (ServerExecutors.isDropping()) {
+                exchange.close();
+                return;
+            }
+            if (ServerExecutors.isShedding()) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            productController.handleStockIn(exchange);
+        });
+        server.setExecutor(executor);
+        server.start();
+        int port = server.getAddress().getPort();
+        long rejectedBefore = ServerExecutors.getRejectedCount();
+
+        long[][] latencies = new long[connections][];
+        int[] counts = new int[connections];
+        AtomicLong served = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(connections);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+        long[] window = new long[2];
+
+        for (int c = 0; c < connections; c++) {
+            int index = c;
+            Thread client = new Thread(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                try (Socket socket = new Socket("127.0.0.1", port)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    ready.countDown();
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < window[1]) {
+                        byte[] body = ("{\"id\":\"B" + random.nextInt(PRODUCTS) + "\",\"amount\":1}")
+                                .getBytes(StandardCharsets.UTF_8);
+                        long begin = System.nanoTime();
+                        out.write(("POST /api/stock-in HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                                + "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                        out.write(body);
+                        out.flush();
+                        if (!readResponse(in)) {
+                            break;
+                        }
+                        long end = System.nanoTime();
+                        if (begin >= window[0] && end <= window[1]) {
+                            if (count == samples.length) {
+                                samples = Arrays.copyOf(samples, count * 2);
+                            }
+                            samples[count++] = end - begin;
+                        }
+                    }
+                } catch (IOException | InterruptedException e) {
+                    ready.countDown();
+                } finally {
+                    latencies[index] = samples;
+                    counts[index] = count;
+                    served.addAndGet(count);
+                    done.countDown();
+                }
+            }, "client-" + c);
+            client.setDaemon(true);
+            client.start();
+        }
+
+        ready.await();
+        // 前1秒为预热，不计入统计
+        window[0] = System.nanoTime() + 1_000_000_000L;
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        done.await();
+
+        server.stop(0);
+        executor.shutdownNow();
+        productDao.closePersistence();
+        deleteDirectory(dir);
+
+        long[] all = new long[(int) served.get()];
+        int offset = 0;
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(latencies[c], 0, all, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("%s\t%.0f\t%.2f\t%.2f\t%d%n", label, all.length / (double) seconds,
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6,
+                ServerExecutors.getRejectedCount() - rejectedBefore);
+    }
+
+    /**
+     * 读取一个HTTP响应（按Content-Length读取响应体）
+     * @return 连接被关闭时返回false
+     */
+    private static boolean readResponse(InputStream in) throws IOException {
+        int contentLength = 0;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            if (b == '\n') {
+                String header = line.toString().trim();
+                line.setLength(0);
+                if (header.isEmpty()) {
+                    break;
+                }
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+            } else {
+                line.append((char) b);
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            if (in.read() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
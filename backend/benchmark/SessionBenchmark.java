@@ -0,0 +1,150 @@
+package benchmark;
+
+import dao.UserDao;
+import service.AuthService;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 会话存储基准测试
+ * 1. 登录流失：持续登录且从不登出（放弃的会话），token有效期较短，
+ *    每秒输出会话数、时间轮清除数和GC后的堆内存，再对比原来两个Map、只在再次使用时才清除的方式。
+ * 2. 验证耗时：对比会话Map的一次查找、原来的三次查找和HMAC签名token的验证（含每次分配的字节数）。
+ *
+ * 运行方式：java benchmark.SessionBenchmark [有效期毫秒] [秒数] [每秒登录数]
+ */
+public class SessionBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        long ttl = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int loginsPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        System.out.println("token有效期: " + ttl + "ms，每秒登录: " + loginsPerSecond);
+        System.out.println("会话Map + 时间轮:");
+        System.out.println("秒\t会话数\t时间轮清除\t堆内存(MB)");
+        AuthService authService = new AuthService(new UserDao(), ttl);
+        for (int second = 1; second <= seconds; second++) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < loginsPerSecond; i++) {
+                authService.login("admin", "admin123");
+            }
+            pace(start);
+            System.out.printf("%d\t%d\t%d\t%d%n", second, authService.getSessionCount(),
+                    authService.getExpiredSessionCount(), usedHeapMegabytes());
+        }
+        authService.close();
+        authService = null;
+
+        System.out.println("原方式（两个Map，只在再次使用时清除）:");
+        System.out.println("秒\t会话数\t堆内存(MB)");
+        Map<String, String> legacyTokens = new ConcurrentHashMap<>();
+        Map<String, Long> legacyExpiry = new ConcurrentHashMap<>();
+        for (int second = 1; second <= seconds; second++) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < loginsPerSecond; i++) {
+                String token = "token_admin_" + System.currentTimeMillis() + "_"
+                        + UUID.randomUUID().toString().replace("-", "");
+                legacyTokens.put(token, "admin");
+                legacyExpiry.put(token, System.currentTimeMillis() + ttl);
+            }
+            pace(start);
+            System.out.printf("%d\t%d\t%d%n", second, legacyTokens.size(), usedHeapMegabytes());
+        }
+        legacyTokens = null;
+        legacyExpiry = null;
+
+        // 验证耗时（全部为有效token）
+        AuthService validating = new AuthService(new UserDao());
+        String[] tokens = new String[1024];
+        Map<String, String> tokenMap = new ConcurrentHashMap<>();
+        Map<String, Long> expiryMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = validating.login("admin", "admin123");
+            tokenMap.put(tokens[i], "admin");
+            expiryMap.put(tokens[i], Long.MAX_VALUE);
+        }
+        AuthService signed = new AuthService(new UserDao(), 24 * 60 * 60 * 1000L,
+                "benchmark-signing-key-0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        String[] signedTokens = new String[1024];
+        for (int i = 0; i < signedTokens.length; i++) {
+            signedTokens[i] = signed.login("admin", "admin123");
+        }
+        int iterations = 5_000_000;
+        System.out.println("方式\t验证耗时(ns/次)\t分配(字节/次)");
+        for (int round = 0; round < 2; round++) {
+            long begin = System.nanoTime();
+            int sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                String token = tokens[i & (tokens.length - 1)];
+                if (tokenMap.containsKey(token)) {
+                    Long expiry = expiryMap.get(token);
+                    if (expiry != null && System.currentTimeMillis() <= expiry) {
+                        sink += tokenMap.get(token).length();
+                    }
+                }
+            }
+            long legacy = System.nanoTime() - begin;
+            long allocated = allocatedBytes();
+            begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                String username = validating.validateToken(tokens[i & (tokens.length - 1)]);
+                sink += username != null ? username.length() : 0;
+            }
+            long current = System.nanoTime() - begin;
+            long currentAllocated = allocatedBytes() - allocated;
+            allocated = allocatedBytes();
+            begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                String username = signed.validateToken(signedTokens[i & (signedTokens.length - 1)]);
+                sink += username != null ? username.length() : 0;
+            }
+            long signedTime = System.nanoTime() - begin;
+            long signedAllocated = allocatedBytes() - allocated;
+            if (round == 1) {
+                System.out.printf("原方式（三次查找）\t%.1f\t-%n", (double) legacy / iterations);
+                System.out.printf("会话Map（一次查找）\t%.1f\t%d%n", (double) current / iterations,
+                        currentAllocated / iterations);
+                System.out.printf("签名token（HMAC-SHA256）\t%.1f\t%d%n", (double) signedTime / iterations,
+                        signedAllocated / iterations);
+            }
+            if (sink == ThreadLocalRandom.current().nextInt()) {
+                System.out.println();
+            }
+        }
+        validating.close();
+        signed.close();
+    }
+
+    /**
+     * 当前线程累计分配的字节数（不支持时返回0）
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * 等到本秒结束
+     */
+    private static void pace(long start) throws InterruptedException {
+        long elapsed = System.currentTimeMillis() - start;
+        if (elapsed < 1000) {
+            Thread.sleep(1000 - elapsed);
+        }
+    }
+
+    /**
+     * 完整GC后的堆内存占用
+     */
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+}
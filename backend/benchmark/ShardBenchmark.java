@@ -0,0 +1,108 @@
+package benchmark;
+
+import dao.ProductDao;
+import model.Product;
+import service.ProductService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品分片写吞吐量基准测试
+ * 对1到CPU核数个分片分别测量：批量导入商品的速度，以及多个线程并发入库/出库/修改价格的吞吐量，
+ * 输出相对于1个分片的加速比。同一分片的修改由一个写者串行执行，其他调用线程等待结果，
+ * 因此调用线程数取CPU核数的若干倍，保证每个分片的邮箱中都有待执行的修改。
+ *
+ * 运行方式：java benchmark.ShardBenchmark [商品数] [每轮秒数] [调用线程数]
+ */
+public class ShardBenchmark {
+    private static final int IMPORT_BATCH = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(16, cores * 4);
+
+        System.out.println("商品数: " + productCount + "，每轮: " + seconds + "秒，调用线程数: " + threads
+                + "，CPU核数: " + cores);
+        System.out.println("分片数\t导入(商品/s)\t写入(ops/s)\t加速比");
+        List<Integer> shardCounts = new ArrayList<>();
+        for (int shards = 1; shards < cores; shards *= 2) {
+            shardCounts.add(shards);
+        }
+        shardCounts.add(cores);
+        double baseline = 0;
+        for (int shards : shardCounts) {
+            double[] result = runRound(shards, productCount, threads, seconds);
+            if (baseline == 0) {
+                baseline = result[1];
+            }
+            System.out.printf("%d\t%,.0f\t%,.0f\t%.2f%n", shards, result[0], result[1], result[1] / baseline);
+        }
+    }
+
+    /**
+     * 执行一轮测试
+     * @return {导入速度, 写入吞吐量}
+     */
+    private static double[] runRound(int shards, int productCount, int threads, int seconds)
+            throws InterruptedException {
+        ProductDao productDao = new ProductDao(shards);
+        ProductService productService = new ProductService(productDao);
+        String[] ids = new String[productCount];
+
+        long begin = System.nanoTime();
+        List<Product> batch = new ArrayList<>(IMPORT_BATCH);
+        for (int i = 0; i < productCount; i++) {
+            ids[i] = "S" + i;
+            batch.add(new Product(ids[i], "商品" + i, 10.0, 1000, "类别" + (i % 20)));
+            if (batch.size() == IMPORT_BATCH || i == productCount - 1) {
+                productService.addProducts(batch);
+                batch = new ArrayList<>(IMPORT_BATCH);
+            }
+        }
+        double importRate = productCount / ((System.nanoTime() - begin) / 1e9);
+
+        // 入库/出库各45%，修改价格10%
+        AtomicLong totalOps = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long ops = 0;
+                try {
+                    start.await();
+                    while ((ops & 255) != 0 || System.nanoTime() < deadline) {
+                        String id = ids[random.nextInt(ids.length)];
+                        int choice = random.nextInt(100);
+                        if (choice < 45) {
+                            productService.stockIn(id, 1 + random.nextInt(5));
+                        } else if (choice < 90) {
+                            productService.stockOut(id, 1 + random.nextInt(5));
+                        } else {
+                            productService.updateProduct(id, null, 1 + random.nextInt(10000) / 100.0, null);
+                        }
+                        ops++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    totalOps.addAndGet(ops);
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+        begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double writeRate = totalOps.get() / ((System.nanoTime() - begin) / 1e9);
+
+        return new double[] {importRate, writeRate};
+    }
+}
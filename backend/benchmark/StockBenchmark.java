@@ -0,0 +1,108 @@
+package benchmark;
+
+import dao.ProductDao;
+import model.Product;
+import service.ProductService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入库/出库吞吐量基准测试
+ * 以1到CPU核数个线程并发执行随机入库、出库，输出吞吐量，并校验库存守恒（没有丢失更新、没有超卖）
+ *
+ * 运行方式：java benchmark.StockBenchmark [商品数] [每轮秒数]
+ */
+public class StockBenchmark {
+    private static final int INITIAL_QUANTITY = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("商品数: " + productCount + "，每轮: " + seconds + "秒，CPU核数: " + cores);
+        System.out.println("线程数\t吞吐量(ops/s)\t出库失败\t库存守恒");
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            runRound(productCount, threads, seconds);
+            if (threads < cores && threads * 2 > cores) {
+                runRound(productCount, cores, seconds);
+            }
+        }
+        // 热点场景：所有线程竞争同一个商品
+        System.out.println("热点商品（所有线程操作同一商品）:");
+        runRound(1, cores, seconds);
+    }
+
+    /**
+     * 执行一轮测试
+     */
+    private static void runRound(int productCount, int threads, int seconds) throws InterruptedException {
+        ProductDao productDao = new ProductDao();
+        ProductService productService = new ProductService(productDao);
+        String[] ids = new String[productCount];
+        for (int i = 0; i < productCount; i++) {
+            ids[i] = "B" + i;
+            productService.addProduct(new Product(ids[i], "商品" + i, 10.0, INITIAL_QUANTITY, "基准测试"));
+        }
+
+        AtomicLong totalOps = new AtomicLong();
+        AtomicLong stockedIn = new AtomicLong();
+        AtomicLong stockedOut = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long ops = 0, in = 0, out = 0, fail = 0;
+                try {
+                    start.await();
+                    while ((ops & 1023) != 0 || System.nanoTime() < deadline) {
+                        String id = ids[random.nextInt(ids.length)];
+                        int amount = 1 + random.nextInt(5);
+                        if (random.nextBoolean()) {
+                            if (productService.stockIn(id, amount)) {
+                                in += amount;
+                            }
+                        } else if (productService.stockOut(id, amount)) {
+                            out += amount;
+                        } else {
+                            fail++;
+                        }
+                        ops++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    totalOps.addAndGet(ops);
+                    stockedIn.addAndGet(in);
+                    stockedOut.addAndGet(out);
+                    rejected.addAndGet(fail);
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        // 校验：最终库存 = 初始库存 + 入库 - 出库，且没有负库存
+        long expected = (long) productCount * INITIAL_QUANTITY + stockedIn.get() - stockedOut.get();
+        long actual = 0;
+        boolean negative = false;
+        for (Product product : productDao.getAllProducts()) {
+            actual += product.getQuantity();
+            negative |= product.getQuantity() < 0;
+        }
+        boolean consistent = expected == actual && !negative;
+
+        System.out.printf("%d\t%,.0f\t%d\t%s%n", threads, totalOps.get() / elapsed, rejected.get(),
+                consistent ? "是" : "否（期望 " + expected + "，实际 " + actual + "）");
+    }
+}
@@ -0,0 +1,210 @@
+package config;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import controller.ProductController;
+import controller.AuthController;
+import controller.MetricsController;
+import controller.RouteMetrics;
+import controller.StaticFileController;
+import controller.WriteForwarder;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * REST API服务器
+ * 负责HTTP服务器配置和路由分发
+ */
+public class ApiServer {
+    /** HTTP引擎：JDK内置的HttpServer */
+    public static final String ENGINE_BUILTIN = "builtin";
+    /** HTTP引擎：基于NIO事件循环的 NioHttpServer（大量保持连接、管线化） */
+    public static final String ENGINE_NIO = "nio";
+
+    private HttpServer server;
+    private ProductController productController;
+    private AuthController authController;
+    private StaticFileController staticFileController;
+    private final MetricsController metricsController = new MetricsController();
+    private final int port;
+    private final int backlog;
+    private final ExecutorService executor;
+    private WriteForwarder writeForwarder;  // 副本模式：写请求转发给主节点
+    private String engine = ENGINE_BUILTIN;
+
+    /**
+     * 使用默认配置：端口8080，10个线程的有界线程池，缓存web目录中不超过1MB的文件
+     */
+    public ApiServer(ProductController productController, AuthController authController) {
+        this(productController, authController, new StaticFileController(new File("web"), 1024 * 1024),
+                8080, 0, ServerExecutors.bounded(10, 1000));
+    }
+
+    /**
+     * @param staticFileController 静态文件服务（启动时预加载）
+     * @param port 监听端口
+     * @param backlog 等待accept的连接队列长度（0为系统默认）
+     * @param executor 处理请求的线程池（见 ServerExecutors）
+     */
+    public ApiServer(ProductController productController, AuthController authController,
+                     StaticFileController staticFileController, int port, int backlog, ExecutorService executor) {
+        this.productController = productController;
+        this.authController = authController;
+        this.staticFileController = staticFileController;
+        this.port = port;
+        this.backlog = backlog;
+        this.executor = executor;
+        metricsController.gauge("inventory_http_executor_queue_depth", "线程池中等待执行的请求数（-1表示线程模型没有队列）",
+                () -> ServerExecutors.queueDepth(executor));
+        metricsController.gauge("inventory_http_executor_active_threads", "正在执行请求的线程数（-1表示无法获取）",
+                () -> ServerExecutors.activeThreads(executor));
+        metricsController.counter("inventory_http_rejected_total", "因线程池队列已满返回503的请求数",
+                ServerExecutors::getRejectedCount);
+        metricsController.counter("inventory_http_dropped_total", "因返回503的队列也已满而直接关闭连接的请求数",
+                ServerExecutors::getDroppedCount);
+        metricsController.gauge("inventory_http_open_connections", "当前打开的连接数（-1表示内置引擎无法获取）",
+                () -> server instanceof NioHttpServer ? ((NioHttpServer) server).getOpenConnections() : -1);
+    }
+
+    /**
+     * 监控指标（启动前可注册其他模块的指标）
+     */
+    public MetricsController getMetricsController() {
+        return metricsController;
+    }
+
+    /**
+     * 副本模式：需要认证的路由上的写请求（POST/PUT/DELETE）交给 writeForwarder 转发到主节点（启动前设置）
+     */
+    public void setWriteForwarder(WriteForwarder writeForwarder) {
+        this.writeForwarder = writeForwarder;
+    }
+
+    /**
+     * HTTP引擎（启动前设置）：ENGINE_BUILTIN（默认）或 ENGINE_NIO，两者的路由和处理函数相同
+     */
+    public void setEngine(String engine) {
+        if (!ENGINE_BUILTIN.equals(engine) && !ENGINE_NIO.equals(engine)) {
+            throw new IllegalArgumentException("未知的HTTP引擎: " + engine + "（可选 " + ENGINE_BUILTIN + "、" + ENGINE_NIO + "）");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * 启动服务器
+     */
+    public void start() throws IOException {
+        if (ENGINE_NIO.equals(engine)) {
+            server = NioHttpServer.create(new InetSocketAddress(port), backlog);
+        } else {
+            // 内置HttpServer分别写出响应头和响应体，保持连接时第二次写会被Nagle算法和对端的延迟确认卡住约40毫秒；
+            // 该属性在HttpServer首次使用时读取，未显式配置时关闭Nagle
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            server = HttpServer.create(new InetSocketAddress(port), backlog);
+        }
+        
+        // 认证API路由（不需要token验证）
+        route("/api/login", false, authController::handleLogin);
+        route("/api/logout", false, authController::handleLogout);
+        route("/api/verify", false, authController::handleVerify);
+        
+        // 业务API路由（需要token验证）
+        route("/api/products", true, productController::handleProducts);
+        route("/api/products/import", true, productController::handleImport);
+        route("/api/products/export", true, productController::handleExport);
+        route("/api/product", true, productController::handleProduct);
+        route("/api/statistics", true, productController::handleStatistics);
+        route("/api/low-stock", true, productController::handleLowStock);
+        route("/api/stock-in", true, productController::handleStockIn);
+        route("/api/stock-out", true, productController::handleStockOut);
+        route("/api/stock-batch", true, productController::handleStockBatch);
+        route("/api/events", true, productController::handleEvents);
+        
+        // 监控指标（Prometheus抓取，不需要token）
+        route("/api/metrics", false, metricsController::handleMetrics);
+        
+        // 静态文件服务（预加载到内存）
+        System.out.println("已缓存静态文件: " + staticFileController.preload() + " 个");
+        route("/", false, staticFileController::handle);
+        
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("服务器已启动（HTTP引擎: " + engine + "），访问地址: http://localhost:" + getPort());
+    }
+
+    /**
+     * 注册路由：线程池已满时直接返回503（返回503的队列也满时直接关闭连接），需要认证的路由先验证token
+     * 每个请求的状态码和处理耗时记入该路由的统计
+     */
+    private void route(String path, boolean requireToken, HttpHandler handler) {
+        RouteMetrics metrics = metricsController.route(path);
+        server.createContext(path, exchange -> {
+            long start = metrics.begin();
+            try {
+                if (ServerExecutors.isDropping()) {
+                    exchange.close();
+                    return;
+                }
+                if (ServerExecutors.isShedding()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendErrorResponse(exchange, 503, "服务器繁忙，请稍后重试");
+                    return;
+                }
+                if (!requireToken || authController.validateToken(exchange)) {
+                    if (requireToken && writeForwarder != null && writeForwarder.isWrite(exchange)) {
+                        writeForwarder.forward(exchange);
+                    } else {
+                        handler.handle(exchange);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                // 尚未发送响应时返回500，避免客户端只看到连接被关闭
+                if (exchange.getResponseCode() == -1) {
+                    try {
+                        sendErrorResponse(exchange, 500, "服务器内部错误");
+                    } catch (IOException ignored) {
+                        exchange.close();
+                    }
+                }
+            } finally {
+                metrics.end(exchange.getResponseCode(), start);
+            }
+        });
+    }
+
+    /**
+     * 实际监听的端口（端口配置为0时由系统分配）
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    /**
+     * 停止服务器
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * 发送错误响应
+     */
+    private void sendErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
+        byte[] body = message.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
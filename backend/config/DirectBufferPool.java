@@ -0,0 +1,58 @@
+package config;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定大小的直接缓冲区池
+ * 直接缓冲区读写socket时不需要经过JDK内部的临时缓冲区复制，但分配和回收都很慢，因此用完后放回池中复用；
+ * 池中最多保留 maxPooled 个，超出的交给GC回收。
+ */
+class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * 取出一个清空的缓冲区（写模式）
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 是否为池中取出的缓冲区（其他缓冲区不应放回）
+     */
+    boolean owns(ByteBuffer buffer) {
+        return buffer.isDirect() && buffer.capacity() == bufferSize;
+    }
+
+    /**
+     * 放回缓冲区，调用方之后不能再使用它
+     */
+    void release(ByteBuffer buffer) {
+        if (owns(buffer) && pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else if (owns(buffer)) {
+            pooled.decrementAndGet();
+        }
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+}
@@ -1,14 +1,21 @@
 package config;
 
 import dao.ProductDao;
+import dao.ProductJournal;
+import dao.ReplicationFollower;
+import dao.ReplicationLeader;
 import dao.UserDao;
 import service.ProductService;
 import service.AuthService;
 import controller.ProductController;
 import controller.AuthController;
+import controller.MetricsController;
+import controller.StaticFileController;
+import controller.WriteForwarder;
 import model.Product;
-import ApiServer;
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 库存管理系统主程序
@@ -22,31 +29,131 @@ public class Main {
     private static ProductController productController;
     private static AuthController authController;
     private static ApiServer apiServer;
+    private static ReplicationLeader replicationLeader;      // 主节点模式
+    private static ReplicationFollower replicationFollower;  // 副本模式
 
     public static void main(String[] args) {
         // 初始化DAO层
         productDao = new ProductDao();
         userDao = new UserDao();
         
+        // 复制角色：leader（主节点，需要数据目录）、follower（只读副本，数据来自主节点），未指定时为单机
+        String role = System.getProperty("inventory.replication.role", "standalone");
+        boolean follower = "follower".equals(role);
+        if (!"standalone".equals(role) && !"leader".equals(role) && !follower) {
+            System.err.println("启动服务器失败: 未知的复制角色: " + role + "（可选 leader、follower）");
+            return;
+        }
+        
+        // 指定了数据目录时启用持久化（预写日志 + 快照），重启后数据不丢失
+        String dataDir = System.getProperty("inventory.dataDir");
+        if (follower && dataDir != null) {
+            System.err.println("启动服务器失败: 副本的数据来自主节点，不能同时指定 inventory.dataDir");
+            return;
+        }
+        if ("leader".equals(role) && dataDir == null) {
+            System.err.println("启动服务器失败: 主节点需要指定 inventory.dataDir（复制的是预写日志）");
+            return;
+        }
+        if (follower && !"signed".equals(System.getProperty("inventory.auth.tokenMode", "session"))) {
+            System.err.println("启动服务器失败: 副本需要 inventory.auth.tokenMode=signed（token在主节点和副本之间通用）");
+            return;
+        }
+        if (dataDir != null) {
+            ProductJournal journal = new ProductJournal(new File(dataDir),
+                    Boolean.parseBoolean(System.getProperty("inventory.journal.sync", "true")),
+                    Long.getLong("inventory.snapshot.intervalSeconds", 300),
+                    Long.getLong("inventory.snapshot.journalBytes", 64L * 1024 * 1024));
+            try {
+                productDao.enablePersistence(journal);
+                if ("leader".equals(role)) {
+                    replicationLeader = new ReplicationLeader(productDao, journal,
+                            Integer.getInteger("inventory.replication.port", 9090),
+                            Long.getLong("inventory.replication.bufferBytes", 64L * 1024 * 1024));
+                    replicationLeader.start();
+                }
+            } catch (IOException e) {
+                System.err.println("加载数据目录失败: " + e.getMessage());
+                e.printStackTrace();
+                return;
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    if (replicationLeader != null) {
+                        replicationLeader.close();
+                    }
+                    productDao.closePersistence();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        
         // 初始化Service层
         productService = new ProductService(productDao);
-        authService = new AuthService(userDao);
+        try {
+            authService = createAuthService(userDao);
+        } catch (IllegalArgumentException e) {
+            System.err.println("启动服务器失败: " + e.getMessage());
+            return;
+        }
         
         // 初始化Controller层
         productController = new ProductController(productService);
         authController = new AuthController(authService);
         
-        // 初始化一些示例数据
-        initSampleData();
+        // 副本：商品数据全部来自主节点（监听器已注册，复制来的修改同样更新统计和变更推送）
+        if (follower) {
+            String leader = System.getProperty("inventory.replication.leader", "localhost:9090");
+            int colon = leader.lastIndexOf(':');
+            try {
+                replicationFollower = new ReplicationFollower(productDao, leader.substring(0, colon),
+                        Integer.parseInt(leader.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                System.err.println("启动服务器失败: inventory.replication.leader 应为 主机:端口，当前为 " + leader);
+                return;
+            }
+            replicationFollower.start();
+        }
+        
+        // 初始化一些示例数据（持久化模式下仅在数据为空时加载，副本不加载）
+        if (!follower && productService.getProductCount() == 0) {
+            initSampleData();
+        }
         
-        // 创建并启动API服务器
-        apiServer = new ApiServer(productController, authController);
+        // 创建并启动API服务器（端口和线程模型可通过系统属性配置）
+        int port = Integer.getInteger("inventory.http.port", 8080);
+        ExecutorService executor;
+        try {
+            executor = ServerExecutors.create(
+                    System.getProperty("inventory.http.executor", ServerExecutors.BOUNDED),
+                    Integer.getInteger("inventory.http.threads", 10),
+                    Integer.getInteger("inventory.http.queue", 1000));
+        } catch (IllegalArgumentException e) {
+            System.err.println("启动服务器失败: " + e.getMessage());
+            return;
+        }
+        StaticFileController staticFileController = new StaticFileController(new File("web"),
+                Long.getLong("inventory.static.maxCachedFileBytes", 1024L * 1024));
+        apiServer = new ApiServer(productController, authController, staticFileController, port,
+                Integer.getInteger("inventory.http.backlog", 1024), executor);
+        try {
+            apiServer.setEngine(System.getProperty("inventory.http.engine", ApiServer.ENGINE_BUILTIN));
+        } catch (IllegalArgumentException e) {
+            System.err.println("启动服务器失败: " + e.getMessage());
+            executor.shutdown();
+            return;
+        }
+        if (follower) {
+            apiServer.setWriteForwarder(new WriteForwarder(System.getProperty("inventory.replication.leaderUrl")));
+        }
+        registerMetrics(apiServer.getMetricsController());
         try {
             apiServer.start();
             System.out.println("\n=========================================");
             System.out.println("     库存管理系统已启动");
             System.out.println("=========================================");
-            System.out.println("访问地址: http://localhost:8080");
+            System.out.println("访问地址: http://localhost:" + port);
             System.out.println("按 Ctrl+C 停止服务器");
             System.out.println("=========================================\n");
             
@@ -61,6 +168,78 @@ public class Main {
         }
     }
 
+    /**
+     * 注册业务相关的监控指标
+     */
+    private static void registerMetrics(MetricsController metrics) {
+        metrics.gauge("inventory_products", "商品种类数", productService::getProductCount);
+        metrics.gauge("inventory_version", "库存数据版本（每次修改后增加）", productService::getInventoryVersion);
+        metrics.gauge("inventory_events_subscribers", "变更推送（/api/events）的订阅连接数",
+                productService.getChangeFeed()::getSubscriberCount);
+        metrics.counter("inventory_events_resyncs_total", "因积压过多改为通知客户端重新加载的次数",
+                productService.getChangeFeed()::getResyncCount);
+        metrics.counter("inventory_events_dropped_total", "因写入超时被移除的订阅连接数",
+                productService.getChangeFeed()::getDroppedCount);
+        metrics.gauge("inventory_auth_sessions", "会话数（签名模式下为吊销列表长度）", authService::getSessionCount);
+        metrics.counter("inventory_auth_sessions_expired_total", "后台时间轮清除的过期会话数",
+                authService::getExpiredSessionCount);
+        metrics.counter("inventory_auth_sessions_expired_on_access_total", "验证时发现已过期而清除的会话数",
+                authService::getExpiredOnAccessCount);
+        metrics.counter("inventory_auth_logouts_total", "登出的会话数", authService::getLoggedOutCount);
+        if (replicationLeader != null) {
+            metrics.gauge("inventory_replication_followers", "已连接的副本数", replicationLeader::getFollowerCount);
+            metrics.gauge("inventory_replication_follower_max_lag_records", "最慢的副本落后的日志条数",
+                    replicationLeader::getMaxFollowerLag);
+            metrics.gauge("inventory_replication_buffer_bytes", "内存中保留的待复制日志字节数",
+                    replicationLeader::getBufferedBytes);
+            metrics.counter("inventory_replication_snapshots_sent_total", "向副本发送的快照数",
+                    replicationLeader::getSnapshotsSent);
+        }
+        if (replicationFollower != null) {
+            metrics.gauge("inventory_replication_connected", "是否已连接主节点（1为已连接）",
+                    () -> replicationFollower.isConnected() ? 1 : 0);
+            metrics.gauge("inventory_replication_applied_lsn", "已应用的主节点日志序号", replicationFollower::getAppliedLsn);
+            metrics.gauge("inventory_replication_lag_records", "落后主节点的日志条数", replicationFollower::getLagRecords);
+            metrics.gauge("inventory_replication_lag_seconds", "最近应用的日志从主节点落盘到副本应用的时间（已追上时为0）",
+                    replicationFollower::getDelaySeconds);
+            metrics.gauge("inventory_replication_last_contact_seconds", "距最近一次收到主节点消息的秒数",
+                    replicationFollower::getSecondsSinceContact);
+            metrics.counter("inventory_replication_snapshots_loaded_total", "从主节点加载的快照数",
+                    replicationFollower::getSnapshotsLoaded);
+            metrics.counter("inventory_replication_reconnects_total", "与主节点的重连次数",
+                    replicationFollower::getReconnects);
+        }
+    }
+
+    /**
+     * 按 inventory.auth.tokenMode 创建认证服务：session（默认，会话保存在本进程内）或 signed（HMAC签名token）
+     * 签名模式的密钥取自 inventory.auth.secret，多个实例必须相同；未配置时随机生成（重启后已签发的token失效）
+     */
+    private static AuthService createAuthService(UserDao userDao) {
+        String mode = System.getProperty("inventory.auth.tokenMode", "session");
+        long expiry = Long.getLong("inventory.auth.tokenHours", 24) * 60 * 60 * 1000;
+        switch (mode) {
+            case "session":
+                return new AuthService(userDao, expiry);
+            case "signed":
+                String secret = System.getProperty("inventory.auth.secret");
+                byte[] key;
+                if (secret != null) {
+                    key = secret.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                    if (key.length < 32) {
+                        throw new IllegalArgumentException("inventory.auth.secret 至少需要32字节");
+                    }
+                } else {
+                    key = new byte[32];
+                    new java.security.SecureRandom().nextBytes(key);
+                    System.err.println("未配置 inventory.auth.secret，使用随机密钥（重启后需要重新登录，多个实例之间无法共用token）");
+                }
+                return new AuthService(userDao, expiry, key);
+            default:
+                throw new IllegalArgumentException("未知的token模式: " + mode + "（可选 session、signed）");
+        }
+    }
+
     /**
      * 初始化示例数据
      */
@@ -0,0 +1,681 @@
+package config;
+
+import com.sun.net.httpserver.Headers;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioHttpServer 的一个连接
+ * 事件循环线程把读到的数据放入输入缓冲区并解析请求头；同一连接同时只有一个请求在处理，
+ * 管线化的后续请求留在缓冲区中，前一个响应结束后（exchangeFinished）再解析和分发。
+ * 缓冲区在没有未处理的数据时归还到池中，空闲的保持连接不占用缓冲区。
+ *
+ * 响应数据由处理线程追加到输出队列并直接尝试写出，写不完的部分由事件循环在socket可写时继续写出；
+ * 队列中的数据超过 MAX_PENDING_BYTES 时写出方等待（背压），超时关闭连接。
+ *
+ * 锁：读取状态由 this 保护，输出队列由 outLock 保护；持有 this 时可以获取 outLock，反之不行
+ * （持有 outLock 时不调用 close）。
+ */
+final class NioHttpConnection {
+    private static final long MAX_PENDING_BYTES = 256 * 1024;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    final NioHttpServer server;
+    final NioHttpServer.EventLoop loop;
+    final SocketChannel channel;
+    SelectionKey key;  // 注册之后由事件循环设置和修改
+
+    // 读取状态（由 this 保护）
+    private ByteBuffer in;  // 读模式，position到limit为未处理的数据；为null时没有未处理的数据
+    private int scanned;    // 从position起已确认不含请求头结束标记的字节数
+    private NioHttpExchange current;  // 正在处理的请求
+    private BodyStream currentBody;   // 正在处理的请求的流式请求体（请求体已完整读入时为null）
+    private boolean readPaused;       // 缓冲区已满，暂停读取
+    private boolean eof;              // 对端已关闭写方向
+    private boolean shutdown;         // 不再接受新请求（当前响应写完后关闭）
+    private volatile long lastActive = System.currentTimeMillis();
+
+    // 输出队列（由 outLock 保护）
+    private final Object outLock = new Object();
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[16];
+    private long pendingBytes;
+    private boolean writeRegistered;  // 已注册（或正在注册）OP_WRITE
+    private boolean closeWhenFlushed;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    NioHttpConnection(NioHttpServer server, NioHttpServer.EventLoop loop, SocketChannel channel) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    /**
+     * 事件循环：socket可读
+     */
+    void onReadable() throws IOException {
+        NioHttpExchange next = null;
+        synchronized (this) {
+            if (closed.get()) {
+                return;
+            }
+            if (shutdown) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                return;
+            }
+            if (in == null) {
+                in = server.buffers.acquire();
+                in.flip();
+            }
+            if (in.remaining() == in.capacity()) {
+                if (current == null) {
+                    reject(431, "Request Header Fields Too Large");
+                } else {
+                    // 请求体或管线化的请求填满了缓冲区，等处理线程取走数据后再读
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                return;
+            }
+            in.compact();
+            int n;
+            try {
+                n = channel.read(in);
+            } finally {
+                in.flip();
+            }
+            if (n < 0) {
+                eof = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                notifyAll();
+                if (current == null) {
+                    // 已完成的响应可能还没写完
+                    stopReading();
+                    closeAfterFlush();
+                }
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            if (current != null) {
+                notifyAll();
+            } else {
+                next = parseNext();
+            }
+            releaseInputIfEmpty();
+        }
+        if (next != null) {
+            server.dispatch(next);
+        }
+    }
+
+    /**
+     * 事件循环：socket可写，继续写出输出队列
+     */
+    void onWritable() throws IOException {
+        boolean closeNow = false;
+        synchronized (outLock) {
+            flushOutbound();
+            if (outbound.isEmpty()) {
+                writeRegistered = false;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                closeNow = closeWhenFlushed;
+            }
+            if (pendingBytes <= MAX_PENDING_BYTES) {
+                outLock.notifyAll();
+            }
+        }
+        if (closeNow) {
+            close();
+        }
+    }
+
+    /**
+     * 解析缓冲区中的下一个请求头（持有 this）
+     * @return 新的请求，请求头不完整时返回null（请求格式错误时返回错误响应并关闭连接）
+     */
+    private NioHttpExchange parseNext() {
+        // 请求之间允许有空行
+        while (in != null && in.hasRemaining() && (in.get(in.position()) == '\r' || in.get(in.position()) == '\n')) {
+            in.get();
+        }
+        if (in == null || !in.hasRemaining() || shutdown) {
+            scanned = 0;
+            return null;
+        }
+        int start = in.position();
+        int limit = in.limit();
+        int end = -1;
+        for (int i = start + scanned; i + 3 < limit; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            scanned = Math.max(0, limit - start - 3);
+            if (limit - start == in.capacity()) {
+                reject(431, "Request Header Fields Too Large");
+            }
+            return null;
+        }
+        scanned = 0;
+        byte[] head = new byte[end - start];
+        in.get(head);
+        in.position(end + 4);
+        String text = new String(head, StandardCharsets.ISO_8859_1);
+
+        int lineEnd = text.indexOf("\r\n");
+        String requestLine = lineEnd < 0 ? text : text.substring(0, lineEnd);
+        int firstSpace = requestLine.indexOf(' ');
+        int lastSpace = requestLine.lastIndexOf(' ');
+        if (firstSpace <= 0 || lastSpace <= firstSpace) {
+            reject(400, "Bad Request");
+            return null;
+        }
+        String method = requestLine.substring(0, firstSpace);
+        String protocol = requestLine.substring(lastSpace + 1);
+        if (!protocol.startsWith("HTTP/1.")) {
+            reject(505, "HTTP Version Not Supported");
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(requestLine.substring(firstSpace + 1, lastSpace));
+        } catch (URISyntaxException e) {
+            reject(400, "Bad Request");
+            return null;
+        }
+        Headers headers = new Headers();
+        int pos = lineEnd < 0 ? text.length() : lineEnd + 2;
+        while (pos < text.length()) {
+            int eol = text.indexOf("\r\n", pos);
+            if (eol < 0) {
+                eol = text.length();
+            }
+            int colon = text.indexOf(':', pos);
+            if (colon <= pos || colon > eol) {
+                reject(400, "Bad Request");
+                return null;
+            }
+            headers.add(text.substring(pos, colon).trim(), text.substring(colon + 1, eol).trim());
+            pos = eol + 2;
+        }
+
+        boolean http11 = "HTTP/1.1".equals(protocol);
+        String connection = headers.getFirst("Connection");
+        boolean keepAlive = http11 ? !hasToken(connection, "close") : hasToken(connection, "keep-alive");
+        InputStream body;
+        String transferEncoding = headers.getFirst("Transfer-Encoding");
+        String contentLength = headers.getFirst("Content-Length");
+        if (transferEncoding != null) {
+            if (!"chunked".equalsIgnoreCase(transferEncoding)) {
+                reject(501, "Not Implemented");
+                return null;
+            }
+            currentBody = new ChunkedBody();
+            body = currentBody;
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length < 0) {
+                reject(400, "Bad Request");
+                return null;
+            }
+            if (length <= in.remaining()) {
+                byte[] bytes = new byte[(int) length];
+                in.get(bytes);
+                body = new ByteArrayInputStream(bytes);
+            } else {
+                currentBody = new FixedBody(length);
+                body = currentBody;
+            }
+        } else {
+            body = InputStream.nullInputStream();
+        }
+        if (currentBody != null && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) {
+            try {
+                synchronized (outLock) {
+                    enqueue(ByteBuffer.wrap(CONTINUE));
+                }
+            } catch (IOException e) {
+                close();
+                return null;
+            }
+        }
+        current = new NioHttpExchange(this, method, uri, protocol, headers, body, keepAlive);
+        return current;
+    }
+
+    private static boolean hasToken(String header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求格式错误：返回错误响应后关闭连接（持有 this）
+     */
+    private void reject(int code, String reason) {
+        current = null;
+        currentBody = null;
+        stopReading();
+        byte[] response = ("HTTP/1.1 " + code + " " + reason + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        try {
+            synchronized (outLock) {
+                enqueue(ByteBuffer.wrap(response));
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        closeAfterFlush();
+    }
+
+    /**
+     * 不再读取和解析新的请求（持有 this）
+     */
+    private void stopReading() {
+        shutdown = true;
+        if (in != null) {
+            server.buffers.release(in);
+            in = null;
+        }
+        loop.execute(() -> {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    /**
+     * 缓冲区已满而暂停了读取时恢复读取（持有 this）
+     */
+    private void resumeReading() {
+        if (readPaused && !shutdown) {
+            readPaused = false;
+            loop.execute(() -> {
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            });
+        }
+    }
+
+    private void releaseInputIfEmpty() {
+        if (in != null && !in.hasRemaining()) {
+            server.buffers.release(in);
+            in = null;
+            scanned = 0;
+        }
+    }
+
+    /**
+     * 处理线程读取流式请求体：等待事件循环读入数据
+     * @return 读取的字节数，对端已关闭时返回-1
+     */
+    private int readBody(byte[] b, int off, int len) throws IOException {
+        synchronized (this) {
+            long deadline = 0;
+            while (in == null || !in.hasRemaining()) {
+                if (closed.get()) {
+                    throw new IOException("连接已关闭");
+                }
+                if (eof) {
+                    return -1;
+                }
+                resumeReading();
+                long now = System.currentTimeMillis();
+                if (deadline == 0) {
+                    deadline = now + NioHttpServer.TIMEOUT_MILLIS;
+                } else if (now >= deadline) {
+                    throw new SocketTimeoutException("读取请求体超时");
+                }
+                try {
+                    wait(deadline - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("读取请求体被中断");
+                }
+            }
+            int n = Math.min(len, in.remaining());
+            in.get(b, off, n);
+            releaseInputIfEmpty();
+            resumeReading();
+            return n;
+        }
+    }
+
+    /**
+     * 响应结束：连接保持时解析并分发下一个已缓存的请求，否则写完后关闭连接
+     * @param keepAlive 响应是否允许保持连接
+     */
+    void exchangeFinished(NioHttpExchange exchange, boolean keepAlive) {
+        NioHttpExchange next;
+        synchronized (this) {
+            if (current != exchange) {
+                return;
+            }
+            current = null;
+            // 请求体没有读完时无法找到下一个请求的开头
+            if (currentBody != null && !currentBody.finished()) {
+                keepAlive = false;
+            }
+            currentBody = null;
+            if (!keepAlive || closed.get()) {
+                stopReading();
+                closeAfterFlush();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            next = parseNext();
+            if (next == null && !shutdown) {
+                if (eof) {
+                    // 对端已关闭写方向，不会再有请求
+                    stopReading();
+                    closeAfterFlush();
+                    return;
+                }
+                releaseInputIfEmpty();
+                resumeReading();
+            }
+        }
+        if (next != null) {
+            server.dispatch(next);
+        }
+    }
+
+    /**
+     * 追加响应数据并尽量立即写出；队列中的数据过多时等待事件循环写出（超时关闭连接）
+     * 写出失败时关闭连接
+     */
+    void write(List<ByteBuffer> data) throws IOException {
+        boolean timedOut = false;
+        try {
+            synchronized (outLock) {
+                for (ByteBuffer buffer : data) {
+                    enqueue(buffer);
+                }
+                long deadline = 0;
+                while (pendingBytes > MAX_PENDING_BYTES && !closed.get()) {
+                    long now = System.currentTimeMillis();
+                    if (deadline == 0) {
+                        deadline = now + NioHttpServer.TIMEOUT_MILLIS;
+                    } else if (now >= deadline) {
+                        timedOut = true;
+                        break;
+                    }
+                    try {
+                        outLock.wait(deadline - now);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("写出响应被中断");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        if (timedOut) {
+            close();
+            throw new SocketTimeoutException("写出响应超时");
+        }
+        if (closed.get()) {
+            throw new IOException("连接已关闭");
+        }
+    }
+
+    /**
+     * 追加到输出队列（持有 outLock）；没有在等待可写事件时直接写出，写不完的注册OP_WRITE
+     */
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        if (closed.get()) {
+            server.buffers.release(buffer);
+            throw new IOException("连接已关闭");
+        }
+        outbound.add(buffer);
+        pendingBytes += buffer.remaining();
+        if (!writeRegistered) {
+            flushOutbound();
+            if (!outbound.isEmpty()) {
+                writeRegistered = true;
+                loop.execute(() -> {
+                    if (key != null && key.isValid()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 把输出队列写入socket直到写完或socket发送缓冲区已满（持有 outLock），写完的池化缓冲区归还
+     */
+    private void flushOutbound() throws IOException {
+        while (!outbound.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : outbound) {
+                gather[count++] = buffer;
+                if (count == gather.length) {
+                    break;
+                }
+            }
+            long written;
+            try {
+                written = channel.write(gather, 0, count);
+            } finally {
+                java.util.Arrays.fill(gather, 0, count, null);
+            }
+            pendingBytes -= written;
+            while (!outbound.isEmpty() && !outbound.peekFirst().hasRemaining()) {
+                server.buffers.release(outbound.pollFirst());
+            }
+            if (!outbound.isEmpty() && outbound.peekFirst().position() > 0 || written == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 输出队列写完后关闭连接
+     */
+    private void closeAfterFlush() {
+        boolean closeNow;
+        synchronized (outLock) {
+            closeNow = outbound.isEmpty();
+            if (!closeNow) {
+                closeWhenFlushed = true;
+            }
+        }
+        if (closeNow) {
+            close();
+        }
+    }
+
+    /**
+     * 事件循环：关闭空闲超时的连接（包括请求头长时间没有发完的连接）
+     */
+    void closeIfIdle(long now) {
+        synchronized (this) {
+            if (current != null || now - lastActive < NioHttpServer.TIMEOUT_MILLIS) {
+                return;
+            }
+        }
+        synchronized (outLock) {
+            if (!outbound.isEmpty()) {
+                return;
+            }
+        }
+        close();
+    }
+
+    /**
+     * 关闭连接并归还缓冲区，唤醒等待读写的处理线程（不能在持有 outLock 时调用）
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        NioHttpServer.closeQuietly(channel);
+        synchronized (this) {
+            if (in != null) {
+                server.buffers.release(in);
+                in = null;
+            }
+            notifyAll();
+        }
+        synchronized (outLock) {
+            for (ByteBuffer buffer : outbound) {
+                server.buffers.release(buffer);
+            }
+            outbound.clear();
+            pendingBytes = 0;
+            outLock.notifyAll();
+        }
+        server.connectionClosed(this);
+    }
+
+    /**
+     * 流式请求体（请求体没有完整读入缓冲区时使用）
+     */
+    private abstract class BodyStream extends InputStream {
+        private final byte[] one = new byte[1];
+
+        /** 请求体是否已读完 */
+        abstract boolean finished();
+
+        @Override
+        public int read() throws IOException {
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        int nextByte() throws IOException {
+            if (readBody(one, 0, 1) < 0) {
+                throw new EOFException("请求体不完整");
+            }
+            return one[0] & 0xff;
+        }
+    }
+
+    /**
+     * Content-Length 指定长度的请求体
+     */
+    private final class FixedBody extends BodyStream {
+        private long remaining;
+
+        FixedBody(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = readBody(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("请求体不完整");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        boolean finished() {
+            return remaining == 0;
+        }
+    }
+
+    /**
+     * 分块传输编码（Transfer-Encoding: chunked）的请求体
+     */
+    private final class ChunkedBody extends BodyStream {
+        private long chunkRemaining;
+        private boolean started;
+        private boolean done;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (done) {
+                return -1;
+            }
+            if (chunkRemaining == 0) {
+                if (started && !readLine().isEmpty()) {
+                    throw new IOException("分块格式错误");
+                }
+                started = true;
+                String line = readLine();
+                int extension = line.indexOf(';');
+                try {
+                    chunkRemaining = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("分块格式错误: " + line);
+                }
+                if (chunkRemaining == 0) {
+                    // 跳过trailer
+                    while (!readLine().isEmpty()) {
+                    }
+                    done = true;
+                    return -1;
+                }
+            }
+            int n = readBody(b, off, (int) Math.min(len, chunkRemaining));
+            if (n < 0) {
+                throw new EOFException("请求体不完整");
+            }
+            chunkRemaining -= n;
+            return n;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = nextByte()) != '\n') {
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+                if (line.length() > 1024) {
+                    throw new IOException("分块格式错误");
+                }
+            }
+            return line.toString();
+        }
+
+        @Override
+        boolean finished() {
+            return done;
+        }
+    }
+}
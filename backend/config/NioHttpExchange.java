@@ -0,0 +1,422 @@
+package config;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * NioHttpServer 的请求/响应（HttpExchange 适配器）
+ * 响应头语义与内置HttpServer相同：sendResponseHeaders 的长度大于0时按 Content-Length 发送，
+ * 为0时分块传输（HTTP/1.0请求以关闭连接结束响应体），为-1时没有响应体；HEAD、204、304没有响应体。
+ * 响应体先写入池化的直接缓冲区，缓冲区写满、flush 或 close 时交给连接写出（响应头和第一块响应体一起写出）。
+ * close 之后响应结束，连接开始处理下一个请求；处理函数返回并不结束响应（事件流由其他线程继续写出）。
+ */
+final class NioHttpExchange extends HttpExchange {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static volatile CachedDate date = new CachedDate(0, "");
+
+    private final NioHttpConnection connection;
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private boolean keepAlive;
+    private HttpContext context;
+    private Map<String, Object> attributes;
+    private InputStream requestBody;
+    private final ResponseBody responseBody = new ResponseBody();
+    private OutputStream responseStream = responseBody;
+    private volatile int responseCode = -1;
+
+    NioHttpExchange(NioHttpConnection connection, String method, URI uri, String protocol, Headers requestHeaders,
+                    InputStream requestBody, boolean keepAlive) {
+        this.connection = connection;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = requestBody;
+        this.keepAlive = keepAlive;
+    }
+
+    NioHttpConnection connection() {
+        return connection;
+    }
+
+    void setContext(HttpContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        if (responseCode == -1) {
+            // 没有发送响应：只能关闭连接
+            connection.close();
+            return;
+        }
+        try {
+            responseStream.close();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseStream;
+    }
+
+    @Override
+    public void sendResponseHeaders(int code, long length) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("响应头已发送");
+        }
+        boolean http11 = "HTTP/1.1".equals(protocol);
+        String framing = null;  // 由服务器决定的 Content-Length 或 Transfer-Encoding 头
+        long bodyLength;        // 允许写入的响应体长度，-1为不限
+        boolean chunked = false;
+        if ("HEAD".equals(method) || code == 304) {
+            // 保留处理函数设置的 Content-Length（与内置HttpServer相同）
+            bodyLength = 0;
+        } else if (code < 200 || code == 204) {
+            bodyLength = 0;
+        } else if (length > 0) {
+            framing = "Content-Length: " + length;
+            bodyLength = length;
+        } else if (length == -1) {
+            framing = "Content-Length: 0";
+            bodyLength = 0;
+        } else if (http11) {
+            framing = "Transfer-Encoding: chunked";
+            chunked = true;
+            bodyLength = -1;
+        } else {
+            // HTTP/1.0 不支持分块：以关闭连接结束响应体
+            keepAlive = false;
+            bodyLength = -1;
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            String name = header.getKey();
+            if (framing != null && (name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding")) || name.equalsIgnoreCase("Connection")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                head.append(name).append(": ").append(value).append("\r\n");
+            }
+        }
+        if (framing != null) {
+            head.append(framing).append("\r\n");
+        }
+        if (!responseHeaders.containsKey("Date")) {
+            head.append("Date: ").append(currentDate()).append("\r\n");
+        }
+        if (!keepAlive) {
+            head.append("Connection: close\r\n");
+        } else if (!http11) {
+            head.append("Connection: keep-alive\r\n");
+        }
+        head.append("\r\n");
+
+        responseCode = code;
+        responseBody.begin(head.toString().getBytes(StandardCharsets.ISO_8859_1), chunked, bodyLength);
+        if (bodyLength == 0) {
+            responseBody.close();
+        }
+    }
+
+    /**
+     * 发送简单的错误响应并结束
+     */
+    void sendError(int code, String message) throws IOException {
+        byte[] body = ("<h1>" + code + " " + reasonPhrase(code) + "</h1>" + message).getBytes(StandardCharsets.UTF_8);
+        responseHeaders.set("Content-Type", "text/html; charset=utf-8");
+        sendResponseHeaders(code, body.length);
+        try (OutputStream os = getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) connection.channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public synchronized Object getAttribute(String name) {
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    @Override
+    public synchronized void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        if (value != null) {
+            attributes.put(name, value);
+        } else {
+            attributes.remove(name);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream in, OutputStream out) {
+        if (in != null) {
+            requestBody = in;
+        }
+        if (out != null) {
+            responseStream = out;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 413: return "Payload Too Large";
+            case 415: return "Unsupported Media Type";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            default: return "";
+        }
+    }
+
+    /**
+     * Date 响应头（每秒格式化一次）
+     */
+    private static String currentDate() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate cached = date;
+        if (cached.second != second) {
+            cached = new CachedDate(second, DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+            date = cached;
+        }
+        return cached.text;
+    }
+
+    private static final class CachedDate {
+        final long second;
+        final String text;
+
+        CachedDate(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 响应体输出流：写入池化缓冲区，写满时交给连接写出；分块传输时每个缓冲区是一个块
+     */
+    private final class ResponseBody extends OutputStream {
+        private ByteBuffer buffer;    // 写模式，尚未交给连接的数据
+        private ByteBuffer head;      // 分块传输时尚未写出的响应头（与第一个块一起写出）
+        private boolean chunked;
+        private long remaining = -1;  // 还允许写入的字节数，-1为不限
+        private boolean closed;
+
+        void begin(byte[] headBytes, boolean chunked, long length) throws IOException {
+            this.chunked = chunked;
+            if (chunked) {
+                head = ByteBuffer.wrap(headBytes);
+            } else {
+                put(headBytes, 0, headBytes.length);
+            }
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (closed) {
+                throw new IOException("响应已结束");
+            }
+            if (responseCode == -1) {
+                throw new IOException("尚未发送响应头");
+            }
+            if (remaining >= 0) {
+                if (len > remaining) {
+                    throw new IOException("响应体超出 Content-Length");
+                }
+                remaining -= len;
+            }
+            put(b, off, len);
+        }
+
+        private void put(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (buffer == null) {
+                    buffer = connection.server.buffers.acquire();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!buffer.hasRemaining()) {
+                    emit(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed && (head != null || buffer != null && buffer.position() > 0)) {
+                emit(false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (remaining > 0) {
+                // 与内置HttpServer相同：响应体不完整时只能关闭连接
+                discard();
+                connection.close();
+                throw new IOException("响应体不足 Content-Length");
+            }
+            emit(true);
+            connection.exchangeFinished(NioHttpExchange.this, keepAlive);
+        }
+
+        /**
+         * 把已缓冲的数据交给连接写出
+         * @param last 是否为响应的最后一部分（分块传输时追加结束块）
+         */
+        private void emit(boolean last) throws IOException {
+            List<ByteBuffer> out = new ArrayList<>(5);
+            if (head != null) {
+                out.add(head);
+                head = null;
+            }
+            if (buffer != null) {
+                if (buffer.position() == 0) {
+                    connection.server.buffers.release(buffer);
+                } else {
+                    buffer.flip();
+                    if (chunked) {
+                        out.add(ByteBuffer.wrap((Integer.toHexString(buffer.remaining()) + "\r\n")
+                                .getBytes(StandardCharsets.ISO_8859_1)));
+                        out.add(buffer);
+                        out.add(ByteBuffer.wrap(CRLF));
+                    } else {
+                        out.add(buffer);
+                    }
+                }
+                buffer = null;
+            }
+            if (last && chunked) {
+                out.add(ByteBuffer.wrap(LAST_CHUNK));
+            }
+            if (!out.isEmpty()) {
+                connection.write(out);
+            }
+        }
+
+        private void discard() {
+            if (buffer != null) {
+                connection.server.buffers.release(buffer);
+                buffer = null;
+            }
+            head = null;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package config;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.Authenticator;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于NIO事件循环的HTTP/1.1服务器（HttpServer的另一种实现，可替换JDK内置的HttpServer）
+ * 一个接收线程accept连接后轮流分配给若干个事件循环线程，每个事件循环用一个Selector读写自己的连接，
+ * 空闲的保持连接只占一个SelectionKey，不占线程也不占缓冲区，适合大量并发连接。
+ * 读写socket使用池化的直接缓冲区（见 DirectBufferPool）。
+ *
+ * 支持HTTP/1.1保持连接和管线化：同一连接上的请求按顺序逐个交给处理函数（在 setExecutor 设置的线程池中执行），
+ * 前一个响应结束后才解析下一个已缓存的请求，响应顺序与请求顺序一致。
+ * 启动前必须设置线程池：处理函数读取流式请求体时要等待事件循环读入数据，不能在事件循环线程中执行。
+ * 处理函数通过标准的 HttpExchange 读写请求和响应，不需要任何修改即可在两种服务器之间切换。
+ *
+ * 系统属性：
+ * inventory.http.selectors 事件循环线程数（默认CPU核数的一半，至少1个）
+ * inventory.http.idleSeconds 保持连接的空闲超时和读写超时（秒，默认30）
+ */
+public class NioHttpServer extends HttpServer {
+    /** 读写缓冲区大小，同时是请求行和请求头的长度上限 */
+    static final int BUFFER_SIZE = 8 * 1024;
+    /** 缓冲区池最多保留的缓冲区数（共64MB） */
+    private static final int MAX_POOLED_BUFFERS = 8192;
+    static final long TIMEOUT_MILLIS = Long.getLong("inventory.http.idleSeconds", 30) * 1000;
+
+    final DirectBufferPool buffers = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private volatile Executor executor;
+    private EventLoop[] loops;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * 创建并绑定服务器（与 HttpServer.create 相同，调用 start 之后开始接受连接）
+     * @param backlog 等待accept的连接队列长度（0为系统默认）
+     */
+    public static NioHttpServer create(InetSocketAddress address, int backlog) throws IOException {
+        NioHttpServer server = new NioHttpServer();
+        server.bind(address, backlog);
+        return server;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("服务器已绑定");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, backlog);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (serverChannel == null || running) {
+            throw new IllegalStateException("服务器未绑定或已启动");
+        }
+        if (executor == null) {
+            throw new IllegalStateException("启动前需要通过 setExecutor 设置执行处理函数的线程池");
+        }
+        int count = Integer.getInteger("inventory.http.selectors",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        loops = new EventLoop[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                loops[i] = new EventLoop("http-nio-" + i);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建Selector", e);
+        }
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "http-nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * 接收线程：阻塞accept，新连接轮流交给各个事件循环
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // 如文件描述符耗尽：稍后重试，不退出接收线程
+                System.err.println("接受连接失败: " + e);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                // 响应头和响应体通常一次写出，管线化的多个响应分别写出时不应等待对端确认
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.register(channel);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * 设置执行处理函数的线程池（必须在 start 之前设置，不能为null）
+     */
+    @Override
+    public synchronized void setExecutor(Executor executor) {
+        if (running) {
+            throw new IllegalStateException("服务器已启动");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 停止服务器：不再接受连接并关闭所有连接（不等待正在处理的请求）
+     */
+    @Override
+    public synchronized void stop(int delay) {
+        running = false;
+        closeQuietly(serverChannel);
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        Context context = (Context) createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("路径必须以/开头: " + path);
+        }
+        for (Context context : contexts) {
+            if (context.path.equals(path)) {
+                throw new IllegalArgumentException("路径已注册: " + path);
+            }
+        }
+        Context context = new Context(path);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.path.equals(path))) {
+            throw new IllegalArgumentException("路径未注册: " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        contexts.remove(context);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 当前打开的连接数
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * 把已解析的请求交给线程池执行
+     */
+    void dispatch(NioHttpExchange exchange) {
+        try {
+            executor.execute(() -> handle(exchange));
+        } catch (RejectedExecutionException e) {
+            exchange.connection().close();
+        }
+    }
+
+    /**
+     * 按最长路径前缀选择处理函数，没有匹配时返回404
+     * 处理函数抛出异常时关闭连接（与内置HttpServer相同）
+     */
+    private void handle(NioHttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        Context match = null;
+        for (Context context : contexts) {
+            if (path != null && path.startsWith(context.path)
+                    && (match == null || context.path.length() > match.path.length())) {
+                match = context;
+            }
+        }
+        try {
+            if (match == null || match.handler == null) {
+                exchange.sendError(404, "No context found for request");
+                return;
+            }
+            exchange.setContext(match);
+            new Filter.Chain(match.filters, match.handler).doFilter(exchange);
+        } catch (IOException e) {
+            exchange.connection().close();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            exchange.connection().close();
+        }
+    }
+
+    void connectionClosed(NioHttpConnection connection) {
+        openConnections.decrementAndGet();
+        connection.loop.connections.remove(connection);
+    }
+
+    static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 事件循环：一个线程和一个Selector，负责分配给它的连接的读事件、可写事件和空闲超时
+     * 其他线程对连接的SelectionKey的修改通过 execute 交给本线程执行
+     */
+    final class EventLoop extends Thread {
+        final Selector selector;
+        final Set<NioHttpConnection> connections = ConcurrentHashMap.newKeySet();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        /**
+         * 在事件循环线程中执行任务
+         */
+        void execute(Runnable task) {
+            if (Thread.currentThread() == this) {
+                task.run();
+                return;
+            }
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            NioHttpConnection connection = new NioHttpConnection(NioHttpServer.this, this, channel);
+            openConnections.incrementAndGet();
+            connections.add(connection);
+            execute(() -> {
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    connection.close();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            long nextSweep = System.currentTimeMillis() + 1000;
+            while (running) {
+                try {
+                    selector.select(1000);
+                } catch (IOException e) {
+                    System.err.println("Selector异常: " + e);
+                    continue;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey key : selected) {
+                    NioHttpConnection connection = (NioHttpConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        connection.close();
+                    }
+                }
+                selected.clear();
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    nextSweep = now + 1000;
+                    for (NioHttpConnection connection : connections) {
+                        connection.closeIfIdle(now);
+                    }
+                }
+            }
+            for (NioHttpConnection connection : connections) {
+                connection.close();
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * 路径前缀及其处理函数
+     */
+    final class Context extends HttpContext {
+        final String path;
+        private volatile HttpHandler handler;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+        private Authenticator authenticator;
+
+        Context(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            if (this.handler != null) {
+                throw new IllegalArgumentException("处理函数已设置: " + path);
+            }
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+}
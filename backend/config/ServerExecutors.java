@@ -0,0 +1,161 @@
+package config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP请求处理线程模型
+ *
+ *   virtual       每个请求一个虚拟线程（需要Java 21+，通过反射创建，低版本回退到 bounded）
+ *   bounded       固定数量的平台线程 + 有界队列，队列满时请求被拒绝并返回503
+ *   work-stealing ForkJoin工作窃取线程池
+ *
+ * 被拒绝的请求交给单独的一个线程处理，该线程上 isShedding() 返回true，
+ * 路由只需直接返回503，不会占用业务线程，也不会阻塞HTTP服务器的分发线程。
+ * 该线程的队列同样有上限（慢客户端会拖慢503的写出）；队列也满时请求在分发线程中执行，
+ * isDropping() 返回true，路由直接关闭连接、不写响应（不会阻塞），积压的请求和连接不会无限增长。
+ */
+public class ServerExecutors {
+    public static final String VIRTUAL = "virtual";
+    public static final String BOUNDED = "bounded";
+    public static final String WORK_STEALING = "work-stealing";
+
+    /** 等待返回503的请求数上限 */
+    private static final int SHEDDER_QUEUE_LIMIT = 1024;
+
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> false);
+    private static final ThreadLocal<Boolean> DROPPING = ThreadLocal.withInitial(() -> false);
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+
+    // 处理被拒绝请求的线程（只负责返回503），队列满时在提交线程中以丢弃模式执行
+    private static final ExecutorService shedder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(SHEDDER_QUEUE_LIMIT),
+            runnable -> {
+                Thread thread = new Thread(() -> {
+                    SHEDDING.set(true);
+                    runnable.run();
+                }, "http-shedder");
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, executor) -> {
+                dropped.increment();
+                DROPPING.set(true);
+                try {
+                    runnable.run();
+                } finally {
+                    DROPPING.set(false);
+                }
+            });
+
+    /**
+     * 按名称创建线程池
+     * @param model virtual、bounded 或 work-stealing
+     * @param threads bounded的线程数 / work-stealing的并行度
+     * @param queueLimit bounded的队列长度上限
+     */
+    public static ExecutorService create(String model, int threads, int queueLimit) {
+        switch (model) {
+            case VIRTUAL:
+                ExecutorService virtual = virtualThreads();
+                if (virtual != null) {
+                    return virtual;
+                }
+                System.err.println("当前Java版本不支持虚拟线程，改用 bounded 线程模型");
+                return bounded(threads, queueLimit);
+            case BOUNDED:
+                return bounded(threads, queueLimit);
+            case WORK_STEALING:
+                return Executors.newWorkStealingPool(threads);
+            default:
+                throw new IllegalArgumentException("未知的线程模型: " + model + "（可选 virtual、bounded、work-stealing）");
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程
+     * @return 不支持虚拟线程时返回null
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 固定线程数 + 有界队列，队列满时拒绝（被拒绝的请求返回503）
+     */
+    public static ExecutorService bounded(int threads, int queueLimit) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueLimit)),
+                runnable -> new Thread(runnable, "http-worker-" + counter.incrementAndGet()),
+                (runnable, executor) -> {
+                    rejected.increment();
+                    shedder.execute(runnable);
+                });
+    }
+
+    /**
+     * 当前线程是否在处理被拒绝的请求（为true时应直接返回503）
+     */
+    public static boolean isShedding() {
+        return SHEDDING.get();
+    }
+
+    /**
+     * 当前请求是否因返回503的队列也已满而被丢弃（为true时应直接关闭连接，不写响应）
+     */
+    public static boolean isDropping() {
+        return DROPPING.get();
+    }
+
+    /**
+     * 线程池中等待执行的请求数
+     * @return 无法获取时（虚拟线程没有队列）返回-1
+     */
+    public static long queueDepth(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) executor;
+            return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        }
+        return -1;
+    }
+
+    /**
+     * 线程池中正在执行请求的线程数
+     * @return 无法获取时返回-1
+     */
+    public static long activeThreads(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getActiveThreadCount();
+        }
+        return -1;
+    }
+
+    /**
+     * 因队列已满被拒绝的请求数
+     */
+    public static long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 因返回503的队列也已满而直接关闭连接的请求数
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+}
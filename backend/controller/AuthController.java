@@ -33,10 +33,12 @@ public class AuthController {
             return;
         }
         
-        String requestBody = readRequestBody(exchange);
-        LoginRequest loginReq = JsonUtil.fromJson(requestBody, LoginRequest.class);
+        LoginRequest loginReq = readJson(exchange, LoginRequest.class);
+        if (loginReq == null) {
+            return;
+        }
         
-        if (loginReq == null || loginReq.username == null || loginReq.password == null) {
+        if (loginReq.username == null || loginReq.password == null) {
             sendJsonResponse(exchange, 400, JsonUtil.error("用户名和密码不能为空"));
             return;
         }
@@ -141,11 +143,8 @@ public class AuthController {
         setCorsHeaders(exchange);
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
         
-        byte[] response = json.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, response.length);
-        try (java.io.OutputStream os = exchange.getResponseBody()) {
-            os.write(response);
-        }
+        // 客户端支持时压缩较大的响应（见 ResponseCompression）
+        ResponseCompression.send(exchange, statusCode, json.getBytes(java.nio.charset.StandardCharsets.UTF_8));
     }
 
     /**
@@ -166,19 +165,33 @@ public class AuthController {
     }
 
     /**
-     * 读取请求体
+     * 读取并解析JSON请求体
+     * 请求体为空、格式错误或超过长度限制时直接发送错误响应并返回null
      */
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        try (java.io.InputStream is = exchange.getRequestBody();
-             java.io.BufferedReader reader = new java.io.BufferedReader(
-                 new java.io.InputStreamReader(is, java.nio.charset.StandardCharsets.UTF_8))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+    private <T> T readJson(HttpExchange exchange, Class<T> type) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        long contentLength = -1;
+        if (declared != null) {
+            try {
+                contentLength = Long.parseLong(declared.trim());
+            } catch (NumberFormatException e) {
+                contentLength = -1;
             }
-            return sb.toString();
         }
+        T value;
+        try (java.io.InputStream is = exchange.getRequestBody()) {
+            value = JsonUtil.fromJson(is, contentLength, type);
+        } catch (JsonUtil.RequestTooLargeException e) {
+            sendJsonResponse(exchange, 413, JsonUtil.error("请求体过大"));
+            return null;
+        } catch (IllegalArgumentException e) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("请求格式错误"));
+            return null;
+        }
+        if (value == null) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("请求体不能为空"));
+        }
+        return value;
     }
 
     /**
@@ -200,7 +213,7 @@ public class AuthController {
     }
 
     // 内部类用于JSON反序列化
-    static class LoginRequest {
+    public static class LoginRequest {
         public String username;
         public String password;
     }
@@ -0,0 +1,166 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import util.LatencyHistogram;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 监控指标控制器
+ * 以Prometheus文本格式（0.0.4）导出各路由的请求数、状态码、进行中的请求数和耗时分布，
+ * 以及其他模块注册的计数器和瞬时值（线程池队列长度、响应压缩、会话数等）。
+ * 请求路径上只更新计数器，格式化只在抓取时进行。
+ */
+public class MetricsController {
+    // 导出的耗时分布边界（秒）
+    private static final double[] BUCKETS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentSkipListMap<>();
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+
+    public MetricsController() {
+        counter("inventory_http_compressed_responses_total", "压缩发送的JSON响应数",
+                ResponseCompression::getCompressedResponses);
+        counter("inventory_http_uncompressed_responses_total", "未压缩发送的JSON响应数（低于阈值或客户端不支持）",
+                ResponseCompression::getUncompressedResponses);
+        counter("inventory_http_compression_input_bytes_total", "压缩前的响应字节数",
+                ResponseCompression::getBytesIn);
+        counter("inventory_http_compression_output_bytes_total", "压缩后发送的响应字节数",
+                ResponseCompression::getBytesOut);
+        counter("inventory_http_compression_cpu_seconds_total", "响应压缩消耗的CPU时间",
+                () -> ResponseCompression.getCompressNanos() / 1e9);
+    }
+
+    /**
+     * 获取（首次调用时创建）路由的统计
+     */
+    public RouteMetrics route(String path) {
+        return routes.computeIfAbsent(path, RouteMetrics::new);
+    }
+
+    /**
+     * 注册瞬时值
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        metrics.add(new Metric(name, "gauge", help, value));
+    }
+
+    /**
+     * 注册单调递增的计数器
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        metrics.add(new Metric(name, "counter", help, value));
+    }
+
+    /**
+     * 处理指标抓取请求 (GET)
+     */
+    public void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ResponseCompression.send(exchange, 200, body);
+    }
+
+    /**
+     * 生成Prometheus文本格式
+     */
+    String render() {
+        StringBuilder sb = new StringBuilder(8192);
+        Collection<RouteMetrics> all = routes.values();
+
+        header(sb, "inventory_http_requests_total", "counter", "按路由和状态码统计的请求数");
+        for (RouteMetrics route : all) {
+            for (int status : route.getStatuses()) {
+                sb.append("inventory_http_requests_total{route=\"").append(route.getRoute())
+                        .append("\",code=\"").append(status == 0 ? "none" : String.valueOf(status)).append("\"} ")
+                        .append(route.getStatusCount(status)).append('\n');
+            }
+        }
+
+        header(sb, "inventory_http_requests_in_flight", "gauge", "正在处理的请求数");
+        for (RouteMetrics route : all) {
+            sample(sb, "inventory_http_requests_in_flight", route, null, route.getInFlight());
+        }
+
+        header(sb, "inventory_http_request_duration_seconds", "histogram", "请求处理耗时（不含排队时间）");
+        for (RouteMetrics route : all) {
+            LatencyHistogram latency = route.getLatency();
+            for (double le : BUCKETS_SECONDS) {
+                sample(sb, "inventory_http_request_duration_seconds_bucket", route, "le=\"" + le + "\"",
+                        latency.countAtOrBelow((long) (le * 1e9)));
+            }
+            long count = latency.countAtOrBelow(Long.MAX_VALUE);
+            sample(sb, "inventory_http_request_duration_seconds_bucket", route, "le=\"+Inf\"", count);
+            sb.append("inventory_http_request_duration_seconds_sum{route=\"").append(route.getRoute()).append("\"} ")
+                    .append(latency.getSumNanos() / 1e9).append('\n');
+            sample(sb, "inventory_http_request_duration_seconds_count", route, null, count);
+        }
+
+        header(sb, "inventory_http_request_duration_quantile_seconds", "gauge", "请求处理耗时的百分位数（启动以来）");
+        for (RouteMetrics route : all) {
+            LatencyHistogram latency = route.getLatency();
+            for (double quantile : QUANTILES) {
+                sb.append("inventory_http_request_duration_quantile_seconds{route=\"").append(route.getRoute())
+                        .append("\",quantile=\"").append(quantile / 100).append("\"} ")
+                        .append(latency.valueAtPercentile(quantile) / 1e9).append('\n');
+            }
+        }
+
+        for (Metric metric : metrics) {
+            header(sb, metric.name, metric.type, metric.help);
+            sb.append(metric.name).append(' ');
+            appendValue(sb, metric.value.getAsDouble());
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, RouteMetrics route, String label, long value) {
+        sb.append(name).append("{route=\"").append(route.getRoute()).append('"');
+        if (label != null) {
+            sb.append(',').append(label);
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static void appendValue(StringBuilder sb, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    /**
+     * 注册的单个指标
+     */
+    private static class Metric {
+        final String name;
+        final String type;
+        final String help;
+        final DoubleSupplier value;
+
+        Metric(String name, String type, String help, DoubleSupplier value) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package controller;
 
 import com.sun.net.httpserver.HttpExchange;
+import dao.StockBatch;
+import service.CatalogTransfer;
+import service.ChangeFeed;
+import service.InventoryStatistics;
 import service.ProductService;
 import util.JsonUtil;
 import model.Product;
@@ -12,10 +16,19 @@ import java.util.*;
  * 处理商品相关的HTTP请求
  */
 public class ProductController {
+    private static final int DEFAULT_PAGE_SIZE = 100;  // 分页查询的默认每页数量
+    private static final int MAX_PAGE_SIZE = 1000;     // 分页查询的每页数量上限
+    private static final int MAX_BATCH_LINES = 1000;   // 批量入库/出库的行数上限
+
     private ProductService productService;
+    private final CatalogTransfer catalogTransfer;  // 批量导入/导出
+    private final Set<CatalogTransfer.ImportProgress> imports = java.util.concurrent.ConcurrentHashMap.newKeySet();  // 进行中的导入
+    // ETag前缀：进程启动时间，重启后版本号从0开始，旧的ETag不会误命中
+    private final String etagPrefix = "W/\"" + Long.toHexString(System.currentTimeMillis()) + "-";
 
     public ProductController(ProductService productService) {
         this.productService = productService;
+        this.catalogTransfer = new CatalogTransfer(productService);
     }
 
     /**
@@ -30,8 +43,15 @@ public class ProductController {
         }
         
         if ("GET".equals(method)) {
+            if (notModified(exchange)) {
+                return;
+            }
             // 查询参数处理
             String query = exchange.getRequestURI().getQuery();
+            if (query != null && (query.contains("limit=") || query.contains("cursor="))) {
+                handleProductsPage(exchange, query);
+                return;
+            }
             List<Product> products;
             
             if (query != null && query.contains("name=")) {
@@ -44,11 +64,13 @@ public class ProductController {
                 products = productService.getAllProducts();
             }
             
-            sendJsonResponse(exchange, 200, JsonUtil.toJson(products));
+            sendJsonStream(exchange, 200, products);
         } else if ("POST".equals(method)) {
             // 添加商品
-            String requestBody = readRequestBody(exchange);
-            Product product = JsonUtil.fromJson(requestBody, Product.class);
+            Product product = readJson(exchange, Product.class);
+            if (product == null) {
+                return;
+            }
             
             boolean success = productService.addProduct(product);
             if (success) {
@@ -61,6 +83,52 @@ public class ProductController {
         }
     }
 
+    /**
+     * 分页查询商品（按商品ID升序的游标分页）
+     * 返回 {"items": [...], "nextCursor": "..."}，nextCursor 为 null 表示没有下一页
+     */
+    private void handleProductsPage(HttpExchange exchange, String query) throws IOException {
+        int limit = DEFAULT_PAGE_SIZE;
+        if (query.contains("limit=")) {
+            try {
+                limit = Integer.parseInt(getQueryParam(query, "limit"));
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        String after = null;
+        String cursor = query.contains("cursor=") ? getQueryParam(query, "cursor") : null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = decodeCursor(cursor);
+            if (after == null) {
+                sendJsonResponse(exchange, 400, JsonUtil.error("无效的分页游标"));
+                return;
+            }
+        }
+        
+        // 多取一个用于判断是否还有下一页
+        List<Product> products;
+        if (query.contains("name=")) {
+            products = productService.findProductsByName(getQueryParam(query, "name"), after, limit + 1);
+        } else if (query.contains("category=")) {
+            products = productService.findProductsByCategory(getQueryParam(query, "category"), after, limit + 1);
+        } else {
+            products = productService.getAllProducts(after, limit + 1);
+        }
+        
+        String nextCursor = null;
+        if (products.size() > limit) {
+            products = products.subList(0, limit);
+            nextCursor = encodeCursor(products.get(limit - 1).getId());
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", products);
+        page.put("nextCursor", nextCursor);
+        sendJsonStream(exchange, 200, page);
+    }
+
     /**
      * 处理单个商品相关请求 (GET, PUT, DELETE)
      */
@@ -83,13 +151,15 @@ public class ProductController {
         if ("GET".equals(method)) {
             Product product = productService.findProductById(id);
             if (product != null) {
-                sendJsonResponse(exchange, 200, JsonUtil.toJson(product));
+                sendJsonStream(exchange, 200, product);
             } else {
                 sendJsonResponse(exchange, 404, JsonUtil.error("商品不存在"));
             }
         } else if ("PUT".equals(method)) {
-            String requestBody = readRequestBody(exchange);
-            ProductUpdateRequest updateReq = JsonUtil.fromJson(requestBody, ProductUpdateRequest.class);
+            ProductUpdateRequest updateReq = readJson(exchange, ProductUpdateRequest.class);
+            if (updateReq == null) {
+                return;
+            }
             
             boolean success = productService.updateProduct(
                 id, updateReq.name, updateReq.price, updateReq.category
@@ -127,12 +197,30 @@ public class ProductController {
             return;
         }
         
+        if (notModified(exchange)) {
+            return;
+        }
+        
         Map<String, Object> stats = new HashMap<>();
         stats.put("productCount", productService.getProductCount());
         stats.put("totalValue", productService.getTotalInventoryValue());
-        stats.put("categories", new ArrayList<>(productService.getAllCategories()));
+        stats.put("totalValueCents", productService.getTotalInventoryValueCents());
+        
+        List<Object> categories = new ArrayList<>();
+        List<Object> categoryStats = new ArrayList<>();
+        for (Map.Entry<String, InventoryStatistics.CategoryStatistics> entry
+                : productService.getCategoryStatistics().entrySet()) {
+            categories.add(entry.getKey());
+            Map<String, Object> item = new HashMap<>();
+            item.put("category", entry.getKey());
+            item.put("productCount", entry.getValue().getProductCount());
+            item.put("totalValue", entry.getValue().getValueCents() / 100.0);
+            categoryStats.add(item);
+        }
+        stats.put("categories", categories);
+        stats.put("categoryStats", categoryStats);
         
-        sendJsonResponse(exchange, 200, JsonUtil.toJson(stats));
+        sendJsonStream(exchange, 200, stats);
     }
 
     /**
@@ -151,6 +239,10 @@ public class ProductController {
             return;
         }
         
+        if (notModified(exchange)) {
+            return;
+        }
+        
         String query = exchange.getRequestURI().getQuery();
         int threshold = 10; // 默认阈值
         if (query != null && query.contains("threshold=")) {
@@ -161,8 +253,21 @@ public class ProductController {
             }
         }
         
-        List<Product> products = productService.getLowStockProducts(threshold);
-        sendJsonResponse(exchange, 200, JsonUtil.toJson(products));
+        int limit = Integer.MAX_VALUE; // 默认不限制数量
+        if (query != null && query.contains("limit=")) {
+            try {
+                limit = Integer.parseInt(getQueryParam(query, "limit"));
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+            if (limit <= 0) {
+                sendJsonResponse(exchange, 400, JsonUtil.error("limit必须大于0"));
+                return;
+            }
+        }
+        
+        List<Product> products = productService.getLowStockProducts(threshold, limit);
+        sendJsonStream(exchange, 200, products);
     }
 
     /**
@@ -181,8 +286,10 @@ public class ProductController {
             return;
         }
         
-        String requestBody = readRequestBody(exchange);
-        StockOperation op = JsonUtil.fromJson(requestBody, StockOperation.class);
+        StockOperation op = readJson(exchange, StockOperation.class);
+        if (op == null) {
+            return;
+        }
         
         boolean success = productService.stockIn(op.id, op.amount);
         if (success) {
@@ -208,8 +315,10 @@ public class ProductController {
             return;
         }
         
-        String requestBody = readRequestBody(exchange);
-        StockOperation op = JsonUtil.fromJson(requestBody, StockOperation.class);
+        StockOperation op = readJson(exchange, StockOperation.class);
+        if (op == null) {
+            return;
+        }
         
         boolean success = productService.stockOut(op.id, op.amount);
         if (success) {
@@ -219,6 +328,249 @@ public class ProductController {
         }
     }
 
+    /**
+     * 处理批量入库/出库请求
+     * 请求体为 {"operations": [{"id": "...", "type": "in|out", "amount": n}, ...]}（也可以直接是数组），
+     * 所有行全部成功或全部不执行，响应中包含每一行的结果
+     */
+    public void handleStockBatch(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        
+        if ("OPTIONS".equals(method)) {
+            handleOptions(exchange);
+            return;
+        }
+        
+        if (!"POST".equals(method)) {
+            sendJsonResponse(exchange, 405, JsonUtil.error("不支持的请求方法"));
+            return;
+        }
+        
+        StockBatchRequest request = readJson(exchange, StockBatchRequest.class);
+        if (request == null) {
+            return;
+        }
+        if (request.operations.isEmpty() || request.operations.size() > MAX_BATCH_LINES) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("批量操作的行数必须在1到" + MAX_BATCH_LINES + "之间"));
+            return;
+        }
+        
+        StockBatch batch = new StockBatch();
+        for (int i = 0; i < request.operations.size(); i++) {
+            StockOperation op = request.operations.get(i);
+            if ("in".equals(op.type)) {
+                batch.stockIn(op.id, op.amount);
+            } else if ("out".equals(op.type)) {
+                batch.stockOut(op.id, op.amount);
+            } else {
+                sendJsonResponse(exchange, 400, JsonUtil.error("第" + (i + 1) + "行的type必须为in或out"));
+                return;
+            }
+        }
+        
+        boolean success = productService.applyStockBatch(batch);
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("id", batch.getId(i));
+            line.put("status", batch.getStatus(i).name());
+            line.put("message", batch.getStatus(i).getMessage());
+            if (success) {
+                line.put("quantity", batch.getQuantity(i));
+            }
+            results.add(line);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", success);
+        response.put("message", success ? "批量操作成功" : "批量操作失败，所有行均未执行");
+        response.put("results", results);
+        sendJsonStream(exchange, success ? 200 : 400, response);
+    }
+
+    /**
+     * 处理批量导入请求 (POST导入, GET查询进行中的导入)
+     * 格式由查询参数 format=csv|ndjson 或 Content-Type 指定，请求体可以用gzip压缩（Content-Encoding: gzip）；
+     * 请求体不受 maxRequestBytes 限制，边读边解析写入。响应中包含导入的行数和失败行的行号与原因。
+     */
+    public void handleImport(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        
+        if ("OPTIONS".equals(method)) {
+            handleOptions(exchange);
+            return;
+        }
+        
+        if ("GET".equals(method)) {
+            List<Map<String, Object>> running = new ArrayList<>();
+            for (CatalogTransfer.ImportProgress progress : imports) {
+                running.add(importSummary(progress, false));
+            }
+            sendJsonStream(exchange, 200, running);
+            return;
+        }
+        
+        if (!"POST".equals(method)) {
+            sendJsonResponse(exchange, 405, JsonUtil.error("不支持的请求方法"));
+            return;
+        }
+        
+        String query = exchange.getRequestURI().getQuery();
+        CatalogTransfer.Format format = CatalogTransfer.Format.of(
+                query != null && query.contains("format=") ? getQueryParam(query, "format")
+                        : exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (format == null) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("无法识别的导入格式，请使用 format=csv 或 format=ndjson"));
+            return;
+        }
+        
+        CatalogTransfer.ImportProgress progress = new CatalogTransfer.ImportProgress(format);
+        imports.add(progress);
+        String failure = null;
+        int status = 200;
+        try (java.io.InputStream body = exchange.getRequestBody()) {
+            java.io.InputStream in = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                    ? new java.util.zip.GZIPInputStream(body, 64 * 1024) : body;
+            catalogTransfer.importCatalog(in, format, progress);
+        } catch (IllegalArgumentException e) {
+            failure = e.getMessage();
+            status = 400;
+        } catch (IOException e) {
+            failure = "读取请求体失败";
+            status = 400;
+        } catch (IllegalStateException e) {
+            // 解析线程异常或导入被中断
+            e.printStackTrace();
+            failure = "导入失败: " + e.getMessage();
+            status = 500;
+        } finally {
+            imports.remove(progress);
+        }
+        
+        Map<String, Object> response = importSummary(progress, true);
+        if (failure != null) {
+            // 在出错之前读到的行已经导入
+            response.put("success", false);
+            response.put("message", failure);
+        }
+        sendJsonStream(exchange, status, response);
+    }
+
+    /**
+     * 导入进度或结果
+     * @param withErrors 是否包含失败行的明细
+     */
+    private static Map<String, Object> importSummary(CatalogTransfer.ImportProgress progress, boolean withErrors) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("success", progress.getFailed() == 0);
+        summary.put("format", progress.getFormat().name().toLowerCase(Locale.ROOT));
+        summary.put("rows", progress.getRows());
+        summary.put("imported", progress.getImported());
+        summary.put("failed", progress.getFailed());
+        summary.put("bytesRead", progress.getBytesRead());
+        summary.put("elapsedMillis", progress.getElapsedMillis());
+        if (withErrors) {
+            List<Map<String, Object>> errors = new ArrayList<>();
+            for (CatalogTransfer.RowError error : progress.getErrors()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("row", error.getRow());
+                item.put("id", error.getId());
+                item.put("message", error.getMessage());
+                errors.add(item);
+            }
+            summary.put("errors", errors);
+            summary.put("errorsTruncated", progress.getFailed() > errors.size());
+        }
+        return summary;
+    }
+
+    /**
+     * 处理批量导出请求 (GET)
+     * 格式由查询参数 format=csv|ndjson 或 Accept 指定，默认为CSV；按商品ID顺序边读边写，不在内存中生成完整的目录
+     */
+    public void handleExport(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        
+        if ("OPTIONS".equals(method)) {
+            handleOptions(exchange);
+            return;
+        }
+        
+        if (!"GET".equals(method)) {
+            sendJsonResponse(exchange, 405, JsonUtil.error("不支持的请求方法"));
+            return;
+        }
+        
+        String query = exchange.getRequestURI().getQuery();
+        CatalogTransfer.Format format;
+        if (query != null && query.contains("format=")) {
+            format = CatalogTransfer.Format.of(getQueryParam(query, "format"));
+            if (format == null) {
+                sendJsonResponse(exchange, 400, JsonUtil.error("无法识别的导出格式，请使用 format=csv 或 format=ndjson"));
+                return;
+            }
+        } else {
+            format = CatalogTransfer.Format.of(exchange.getRequestHeaders().getFirst("Accept"));
+            if (format == null) {
+                format = CatalogTransfer.Format.CSV;
+            }
+        }
+        
+        if (notModified(exchange)) {
+            return;
+        }
+        
+        setCorsHeaders(exchange);
+        String extension = format == CatalogTransfer.Format.CSV ? "csv" : "ndjson";
+        exchange.getResponseHeaders().set("Content-Type", format.getContentType() + "; charset=utf-8");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"products." + extension + "\"");
+        try (java.io.OutputStream os = ResponseCompression.open(exchange, 200)) {
+            catalogTransfer.exportCatalog(os, format);
+        }
+    }
+
+    /**
+     * 处理变更订阅请求 (GET，Server-Sent Events)
+     * 连接建立后先发送 hello（data为当前库存数据版本），之后推送合并后的商品增量（见 ChangeFeed）。
+     * 浏览器的 EventSource 不能设置请求头，token可以放在查询参数中。
+     * 处理方法在订阅后立即返回，连接保持打开但不占用请求线程；响应不压缩，以免事件停留在压缩缓冲区中。
+     */
+    public void handleEvents(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        
+        if ("OPTIONS".equals(method)) {
+            handleOptions(exchange);
+            return;
+        }
+        
+        if (!"GET".equals(method)) {
+            sendJsonResponse(exchange, 405, JsonUtil.error("不支持的请求方法"));
+            return;
+        }
+        
+        ChangeFeed changeFeed = productService.getChangeFeed();
+        if (changeFeed.getSubscriberCount() >= ChangeFeed.MAX_SUBSCRIBERS) {
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            sendJsonResponse(exchange, 503, JsonUtil.error("订阅连接数已达上限，请稍后重试"));
+            return;
+        }
+        
+        setCorsHeaders(exchange);
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("X-Accel-Buffering", "no");  // 经过nginx时不缓冲
+        EventStream stream = new EventStream(exchange);
+        // 持有stream的锁直到hello写完，订阅后推送的事件排在hello之后
+        synchronized (stream) {
+            exchange.sendResponseHeaders(200, 0);
+            if (!changeFeed.subscribe(stream)) {
+                exchange.close();
+                return;
+            }
+            String hello = "retry: 3000\nevent: hello\ndata: {\"version\":" + productService.getInventoryVersion() + "}\n\n";
+            stream.send(Collections.singletonList(hello.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        }
+    }
+
     /**
      * 发送JSON响应
      */
@@ -226,11 +578,41 @@ public class ProductController {
         setCorsHeaders(exchange);
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
         
-        byte[] response = json.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, response.length);
-        try (java.io.OutputStream os = exchange.getResponseBody()) {
-            os.write(response);
+        // 客户端支持时压缩较大的响应（见 ResponseCompression）
+        ResponseCompression.send(exchange, statusCode, json.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 以流式JSON发送响应
+     * 响应长度事先未知，使用分块传输，序列化结果直接编码写入连接，不在堆上生成完整的响应内容；
+     * 客户端支持时超过阈值的响应边写边压缩
+     */
+    private void sendJsonStream(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        setCorsHeaders(exchange);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        
+        try (java.io.OutputStream os = ResponseCompression.open(exchange, statusCode)) {
+            JsonUtil.writeJson(body, os);
+        }
+    }
+
+    /**
+     * 以库存数据版本作为ETag：请求带的 If-None-Match 与当前版本一致时直接返回304，不查询也不序列化数据
+     * 必须在读取数据之前调用（先取版本再读数据，返回的数据不会比ETag旧）
+     * @return 已返回304时为true
+     */
+    private boolean notModified(HttpExchange exchange) throws IOException {
+        String etag = etagPrefix + Long.toHexString(productService.getInventoryVersion()) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null || !StaticFileController.etagMatches(ifNoneMatch, etag)) {
+            return false;
         }
+        setCorsHeaders(exchange);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
     }
 
     /**
@@ -251,18 +633,50 @@ public class ProductController {
     }
 
     /**
-     * 读取请求体
+     * 读取并解析JSON请求体
+     * 请求体为空、格式错误或超过长度限制时直接发送错误响应并返回null
      */
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        try (java.io.InputStream is = exchange.getRequestBody();
-             java.io.BufferedReader reader = new java.io.BufferedReader(
-                 new java.io.InputStreamReader(is, java.nio.charset.StandardCharsets.UTF_8))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+    private <T> T readJson(HttpExchange exchange, Class<T> type) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        long contentLength = -1;
+        if (declared != null) {
+            try {
+                contentLength = Long.parseLong(declared.trim());
+            } catch (NumberFormatException e) {
+                contentLength = -1;
             }
-            return sb.toString();
+        }
+        T value;
+        try (java.io.InputStream is = exchange.getRequestBody()) {
+            value = JsonUtil.fromJson(is, contentLength, type);
+        } catch (JsonUtil.RequestTooLargeException e) {
+            sendJsonResponse(exchange, 413, JsonUtil.error("请求体过大"));
+            return null;
+        } catch (IllegalArgumentException e) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("请求格式错误"));
+            return null;
+        }
+        if (value == null) {
+            sendJsonResponse(exchange, 400, JsonUtil.error("请求体不能为空"));
+        }
+        return value;
+    }
+
+    /**
+     * 分页游标：上一页最后一个商品ID的UTF-8字节做URL安全的Base64编码（不含=，可直接放在查询字符串中）
+     */
+    private static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码分页游标，格式错误时返回null
+     */
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), java.nio.charset.StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 
@@ -284,16 +698,47 @@ public class ProductController {
         return null;
     }
 
+    /**
+     * 一个SSE连接：把 ChangeFeed 的事件写入分块响应
+     */
+    private static class EventStream implements ChangeFeed.Subscriber {
+        private final HttpExchange exchange;
+        private final java.io.OutputStream os;
+
+        EventStream(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.os = exchange.getResponseBody();
+        }
+
+        @Override
+        public synchronized void send(List<byte[]> events) throws IOException {
+            for (byte[] event : events) {
+                os.write(event);
+            }
+            os.flush();
+        }
+
+        @Override
+        public void close() {
+            exchange.close();
+        }
+    }
+
     // 内部类用于JSON反序列化
-    static class ProductUpdateRequest {
+    public static class ProductUpdateRequest {
         public String name;
         public double price = -1;
         public String category;
     }
 
-    static class StockOperation {
+    public static class StockOperation {
         public String id;
         public int amount;
+        public String type;  // 批量操作中使用："in" 入库，"out" 出库
+    }
+
+    public static class StockBatchRequest {
+        public List<StockOperation> operations = new ArrayList<>();
     }
 }
 
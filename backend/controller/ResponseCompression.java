@@ -0,0 +1,276 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON响应压缩
+ * 根据请求的 Accept-Encoding 选择 gzip 或 deflate。响应体先写入一个与阈值等长的缓冲区：
+ * 在阈值以内结束的响应按原样以固定长度发送；超过阈值时才发送响应头（分块传输），
+ * 此后的内容边写边压缩，不缓存完整的响应。
+ *
+ * 统计压缩前后的字节数和压缩消耗的CPU时间。
+ */
+public class ResponseCompression {
+    /** 小于该字节数的响应不压缩，可通过 -Dinventory.http.compressMinBytes 调整（0为关闭压缩） */
+    public static final int MIN_BYTES = Integer.getInteger("inventory.http.compressMinBytes", 1024);
+    /** 压缩级别 1-9，可通过 -Dinventory.http.compressLevel 调整 */
+    public static final int LEVEL = Integer.getInteger("inventory.http.compressLevel", 6);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private static final LongAdder compressedResponses = new LongAdder();
+    private static final LongAdder uncompressedResponses = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+    private static final LongAdder compressNanos = new LongAdder();
+
+    /**
+     * 发送已经生成好的响应体
+     */
+    public static void send(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        String encoding = body.length >= MIN_BYTES ? negotiate(exchange) : null;
+        if (encoding == null) {
+            if (MIN_BYTES > 0) {
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            }
+            uncompressedResponses.increment();
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+            return;
+        }
+        try (OutputStream os = new CompressingStream(exchange, statusCode, encoding, 0)) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * 打开响应输出流（响应头在写入超过阈值或关闭时才发送，调用方必须关闭该流）
+     */
+    public static OutputStream open(HttpExchange exchange, int statusCode) throws IOException {
+        return new CompressingStream(exchange, statusCode, negotiate(exchange), MIN_BYTES);
+    }
+
+    /**
+     * 根据 Accept-Encoding 选择编码（优先 gzip，其次 deflate，q=0 表示不接受）
+     * @return 不压缩时返回null
+     */
+    static String negotiate(HttpExchange exchange) {
+        if (MIN_BYTES <= 0) {
+            return null;
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (parts.length > 1 && isZeroQuality(parts[1])) {
+                continue;
+            }
+            if ("gzip".equalsIgnoreCase(name)) {
+                return "gzip";
+            }
+            if ("deflate".equalsIgnoreCase(name)) {
+                deflate = true;
+            }
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        return parameter.replace(" ", "").matches("q=0(\\.0{0,3})?");
+    }
+
+    /** 压缩发送的响应数 */
+    public static long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /** 未压缩发送的响应数（低于阈值或客户端不支持） */
+    public static long getUncompressedResponses() {
+        return uncompressedResponses.sum();
+    }
+
+    /** 压缩前的字节数（仅统计压缩发送的响应） */
+    public static long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /** 压缩后实际发送的字节数 */
+    public static long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /** 压缩消耗的CPU时间（纳秒；平台不支持线程CPU时间时为耗时） */
+    public static long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    private static long now() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * 先缓冲阈值以内的内容，超过阈值后切换为压缩输出
+     */
+    private static class CompressingStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private final String encoding;
+        private final byte[] buffer;
+        private int count;
+        private CountingStream counter;
+        private DeflaterOutputStream compressor;
+        private Deflater deflater;      // deflate编码时使用，关闭时释放
+        private long uncompressed;
+        private boolean closed;
+
+        CompressingStream(HttpExchange exchange, int statusCode, String encoding, int threshold) throws IOException {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+            this.encoding = encoding;
+            this.buffer = new byte[encoding != null ? threshold : 0];
+            if (MIN_BYTES > 0) {
+                exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            }
+            if (encoding == null) {
+                // 客户端不支持压缩，直接分块发送
+                uncompressedResponses.increment();
+                exchange.sendResponseHeaders(statusCode, 0);
+            } else if (threshold == 0) {
+                startCompression();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (encoding == null) {
+                exchange.getResponseBody().write(b, off, len);
+                return;
+            }
+            if (compressor == null) {
+                if (count + len <= buffer.length) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                startCompression();
+            }
+            long start = now();
+            compressor.write(b, off, len);
+            compressNanos.add(now() - start);
+            uncompressed += len;
+        }
+
+        /**
+         * 发送带 Content-Encoding 的响应头，并把已缓冲的内容写入压缩流
+         */
+        private void startCompression() throws IOException {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            exchange.sendResponseHeaders(statusCode, 0);
+            counter = new CountingStream(exchange.getResponseBody());
+            if ("gzip".equals(encoding)) {
+                compressor = new GZIPOutputStream(counter, 8192) {
+                    {
+                        def.setLevel(LEVEL);
+                    }
+                };
+            } else {
+                deflater = new Deflater(LEVEL);
+                compressor = new DeflaterOutputStream(counter, deflater, 8192);
+            }
+            if (count > 0) {
+                long start = now();
+                compressor.write(buffer, 0, count);
+                compressNanos.add(now() - start);
+                uncompressed += count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // 压缩流不在中途刷新（会降低压缩率），内容在关闭时一起发送
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (encoding == null) {
+                exchange.getResponseBody().close();
+                return;
+            }
+            if (compressor == null) {
+                // 未超过阈值：按原样以固定长度发送
+                uncompressedResponses.increment();
+                exchange.sendResponseHeaders(statusCode, count > 0 ? count : -1);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(buffer, 0, count);
+                }
+                return;
+            }
+            try {
+                long start = now();
+                compressor.finish();
+                compressNanos.add(now() - start);
+                compressor.close();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                compressedResponses.increment();
+                bytesIn.add(uncompressed);
+                bytesOut.add(counter.count);
+            }
+        }
+    }
+
+    /**
+     * 统计写入连接的字节数
+     */
+    private static class CountingStream extends OutputStream {
+        private final OutputStream out;
+        long count;
+
+        CountingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package controller;
+
+import util.LatencyHistogram;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个路由的请求统计：按状态码的请求数、进行中的请求数和处理耗时直方图
+ * 耗时从处理线程开始执行请求时算起（不含在线程池队列中等待的时间）
+ */
+public class RouteMetrics {
+    private static final int MAX_STATUS = 600;
+
+    private final String route;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder inFlight = new LongAdder();
+    // 状态码 -> 请求数（下标0为未发送响应的请求），首次出现时创建
+    private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS);
+
+    RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    /**
+     * 请求开始处理
+     * @return 开始时间，传给 end
+     */
+    public long begin() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * 请求处理结束
+     * @param status 响应状态码（未发送响应时为-1）
+     * @param startNanos begin 的返回值
+     */
+    public void end(int status, long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        inFlight.decrement();
+        int index = status >= 100 && status < MAX_STATUS ? status : 0;
+        LongAdder counter = statuses.get(index);
+        if (counter == null) {
+            statuses.compareAndSet(index, null, new LongAdder());
+            counter = statuses.get(index);
+        }
+        counter.increment();
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * 某个状态码的请求数（0表示未发送响应的请求）
+     */
+    public long getStatusCount(int status) {
+        LongAdder counter = status >= 0 && status < MAX_STATUS ? statuses.get(status) : null;
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * 出现过的状态码（升序）
+     */
+    int[] getStatuses() {
+        int count = 0;
+        int[] codes = new int[MAX_STATUS];
+        for (int i = 0; i < MAX_STATUS; i++) {
+            if (statuses.get(i) != null) {
+                codes[count++] = i;
+            }
+        }
+        return java.util.Arrays.copyOf(codes, count);
+    }
+}
@@ -0,0 +1,354 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态文件控制器
+ * 启动时把前端构建目录中不超过上限的文件读入内存，并为文本类文件预先生成gzip版本；
+ * 响应带 ETag/Last-Modified，条件请求命中时返回304。带内容哈希的 Vite 构建产物（assets/名称-哈希.扩展名）
+ * 内容永不变化，缓存一年；其他文件（index.html等）每次都需要向服务器验证。
+ * 未缓存的大文件通过 FileChannel.transferTo 发送。
+ */
+public class StaticFileController {
+    private static final Pattern HASHED_ASSET = Pattern.compile("^assets/.+-[A-Za-z0-9_-]{8,}\\.[a-z0-9]+$");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final Path root;
+    private final long maxCachedFileBytes;
+    private final Map<String, Asset> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param root 静态文件目录
+     * @param maxCachedFileBytes 超过该大小的文件不缓存，每次从磁盘发送
+     */
+    public StaticFileController(File root, long maxCachedFileBytes) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+        this.maxCachedFileBytes = maxCachedFileBytes;
+    }
+
+    /**
+     * 预加载目录中的文件
+     * @return 缓存的文件数
+     */
+    public int preload() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        try (java.util.stream.Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && attributes.size() <= maxCachedFileBytes) {
+                    String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    cache.put(path, load(path, file, attributes));
+                }
+            }
+        }
+        return cache.size();
+    }
+
+    /**
+     * 处理静态文件请求 (GET, HEAD)
+     */
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            sendError(exchange, 405, "不支持的请求方法");
+            return;
+        }
+        String path = resolve(exchange.getRequestURI().getPath());
+        if (path == null) {
+            sendError(exchange, 403, "禁止访问");
+            return;
+        }
+
+        Asset asset = cache.get(path);
+        if (asset != null) {
+            sendAsset(exchange, asset, "HEAD".equals(method));
+            return;
+        }
+
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+            sendError(exchange, 404, "文件未找到");
+            return;
+        }
+        sendFile(exchange, path, file, "HEAD".equals(method));
+    }
+
+    /**
+     * 把请求路径转换为相对路径：/ 对应 index.html，没有扩展名时补 .html
+     * @return 路径不合法时返回null
+     */
+    private static String resolve(String path) {
+        if (path == null || "/".equals(path)) {
+            path = "/index.html";
+        }
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        // 防止路径遍历攻击
+        if (path.contains("..") || path.contains("\\") || path.indexOf('\0') >= 0) {
+            return null;
+        }
+        if (!path.contains(".")) {
+            path = path + ".html";
+        }
+        return path;
+    }
+
+    /**
+     * 发送缓存中的文件（客户端支持时发送gzip版本）
+     */
+    private void sendAsset(HttpExchange exchange, Asset asset, boolean head) throws IOException {
+        boolean gzip = asset.gzipped != null && acceptsGzip(exchange);
+        // 两种编码的内容不同，使用不同的强ETag
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+        if (asset.gzipped != null) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        }
+        setCachingHeaders(exchange, asset.path, etag, asset.lastModified);
+        if (notModified(exchange, etag, asset.lastModified)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = asset.content;
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            body = asset.gzipped;
+        }
+        exchange.getResponseHeaders().set("Content-Type", asset.contentType);
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * 发送未缓存的文件：通过 FileChannel.transferTo 写入响应，不经过逐块读取的循环
+     */
+    private void sendFile(HttpExchange exchange, String path, Path file, boolean head) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        String etag = "W/\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        setCachingHeaders(exchange, path, etag, lastModified);
+        if (notModified(exchange, etag, lastModified)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", getContentType(path));
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            exchange.sendResponseHeaders(200, size);
+            try (OutputStream os = exchange.getResponseBody()) {
+                WritableByteChannel target = Channels.newChannel(os);
+                long position = 0;
+                while (position < size) {
+                    long sent = channel.transferTo(position, size - position, target);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                }
+            }
+        }
+    }
+
+    private void setCachingHeaders(HttpExchange exchange, String path, String etag, long lastModified) {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", formatDate(lastModified));
+        exchange.getResponseHeaders().set("Cache-Control", HASHED_ASSET.matcher(path).matches() ? IMMUTABLE : REVALIDATE);
+    }
+
+    /**
+     * 判断条件请求是否命中（If-None-Match 优先于 If-Modified-Since）
+     */
+    private static boolean notModified(HttpExchange exchange, String etag, long lastModified) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), HTTP_DATE).toInstant().toEpochMilli();
+                return lastModified / 1000 <= since / 1000;  // HTTP日期精确到秒
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If-None-Match 是否包含该ETag（弱比较，忽略 W/ 前缀）
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate) || stripWeak(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    static boolean acceptsGzip(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取文件并生成缓存项
+     */
+    private static Asset load(String path, Path file, BasicFileAttributes attributes) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        String contentType = getContentType(path);
+        byte[] gzipped = null;
+        if (isCompressible(contentType) && content.length > 256) {
+            byte[] compressed = gzip(content);
+            // 压缩效果不明显时不保留gzip版本
+            if (compressed.length < content.length * 9L / 10) {
+                gzipped = compressed;
+            }
+        }
+        return new Asset(path, content, gzipped, contentType, "\"" + digest(content) + "\"",
+                attributes.lastModifiedTime().toMillis());
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 内容摘要（SHA-256的前16字节，十六进制），作为强ETag
+     */
+    private static String digest(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String formatDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json") || contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * 获取Content-Type
+     */
+    private static String getContentType(String path) {
+        if (path.endsWith(".html")) return "text/html; charset=utf-8";
+        if (path.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (path.endsWith(".css")) return "text/css; charset=utf-8";
+        if (path.endsWith(".json")) return "application/json; charset=utf-8";
+        if (path.endsWith(".svg")) return "image/svg+xml";
+        if (path.endsWith(".png")) return "image/png";
+        if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
+        if (path.endsWith(".ico")) return "image/x-icon";
+        if (path.endsWith(".woff2")) return "font/woff2";
+        return "application/octet-stream";
+    }
+
+    /**
+     * 发送错误响应
+     */
+    private void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * 缓存的静态文件
+     */
+    private static class Asset {
+        final String path;
+        final byte[] content;
+        final byte[] gzipped;      // gzip版本，不值得压缩时为null
+        final String contentType;
+        final String etag;
+        final String gzipEtag;
+        final long lastModified;
+
+        Asset(String path, byte[] content, byte[] gzipped, String contentType, String etag, long lastModified) {
+            this.path = path;
+            this.content = content;
+            this.gzipped = gzipped;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+            this.lastModified = lastModified;
+        }
+    }
+}
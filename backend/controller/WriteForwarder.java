@@ -0,0 +1,112 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import util.JsonUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 副本上的写请求转发
+ * 副本只在本地处理查询；新增/修改/删除、入库/出库和导入请求转发给主节点（方法、路径、查询参数、请求体和相关请求头），
+ * 请求体和响应体都是边读边转发，主节点的响应原样返回给客户端。未配置主节点地址时拒绝写请求（503）。
+ * 转发的修改要等复制到本副本之后才能在本副本查到（见 inventory_replication_* 指标）。
+ */
+public class WriteForwarder {
+    private static final String[] REQUEST_HEADERS = {
+            "Authorization", "Content-Type", "Content-Encoding", "Accept", "Accept-Encoding"};
+    private static final String[] RESPONSE_HEADERS = {
+            "Content-Type", "Content-Encoding", "Content-Disposition", "ETag", "Cache-Control", "Retry-After", "Vary",
+            "Access-Control-Allow-Origin", "Access-Control-Allow-Methods", "Access-Control-Allow-Headers"};
+
+    private final URI leader;  // 主节点的HTTP地址，为null时拒绝写请求
+    private final HttpClient client;
+
+    /**
+     * @param leaderUrl 主节点的HTTP地址（如 http://localhost:8080），为null时拒绝写请求
+     */
+    public WriteForwarder(String leaderUrl) {
+        this.leader = leaderUrl != null ? URI.create(leaderUrl.endsWith("/")
+                ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl) : null;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * 是否为需要在主节点执行的写请求
+     */
+    public boolean isWrite(HttpExchange exchange) {
+        String method = exchange.getRequestMethod();
+        return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+    }
+
+    /**
+     * 把请求转发给主节点并返回主节点的响应
+     */
+    public void forward(HttpExchange exchange) throws IOException {
+        if (leader == null) {
+            sendError(exchange, 503, "只读副本不接受修改请求，请发送到主节点");
+            return;
+        }
+        URI requestUri = exchange.getRequestURI();
+        String query = requestUri.getRawQuery();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(leader + requestUri.getRawPath()
+                        + (query != null ? "?" + query : "")))
+                .method(exchange.getRequestMethod(), HttpRequest.BodyPublishers.ofInputStream(exchange::getRequestBody));
+        for (String name : REQUEST_HEADERS) {
+            String value = exchange.getRequestHeaders().getFirst(name);
+            if (value != null) {
+                builder.header(name, value);
+            }
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            System.err.println("转发到主节点失败: " + e);
+            sendError(exchange, 502, "无法连接主节点");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 502, "转发请求被中断");
+            return;
+        }
+
+        for (String name : RESPONSE_HEADERS) {
+            response.headers().firstValue(name).ifPresent(value -> exchange.getResponseHeaders().set(name, value));
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        int status = response.statusCode();
+        boolean noBody = status == 204 || status == 304 || "HEAD".equals(exchange.getRequestMethod());
+        try (InputStream in = response.body()) {
+            if (noBody || length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            // 长度未知时分块传输
+            exchange.sendResponseHeaders(status, length > 0 ? length : 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                in.transferTo(os);
+            }
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        byte[] body = JsonUtil.error(message).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dao;
+
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 商品类别字典与二级索引
+ * 每个类别编码为int类别ID（每个分片各有一个类别索引，商品的category字段由 ProductDao 统一为同一个实例）；
+ * 按类别ID维护按商品ID排序的商品集合，类别查询为O(结果数)，分页查询为O(log n + 页大小)，类别列表为O(类别数)。
+ */
+class CategoryIndex {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();             // 类别 -> 类别ID
+    private final List<String> names = new CopyOnWriteArrayList<>();                // 类别ID -> 类别
+    private final List<NavigableSet<Product>> members = new CopyOnWriteArrayList<>();  // 类别ID -> 商品集合
+
+    /**
+     * 获取类别ID，新类别会分配新ID
+     */
+    int encode(String category) {
+        Integer id = ids.get(category);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(category);
+            if (id == null) {
+                id = names.size();
+                names.add(category);
+                members.add(new ConcurrentSkipListSet<>(ProductDao.ID_ORDER));
+                ids.put(category, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * 获取类别ID对应的类别
+     */
+    String decode(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * 将商品加入其类别的集合
+     */
+    void add(Product product, String category) {
+        if (category != null) {
+            members.get(encode(category)).add(product);
+        }
+    }
+
+    /**
+     * 将商品从其类别的集合中移除
+     */
+    void remove(Product product, String category) {
+        if (category == null) {
+            return;
+        }
+        Integer id = ids.get(category);
+        if (id != null) {
+            members.get(id).remove(product);
+        }
+    }
+
+    /**
+     * 查找指定类别的商品
+     */
+    List<Product> find(String category) {
+        Integer id = category == null ? null : ids.get(category);
+        if (id == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(members.get(id));
+    }
+
+    /**
+     * 分页查找指定类别的商品，按商品ID升序
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     */
+    List<Product> find(String category, String after, int limit) {
+        List<Product> result = new ArrayList<>();
+        Integer id = category == null ? null : ids.get(category);
+        if (id == null || limit <= 0) {
+            return result;
+        }
+        NavigableSet<Product> set = members.get(id);
+        if (after != null) {
+            set = set.tailSet(new Product(after, null, 0, 0, null), false);
+        }
+        for (Product product : set) {
+            result.add(product);
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取当前有商品的类别
+     */
+    Set<String> categories() {
+        Set<String> result = new LinkedHashSet<>();
+        for (int id = 0; id < members.size(); id++) {
+            if (!members.get(id).isEmpty()) {
+                result.add(names.get(id));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,182 @@
+package dao;
+
+import model.Product;
+import java.io.*;
+import java.util.*;
+
+/**
+ * 预写日志记录
+ * 每一次商品新增、修改、删除、入库、出库都对应一条记录
+ *
+ * 入库/出库记录保存的是操作后的库存数量和库存版本号（而不是增量），
+ * 因此重放时与快照重叠的部分可以按版本号跳过，重放是幂等的。
+ */
+public class JournalRecord {
+    public static final byte ADD = 1;
+    public static final byte UPDATE = 2;
+    public static final byte DELETE = 3;
+    public static final byte STOCK_IN = 4;
+    public static final byte STOCK_OUT = 5;
+    public static final byte STOCK_BATCH = 6;  // 批量入库/出库，一条记录包含多个商品的库存记录，重放时整体生效
+
+    public final byte type;
+    public long lsn;               // 日志序号，写入日志时分配
+    public final String id;
+    public final String name;
+    public final double price;
+    public final int quantity;
+    public final String category;
+    public final int amount;       // 入库/出库数量
+    public final int version;      // 入库/出库后的库存版本号
+    public final long incarnation; // 入库/出库时商品的创建日志序号
+    public final List<JournalRecord> entries;  // 批量记录包含的入库/出库记录
+
+    private JournalRecord(byte type, String id, String name, double price, int quantity, String category,
+                          int amount, int version, long incarnation) {
+        this(type, id, name, price, quantity, category, amount, version, incarnation, null);
+    }
+
+    private JournalRecord(byte type, String id, String name, double price, int quantity, String category,
+                          int amount, int version, long incarnation, List<JournalRecord> entries) {
+        this.type = type;
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+        this.category = category;
+        this.amount = amount;
+        this.version = version;
+        this.incarnation = incarnation;
+        this.entries = entries;
+    }
+
+    /**
+     * 新增商品记录（商品的incarnation即为该记录的日志序号）
+     */
+    public static JournalRecord add(Product product) {
+        return new JournalRecord(ADD, product.getId(), product.getName(), product.getPrice(),
+                product.getQuantity(), product.getCategory(), 0, 0, 0);
+    }
+
+    /**
+     * 修改商品记录（保存修改后的名称、价格、类别）
+     */
+    public static JournalRecord update(String id, String name, double price, String category) {
+        return new JournalRecord(UPDATE, id, name, price, 0, category, 0, 0, 0);
+    }
+
+    /**
+     * 删除商品记录
+     */
+    public static JournalRecord delete(String id) {
+        return new JournalRecord(DELETE, id, null, 0, 0, null, 0, 0, 0);
+    }
+
+    /**
+     * 入库/出库记录
+     * @param type STOCK_IN 或 STOCK_OUT
+     * @param product 商品
+     * @param amount 操作数量
+     * @param stockState 操作后的库存状态
+     */
+    public static JournalRecord stock(byte type, Product product, int amount, long stockState) {
+        return new JournalRecord(type, product.getId(), null, 0, Product.quantityOf(stockState), null,
+                amount, Product.versionOf(stockState), product.getIncarnation());
+    }
+
+    /**
+     * 批量入库/出库记录
+     * @param entries 各商品的入库/出库记录（由 stock 创建）
+     */
+    public static JournalRecord stockBatch(List<JournalRecord> entries) {
+        return new JournalRecord(STOCK_BATCH, "", null, 0, 0, null, 0, 0, 0, entries);
+    }
+
+    /**
+     * 序列化记录内容（不含日志序号）
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(id);
+        switch (type) {
+            case ADD:
+                out.writeUTF(name);
+                out.writeDouble(price);
+                out.writeInt(quantity);
+                writeNullableString(out, category);
+                break;
+            case UPDATE:
+                out.writeUTF(name);
+                out.writeDouble(price);
+                writeNullableString(out, category);
+                break;
+            case STOCK_IN:
+            case STOCK_OUT:
+                out.writeInt(amount);
+                out.writeInt(quantity);
+                out.writeInt(version);
+                out.writeLong(incarnation);
+                break;
+            case STOCK_BATCH:
+                out.writeInt(entries.size());
+                for (JournalRecord entry : entries) {
+                    entry.writeTo(out);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 反序列化记录内容
+     */
+    static JournalRecord readFrom(DataInputStream in, long lsn) throws IOException {
+        byte type = in.readByte();
+        String id = in.readUTF();
+        JournalRecord record;
+        switch (type) {
+            case ADD:
+                record = new JournalRecord(type, id, in.readUTF(), in.readDouble(), in.readInt(),
+                        readNullableString(in), 0, 0, 0);
+                break;
+            case UPDATE:
+                record = new JournalRecord(type, id, in.readUTF(), in.readDouble(), 0,
+                        readNullableString(in), 0, 0, 0);
+                break;
+            case DELETE:
+                record = new JournalRecord(type, id, null, 0, 0, null, 0, 0, 0);
+                break;
+            case STOCK_IN:
+            case STOCK_OUT:
+                int amount = in.readInt();
+                int quantity = in.readInt();
+                int version = in.readInt();
+                record = new JournalRecord(type, id, null, 0, quantity, null, amount, version, in.readLong());
+                break;
+            case STOCK_BATCH:
+                int count = in.readInt();
+                List<JournalRecord> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entries.add(readFrom(in, lsn));
+                }
+                record = new JournalRecord(type, id, null, 0, 0, null, 0, 0, 0, entries);
+                break;
+            default:
+                throw new IOException("未知的日志记录类型: " + type);
+        }
+        record.lsn = lsn;
+        return record;
+    }
+
+    static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,537 @@
+package dao;
+
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 商品名称的字符N-gram倒排索引
+ * 对名称中的每个字符（unigram）和相邻两个字符（bigram）建立倒排表，按字符而非按词切分，
+ * 因此对 "笔记本电脑" 这类没有空格分词的中文名称同样适用。
+ *
+ * 倒排表按商品ID排序，子串查询时按ID对查询串中所有bigram的倒排表求交集：以最短的倒排表为准，
+ * 其他倒排表跳到不小于当前ID的位置，遇到更大的ID时反过来让最短的倒排表跳过去；
+ * 只有交集中的商品才读取名称用 contains 校验（bigram相邻关系和unigram查询仍需校验）。
+ * 分页查询从上一页最后一个ID之后继续求交集。
+ *
+ * 每个倒排表由两部分组成：按ID排序的数组，和之后逐个加入的跳表，查询时按ID归并两部分。
+ * 数组旁边保存每个商品ID的排序键（long），求交集时在排序键数组上顺序前进或倍增查找，
+ * 基本不需要访问商品对象；跳表部分超过数组的1/8时合并进数组，使大部分商品都在数组中。
+ * 大批量导入时逐个插入跳表的代价很高（每个商品约20个gram，每次插入都是一次随机查找），
+ * 批量加入（addAll）先按ID排序、按gram分组，新商品较多的倒排表整体重建为数组（线性时间，占用内存也少得多）。
+ */
+class NameIndex {
+    private static final long UNIGRAM_TAG = 1L << 32;
+    /** 批量加入时新商品数乘以该值不小于倒排表原有大小则整体重建；跳表部分超过数组的 1/REBUILD_RATIO 时合并 */
+    private static final int REBUILD_RATIO = 8;
+    /** 跳表部分不超过该数量时不合并（避免小倒排表频繁重建） */
+    private static final int MIN_RECENT = 64;
+    private static final Product[] NO_PRODUCTS = new Product[0];
+
+    // gram -> 名称中包含该gram的商品集合
+    private final Map<Long, Posting> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 将商品按名称加入索引
+     */
+    void add(Product product, String name) {
+        if (name == null) {
+            return;
+        }
+        for (long gram : grams(name)) {
+            postings.compute(gram, (key, posting) -> {
+                if (posting == null) {
+                    posting = new Posting(NO_PRODUCTS);
+                }
+                posting.add(product);
+                return posting.compacted();
+            });
+        }
+    }
+
+    /**
+     * 将一批商品按各自当前的名称加入索引（已在索引中的商品不重复加入）
+     * 按ID排序后按gram分组，每个倒排表只合并一次：新商品不少于原有商品的1/8时整体重建，否则逐个插入。
+     * 重建时替换整个倒排表，查询读到的是重建前或重建后的倒排表，不会读到一半。
+     */
+    void addAll(List<Product> products) {
+        List<Product> sorted = new ArrayList<>(products.size());
+        for (Product product : products) {
+            if (product.getName() != null) {
+                sorted.add(product);
+            }
+        }
+        sorted.sort(ProductDao.ID_ORDER);
+        // 第一遍统计每个gram的商品数，第二遍按ID顺序填入大小正好的数组（常见字符的倒排表很大，避免反复扩容）
+        Map<Long, Group> groups = new HashMap<>();
+        Product previous = null;
+        for (Product product : sorted) {
+            if (previous == null || ProductDao.ID_ORDER.compare(previous, product) != 0) {
+                for (long gram : grams(product.getName())) {
+                    groups.computeIfAbsent(gram, key -> new Group()).size++;
+                }
+            }
+            previous = product;
+        }
+        for (Group group : groups.values()) {
+            group.products = new Product[group.size];
+            group.size = 0;
+        }
+        previous = null;
+        for (Product product : sorted) {
+            if (previous == null || ProductDao.ID_ORDER.compare(previous, product) != 0) {
+                for (long gram : grams(product.getName())) {
+                    Group group = groups.get(gram);
+                    group.products[group.size++] = product;
+                }
+            }
+            previous = product;
+        }
+
+        for (Map.Entry<Long, Group> entry : groups.entrySet()) {
+            Product[] added = entry.getValue().products;
+            postings.compute(entry.getKey(), (key, posting) -> {
+                if (posting == null) {
+                    return new Posting(added);
+                }
+                if (added.length * REBUILD_RATIO >= posting.size) {
+                    return Posting.merge(posting, added);
+                }
+                for (Product product : added) {
+                    posting.add(product);
+                }
+                return posting.compacted();
+            });
+        }
+    }
+
+    /**
+     * 将商品按名称从索引中移除
+     */
+    void remove(Product product, String name) {
+        if (name == null) {
+            return;
+        }
+        for (long gram : grams(name)) {
+            postings.computeIfPresent(gram, (key, posting) -> {
+                posting.remove(product);
+                if (posting.size == 0) {
+                    return null;
+                }
+                // 数组中已移除的商品过多时重建，避免查询时反复跳过
+                return posting.removedCount * 2 > posting.base.length ? Posting.merge(posting, NO_PRODUCTS) : posting;
+            });
+        }
+    }
+
+    /**
+     * 查找名称包含指定子串的商品
+     * @param keyword 非空的查询子串
+     * @return 匹配的商品列表
+     */
+    List<Product> search(String keyword) {
+        return search(keyword, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 分页查找名称包含指定子串的商品，按商品ID升序
+     * @param keyword 非空的查询子串
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 匹配的商品列表
+     */
+    List<Product> search(String keyword, String after, int limit) {
+        List<Product> result = new ArrayList<>();
+        Posting[] lists = postings(keyword);
+        if (lists == null || limit <= 0) {
+            return result;
+        }
+        Cursor[] cursors = new Cursor[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = new Cursor(lists[i], after);
+        }
+        Cursor driver = cursors[0];
+        while (driver.current != null) {
+            // 其他倒排表跳到不小于当前ID的位置，遇到更大的ID时最短的倒排表跳到该ID重新开始
+            Product candidate = driver.current;
+            long key = driver.currentKey;
+            Cursor ahead = null;
+            for (int i = 1; i < cursors.length && ahead == null; i++) {
+                Cursor cursor = cursors[i];
+                cursor.seek(key, candidate);
+                if (cursor.current == null) {
+                    return result;
+                }
+                if (compare(cursor.currentKey, cursor.current, key, candidate) > 0) {
+                    ahead = cursor;
+                }
+            }
+            if (ahead != null) {
+                driver.seek(ahead.currentKey, ahead.current);
+                continue;
+            }
+            // 数组中的商品可能已移除，其他倒排表中ID相同的也可能是已移除的，最终以当前名称为准
+            if (!driver.removed()) {
+                String name = candidate.getName();
+                if (name != null && name.contains(keyword)) {
+                    result.add(candidate);
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            driver.advance();
+        }
+        return result;
+    }
+
+    /**
+     * 查询串中所有gram的倒排表，按大小升序；任何一个bigram不存在时结果必为空（返回null）
+     */
+    private Posting[] postings(String keyword) {
+        if (keyword.length() == 1) {
+            Posting posting = postings.get(unigram(keyword.charAt(0)));
+            return posting == null ? null : new Posting[] {posting};
+        }
+        Set<Long> grams = new HashSet<>();
+        List<Posting> lists = new ArrayList<>();
+        for (int i = 0; i + 1 < keyword.length(); i++) {
+            long gram = bigram(keyword.charAt(i), keyword.charAt(i + 1));
+            if (!grams.add(gram)) {
+                continue;
+            }
+            Posting posting = postings.get(gram);
+            if (posting == null) {
+                return null;
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(posting -> posting.size));
+        return lists.toArray(new Posting[0]);
+    }
+
+    /**
+     * 计算名称中所有不重复的unigram和bigram
+     */
+    private static long[] grams(String name) {
+        long[] grams = new long[name.length() * 2];
+        int count = 0;
+        for (int i = 0; i < name.length(); i++) {
+            grams[count++] = unigram(name.charAt(i));
+            if (i + 1 < name.length()) {
+                grams[count++] = bigram(name.charAt(i), name.charAt(i + 1));
+            }
+        }
+        Arrays.sort(grams, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || grams[i] != grams[unique - 1]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    private static long unigram(char c) {
+        return mix(UNIGRAM_TAG | c);
+    }
+
+    private static long bigram(char first, char second) {
+        return mix(((long) first << 16) | second);
+    }
+
+    /**
+     * 打散gram的编码（乘以奇数是一一映射，不会产生重复）：
+     * 直接用编码时 Long.hashCode 只剩两个字符的异或，常见字符组合集中在少数哈希桶中
+     */
+    private static long mix(long gram) {
+        return gram * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * 商品ID的排序键：前9个字符各取7位（大于127的字符按127计），不足9个字符时补0
+     * 排序键不同时大小顺序与ID的字典序一致，相同时再比较ID（常见的ASCII短ID不会相同）
+     */
+    static long idKey(String id) {
+        long key = 0;
+        for (int i = 0; i < 9; i++) {
+            key = key << 7 | (i < id.length() ? Math.min(id.charAt(i), 127) : 0);
+        }
+        return key;
+    }
+
+    /**
+     * 按ID比较两个商品，排序键相同时才读取ID
+     */
+    private static int compare(long key, Product product, long otherKey, Product other) {
+        if (key != otherKey) {
+            return Long.compare(key, otherKey);
+        }
+        return product == other ? 0 : product.getId().compareTo(other.getId());
+    }
+
+    /**
+     * 求交集时在一个倒排表中的读取位置（数组和跳表两部分按ID归并）
+     */
+    private static final class Cursor {
+        /** 跳表部分先顺序前进的次数，超过后重新查找 */
+        private static final int SCAN_STEPS = 8;
+
+        private final Posting posting;
+        private int index;
+        private Iterator<Product> recentIterator;
+        private Product nextRecent;
+        private long nextRecentKey;
+        private boolean inBase;
+        Product current;
+        long currentKey;
+
+        Cursor(Posting posting, String after) {
+            this.posting = posting;
+            if (after == null) {
+                recentIterator = posting.recent.iterator();
+            } else {
+                Product key = new Product(after, null, 0, 0, null);
+                index = posting.indexOf(0, idKey(after), key, false);
+                recentIterator = posting.recent.tailSet(key, false).iterator();
+            }
+            nextRecent();
+            settle();
+        }
+
+        void advance() {
+            if (inBase) {
+                index++;
+            } else {
+                nextRecent();
+            }
+            settle();
+        }
+
+        /**
+         * 前进到不小于指定商品ID的第一个商品：数组部分在排序键上倍增查找，跳表部分先顺序前进
+         */
+        void seek(long key, Product target) {
+            if (current == null || compare(currentKey, current, key, target) >= 0) {
+                return;
+            }
+            index = posting.indexOf(index, key, target, true);
+            for (int step = 0; nextRecent != null && compare(nextRecentKey, nextRecent, key, target) < 0; step++) {
+                if (step == SCAN_STEPS) {
+                    recentIterator = posting.recent.tailSet(target, true).iterator();
+                    nextRecent();
+                    break;
+                }
+                nextRecent();
+            }
+            settle();
+        }
+
+        /**
+         * 当前商品是否为数组中已移除的商品
+         */
+        boolean removed() {
+            return inBase && posting.removed.contains(current);
+        }
+
+        private void nextRecent() {
+            nextRecent = recentIterator.hasNext() ? recentIterator.next() : null;
+            if (nextRecent != null) {
+                nextRecentKey = idKey(nextRecent.getId());
+            }
+        }
+
+        private void settle() {
+            Product[] base = posting.base;
+            inBase = index < base.length
+                    && (nextRecent == null || compare(posting.keys[index], base[index], nextRecentKey, nextRecent) <= 0);
+            if (inBase) {
+                current = base[index];
+                currentKey = posting.keys[index];
+            } else {
+                current = nextRecent;
+                currentKey = nextRecentKey;
+            }
+        }
+    }
+
+    /**
+     * 批量加入时一个gram的新商品
+     */
+    private static final class Group {
+        Product[] products;
+        int size;
+    }
+
+    /**
+     * 一个gram的倒排表：有序数组及其排序键（不再修改，移除的商品记在 removed 中）加上之后逐个加入的跳表
+     * 修改只在该gram的compute中进行；跳表的size()需要遍历，因此单独记录大小
+     */
+    private static class Posting {
+        final Product[] base;
+        final long[] keys;
+        final NavigableSet<Product> recent = new ConcurrentSkipListSet<>(ProductDao.ID_ORDER);
+        final Set<Product> removed = ConcurrentHashMap.newKeySet();
+        volatile int size;
+        int removedCount;
+
+        /**
+         * @param base 按ID排序、没有重复的商品
+         */
+        Posting(Product[] base) {
+            this.base = base;
+            this.keys = new long[base.length];
+            for (int i = 0; i < base.length; i++) {
+                keys[i] = idKey(base[i].getId());
+            }
+            this.size = base.length;
+        }
+
+        void add(Product product) {
+            if (indexInBase(product) >= 0) {
+                if (removed.remove(product)) {
+                    removedCount--;
+                    size++;
+                }
+            } else if (recent.add(product)) {
+                size++;
+            }
+        }
+
+        void remove(Product product) {
+            if (recent.remove(product)) {
+                size--;
+            } else if (indexInBase(product) >= 0 && removed.add(product)) {
+                removedCount++;
+                size--;
+            }
+        }
+
+        /**
+         * 跳表部分过大时合并为新的倒排表（在该gram的compute中调用）
+         */
+        Posting compacted() {
+            int recentCount = size - base.length + removedCount;
+            return recentCount > MIN_RECENT + base.length / REBUILD_RATIO ? merge(this, NO_PRODUCTS) : this;
+        }
+
+        /**
+         * 数组中从 from 开始第一个ID不小于（或大于）目标ID的位置，先倍增步长再二分查找
+         * @param inclusive 为true时找不小于目标ID的位置，否则找大于目标ID的位置
+         */
+        int indexOf(int from, long key, Product target, boolean inclusive) {
+            int low = from;
+            int high = from;
+            int step = 1;
+            while (high < base.length && before(high, key, target, inclusive)) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, base.length);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (before(middle, key, target, inclusive)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private boolean before(int index, long key, Product target, boolean inclusive) {
+            int order = compare(keys[index], base[index], key, target);
+            return inclusive ? order < 0 : order <= 0;
+        }
+
+        /**
+         * 商品在数组中的位置，不在数组中（包括ID相同的其他商品）时返回-1
+         */
+        private int indexInBase(Product product) {
+            int index = Arrays.binarySearch(base, product, ProductDao.ID_ORDER);
+            return index >= 0 && base[index] == product ? index : -1;
+        }
+
+        /**
+         * 按ID升序遍历两部分中的商品（跳过已移除的）
+         * @param from 起始ID，为null时从头开始
+         * @param inclusive 是否包含ID等于 from 的商品
+         */
+        Iterator<Product> iterator(String from, boolean inclusive) {
+            int position = 0;
+            NavigableSet<Product> tail = recent;
+            if (from != null) {
+                Product key = new Product(from, null, 0, 0, null);
+                position = Arrays.binarySearch(base, key, ProductDao.ID_ORDER);
+                position = position < 0 ? -position - 1 : inclusive ? position : position + 1;
+                tail = recent.tailSet(key, inclusive);
+            }
+            int start = position;
+            Iterator<Product> recentIterator = tail.iterator();
+            return new Iterator<Product>() {
+                private int index = start;
+                private Product nextRecent = recentIterator.hasNext() ? recentIterator.next() : null;
+                private Product next = advance();
+
+                private Product advance() {
+                    while (index < base.length || nextRecent != null) {
+                        Product product;
+                        if (nextRecent == null
+                                || index < base.length && ProductDao.ID_ORDER.compare(base[index], nextRecent) < 0) {
+                            product = base[index++];
+                            if (removed.contains(product)) {
+                                continue;
+                            }
+                        } else {
+                            product = nextRecent;
+                            nextRecent = recentIterator.hasNext() ? recentIterator.next() : null;
+                        }
+                        return product;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Product next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Product product = next;
+                    next = advance();
+                    return product;
+                }
+            };
+        }
+
+        /**
+         * 把按ID排序、没有重复的新商品与原有倒排表归并为新的倒排表（ID相同时保留原有的商品）
+         */
+        static Posting merge(Posting posting, Product[] added) {
+            List<Product> merged = new ArrayList<>(posting.size + added.length);
+            Iterator<Product> existing = posting.iterator(null, false);
+            Product current = existing.hasNext() ? existing.next() : null;
+            for (Product product : added) {
+                int order = 1;
+                while (current != null && (order = ProductDao.ID_ORDER.compare(current, product)) < 0) {
+                    merged.add(current);
+                    current = existing.hasNext() ? existing.next() : null;
+                }
+                if (order != 0) {
+                    merged.add(product);
+                }
+            }
+            while (current != null) {
+                merged.add(current);
+                current = existing.hasNext() ? existing.next() : null;
+            }
+            return new Posting(merged.toArray(NO_PRODUCTS));
+        }
+    }
+}
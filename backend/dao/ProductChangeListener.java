@@ -0,0 +1,53 @@
+package dao;
+
+import model.Product;
+
+/**
+ * 商品数据变更监听器
+ * ProductDao 在每次修改生效时回调，回调参数是修改生效那一刻的准确值
+ * （价格、类别修改与入库/出库互斥，因此每次库存变化都对应确定的价格和类别）。
+ *
+ * 回调由商品所在分片的写者同步执行（可能是替其他请求执行修改的请求线程；批量入库/出库在请求线程中执行），
+ * 不同分片的回调可能并发，
+ * 回调执行期间该分片的其他修改都在等待，实现应尽量轻量。
+ */
+public interface ProductChangeListener {
+
+    /**
+     * 商品已新增
+     * @param product 新商品
+     * @param quantity 新增时的库存数量
+     */
+    default void productAdded(Product product, int quantity) {
+    }
+
+    /**
+     * 商品已删除
+     * @param product 被删除的商品
+     * @param quantity 删除时的库存数量
+     */
+    default void productRemoved(Product product, int quantity) {
+    }
+
+    /**
+     * 商品信息已修改（product中已经是修改后的值）
+     * @param product 商品
+     * @param oldName 修改前的名称
+     * @param oldPrice 修改前的价格
+     * @param oldCategory 修改前的类别
+     * @param quantity 修改时的库存数量
+     */
+    default void productUpdated(Product product, String oldName, double oldPrice, String oldCategory, int quantity) {
+    }
+
+    /**
+     * 库存已变化
+     * @param product 商品
+     * @param price 库存变化时的价格
+     * @param category 库存变化时的类别
+     * @param delta 库存数量增量（入库为正，出库为负）
+     * @param stockState 变化后的库存状态
+     */
+    default void stockChanged(Product product, double price, String category, int delta, long stockState) {
+    }
+}
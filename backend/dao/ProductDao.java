@@ -1,17 +1,129 @@
 package dao;
 
 import model.Product;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * 商品数据访问层
  * 负责商品数据的增删改查操作
+ *
+ * 商品按ID的哈希划分到多个分片（见 ProductShard），每个分片的商品、ID顺序和各个索引只由该分片当前的写者修改，
+ * 修改提交到分片的邮箱并等待执行结果，日志落盘在修改执行之后、由调用线程各自等待。
+ * 按ID查询只读一个分片；商品列表、名称/类别查询和低库存查询读取所有分片后合并（全量查询并行读取各分片）。
  */
 public class ProductDao {
-    private Map<String, Product> products;  // 使用Map存储商品，key为商品ID
+    /** 按商品ID排序，分页查询的稳定顺序 */
+    static final Comparator<Product> ID_ORDER = Comparator.comparing(Product::getId);
+    /** 按库存数量、商品ID排序，合并各分片的低库存查询结果 */
+    private static final Comparator<Product> QUANTITY_ORDER =
+            Comparator.comparingInt(Product::getQuantity).thenComparing(Product::getId);
+    /** 默认分片数，可通过 -Dinventory.dao.shards 配置 */
+    public static final int DEFAULT_SHARDS =
+            Integer.getInteger("inventory.dao.shards", Runtime.getRuntime().availableProcessors());
+    /** 只有一个CPU时并行访问各分片只会增加调度开销 */
+    private static final boolean PARALLEL_FAN_OUT = Runtime.getRuntime().availableProcessors() > 1;
+    /** 分页归并时每个分片先读取的数量比平均份额多出的余量，分布不均时再从该分片续读 */
+    private static final int PAGE_SLACK = 16;
+
+    private final ProductShard[] shards;
+    private final Map<String, String> categoryNames = new ConcurrentHashMap<>();  // 类别字典：各分片的商品引用同一个类别实例
+    private final List<ProductChangeListener> listeners = new CopyOnWriteArrayList<>();  // 变更监听器
+    // 库存数据版本：每次修改生效之后加一（LongAdder只增不减，sum()单调递增，入库/出库并发时不争用同一个计数器）
+    private final LongAdder version = new LongAdder();
+    private volatile ProductJournal journal;  // 持久化日志，为null时仅保存在内存中
+    // 快照轮转日志时需要等待进行中的修改完成：修改先写日志再生效，轮转之前写入日志的修改必须在快照读取之前生效
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     public ProductDao() {
-        this.products = new HashMap<>();
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param shardCount 分片数
+     */
+    public ProductDao(int shardCount) {
+        shards = new ProductShard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ProductShard();
+        }
+    }
+
+    /**
+     * 分片数
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 注册变更监听器，并对已有商品回调一次 productAdded
+     * 应在启动阶段、开始处理请求之前注册
+     */
+    public void addChangeListener(ProductChangeListener listener) {
+        listeners.add(listener);
+        for (Product product : getAllProducts()) {
+            listener.productAdded(product, product.getQuantity());
+        }
+    }
+
+    /**
+     * 启用持久化：加载最新快照并重放日志，之后的每次修改都先写入日志
+     * @param journal 日志存储
+     */
+    public void enablePersistence(ProductJournal journal) throws IOException {
+        long replayed = journal.recover(this);
+        this.journal = journal;
+        journal.startSnapshots(this::checkpoint);
+        System.out.println("已从数据目录恢复 " + getProductCount() + " 个商品（重放日志 " + replayed + " 条）");
+    }
+
+    /**
+     * 关闭持久化日志（刷出未落盘的记录）
+     */
+    public void closePersistence() throws IOException {
+        ProductJournal journal = this.journal;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * 立即做一次快照，并删除快照之前的日志（同一时刻只允许一个快照）
+     */
+    public synchronized void checkpoint() {
+        ProductJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
+        try {
+            long snapshotLsn;
+            checkpointLock.writeLock().lock();
+            try {
+                snapshotLsn = journal.rotate();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+            journal.writeSnapshot(snapshotLsn, getAllProducts());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 库存数据版本，任何商品或库存修改生效后都会增大，可用于判断数据是否变化
+     * 调用方应先读取版本再读取数据：读到的数据不会比版本旧（修改在版本增加之前就已生效）
+     */
+    public long getVersion() {
+        return version.sum();
     }
 
     /**
@@ -20,20 +132,840 @@ public class ProductDao {
      * @return 是否添加成功
      */
     public boolean addProduct(Product product) {
-        if (products.containsKey(product.getId())) {
-            return false;  // 商品ID已存在
+        ProductJournal journal = this.journal;
+        ProductShard shard = shardOf(product.getId());
+        long lsn = shard.call(() -> {
+            lockForChange(journal);
+            try {
+                return insert(shard, product, journal, false);
+            } finally {
+                unlockForChange(journal);
+            }
+        });
+        if (lsn == ProductShard.REJECTED) {
+            return false;
         }
-        products.put(product.getId(), product);
+        version.increment();
+        awaitDurable(journal, lsn);
         return true;
     }
 
+    /**
+     * 批量添加新商品（导入时使用）
+     * 每个商品与单独调用 addProduct 的效果相同（ID已存在的商品不添加），
+     * 但整批只等待一次日志落盘，库存数据版本也只增加一次。
+     * 按分片拆分后并行添加到各分片，同一分片内保持批次中的顺序。
+     * @param batch 商品列表
+     * @return 每个商品是否添加成功
+     */
+    public boolean[] addProducts(List<Product> batch) {
+        return addProducts(batch, false);
+    }
+
+    /**
+     * 批量添加新商品，可以延后建立名称索引
+     * 延后时商品立即可以按ID、类别等查到，但在调用 buildDeferredNameIndex 之前按名称查不到；
+     * 大批量导入时最后一次性建立名称索引比逐个插入倒排表快得多。
+     * @param batch 商品列表
+     * @param deferNameIndex 是否延后建立名称索引
+     * @return 每个商品是否添加成功
+     */
+    public boolean[] addProducts(List<Product> batch, boolean deferNameIndex) {
+        ProductJournal journal = this.journal;
+        boolean[] added = new boolean[batch.size()];
+        List<List<Integer>> groups = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < added.length; i++) {
+            groups.get(shardIndex(batch.get(i).getId())).add(i);
+        }
+
+        // 每个分片只写自己那部分下标，分片的任务完成后结果对调用线程可见
+        IntStream shardIndexes = IntStream.range(0, shards.length);
+        long lastLsn = (PARALLEL_FAN_OUT ? shardIndexes.parallel() : shardIndexes).mapToLong(s -> {
+            ProductShard shard = shards[s];
+            List<Integer> group = groups.get(s);
+            if (group.isEmpty()) {
+                return 0;
+            }
+            return shard.call(() -> {
+                long last = 0;
+                lockForChange(journal);
+                try {
+                    for (int i : group) {
+                        long lsn = insert(shard, batch.get(i), journal, deferNameIndex);
+                        if (lsn != ProductShard.REJECTED) {
+                            added[i] = true;
+                            last = Math.max(last, lsn);
+                        }
+                    }
+                } finally {
+                    unlockForChange(journal);
+                }
+                return last;
+            });
+        }).max().orElse(0);
+
+        for (boolean a : added) {
+            if (a) {
+                version.increment();
+                break;
+            }
+        }
+        awaitDurable(journal, lastLsn);
+        return added;
+    }
+
+    /**
+     * 为延后建立名称索引的商品批量建立名称索引（各分片的写者分别执行）
+     * 期间已删除的商品跳过，已改名的商品按当前名称加入。
+     */
+    public void buildDeferredNameIndex() {
+        IntStream shardIndexes = IntStream.range(0, shards.length);
+        (PARALLEL_FAN_OUT ? shardIndexes.parallel() : shardIndexes).forEach(s -> {
+            ProductShard shard = shards[s];
+            shard.call(() -> {
+                List<Product> deferred = shard.deferredNames;
+                if (deferred.isEmpty()) {
+                    return 0;
+                }
+                shard.deferredNames = new ArrayList<>();
+                List<Product> live = new ArrayList<>(deferred.size());
+                for (Product product : deferred) {
+                    if (shard.products.get(product.getId()) == product) {
+                        live.add(product);
+                    }
+                }
+                shard.nameIndex.addAll(live);
+                return 0;
+            });
+        });
+    }
+
+    /**
+     * 加入新商品：记录日志、建立索引并通知监听器（由分片的写者执行）
+     * @param deferName 是否延后建立名称索引（见 buildDeferredNameIndex）
+     * @return 日志序号（未启用持久化时为0），ID已存在时返回 REJECTED
+     */
+    private long insert(ProductShard shard, Product product, ProductJournal journal, boolean deferName) {
+        if (shard.products.containsKey(product.getId())) {
+            return ProductShard.REJECTED;
+        }
+        long lsn = 0;
+        if (journal != null) {
+            lsn = journal.append(JournalRecord.add(product));
+            product.setIncarnation(lsn);
+        }
+        if (deferName) {
+            shard.deferredNames.add(product);
+        }
+        indexProduct(shard, product, !deferName);
+        for (ProductChangeListener listener : listeners) {
+            listener.productAdded(product, product.getQuantity());
+        }
+        // 索引和监听器都处理完之后才能按ID查到
+        shard.products.put(product.getId(), product);
+        shard.membershipChanged();
+        return lsn;
+    }
+
     /**
      * 根据ID删除商品
      * @param id 商品ID
      * @return 是否删除成功
      */
     public boolean deleteProduct(String id) {
-        return products.remove(id) != null;
+        ProductJournal journal = this.journal;
+        ProductShard shard = shardOf(id);
+        long lsn = shard.call(() -> {
+            Product product = shard.products.get(id);
+            if (product == null) {
+                return ProductShard.REJECTED;
+            }
+            lockForChange(journal);
+            try {
+                long appended = journal != null ? journal.append(JournalRecord.delete(id)) : 0;
+                // 先标记删除，之后对该商品的入库/出库都会失败
+                long stockState = product.retire();
+                removeProduct(shard, product, Product.quantityOf(stockState));
+                shard.products.remove(id);
+                shard.membershipChanged();
+                return appended;
+            } finally {
+                unlockForChange(journal);
+            }
+        });
+        if (lsn == ProductShard.REJECTED) {
+            return false;
+        }
+        version.increment();
+        awaitDurable(journal, lsn);
+        return true;
+    }
+
+    /**
+     * 更新商品信息
+     * @param id 商品ID
+     * @param name 新名称（为null则不更新）
+     * @param price 新价格（为负数则不更新）
+     * @param category 新类别（为null则不更新）
+     * @return 是否更新成功（商品不存在时返回false）
+     */
+    public boolean updateProduct(String id, String name, double price, String category) {
+        ProductJournal journal = this.journal;
+        ProductShard shard = shardOf(id);
+        // 同一商品的修改都由分片的写者串行执行，日志顺序与内存修改顺序一致
+        long lsn = shard.call(() -> {
+            Product product = shard.products.get(id);
+            if (product == null) {
+                return ProductShard.REJECTED;
+            }
+            lockForChange(journal);
+            try {
+                // 先记录日志再修改：写入失败时内存中的商品不变，监听器也不会收到通知
+                long appended = journal != null ? journal.append(JournalRecord.update(id,
+                        name != null ? name : product.getName(), price >= 0 ? price : product.getPrice(),
+                        category != null ? category : product.getCategory())) : 0;
+                applyUpdate(shard, product, name, price, category, true);
+                return appended;
+            } finally {
+                unlockForChange(journal);
+            }
+        });
+        if (lsn == ProductShard.REJECTED) {
+            return false;
+        }
+        version.increment();
+        awaitDurable(journal, lsn);
+        return true;
+    }
+
+    /**
+     * 商品入库（由商品所在分片的写者执行）
+     * @param id 商品ID
+     * @param amount 入库数量
+     * @return 是否成功
+     */
+    public boolean stockIn(String id, int amount) {
+        return changeStock(id, amount, JournalRecord.STOCK_IN);
+    }
+
+    /**
+     * 商品出库（由商品所在分片的写者检查并扣减库存）
+     * @param id 商品ID
+     * @param amount 出库数量
+     * @return 是否成功（商品不存在或库存不足时返回false）
+     */
+    public boolean stockOut(String id, int amount) {
+        return changeStock(id, amount, JournalRecord.STOCK_OUT);
+    }
+
+    /**
+     * 入库/出库：由分片的写者更新库存，通知监听器并记录日志，调用线程等待落盘
+     */
+    private boolean changeStock(String id, int amount, byte type) {
+        if (amount <= 0) {
+            return false;
+        }
+        ProductJournal journal = this.journal;
+        ProductShard shard = shardOf(id);
+        long lsn = shard.call(() -> {
+            Product product = shard.products.get(id);
+            return product == null ? ProductShard.REJECTED : applyStock(shard, product, amount, type, journal);
+        });
+        if (lsn == ProductShard.REJECTED) {
+            return false;
+        }
+        version.increment();
+        awaitDurable(journal, lsn);
+        return true;
+    }
+
+    /**
+     * 更新一个商品的库存
+     * 写者是该商品库存的唯一单笔修改者，但批量入库/出库会在调用线程中锁定跨分片的商品，
+     * 因此先锁定库存状态（遇到批次锁定时等待），锁定期间记录日志，写入成功后才发布新的库存状态并通知监听器；
+     * 写入日志失败时恢复锁定前的状态，修改不会生效。
+     * 和 updateProduct 一样先取快照读锁再锁定库存，避免等待中的快照把持有库存锁的一方挡在读锁外面造成死锁。
+     * @return 日志序号（未启用持久化时为0），库存不足或商品已删除时返回 REJECTED
+     */
+    private long applyStock(ProductShard shard, Product product, int amount, byte type, ProductJournal journal) {
+        int delta = type == JournalRecord.STOCK_IN ? amount : -amount;
+        lockForChange(journal);
+        try {
+            while (true) {
+                long current = product.getStockState();
+                if (Product.isLocked(current)) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long next = Product.applyDelta(current, delta);
+                if (next == Product.STOCK_UNCHANGED) {
+                    return ProductShard.REJECTED;
+                }
+                long locked = product.tryLockStock(current);
+                if (locked == Product.STOCK_UNCHANGED) {
+                    continue;
+                }
+                // 价格和类别只在库存锁定期间修改，锁定后读到的就是本次库存变化生效时的价格和类别
+                double price = product.getPrice();
+                String category = product.getCategory();
+                long lsn = 0;
+                try {
+                    if (journal != null) {
+                        lsn = journal.append(JournalRecord.stock(type, product, amount, next));
+                    }
+                } catch (RuntimeException | Error e) {
+                    product.compareAndSetStockState(locked, current);
+                    throw e;
+                }
+                // 只有锁定方能修改锁定中的状态，替换一定成功
+                product.compareAndSetStockState(locked, next);
+                shard.quantityIndex.reconcile(product);
+                for (ProductChangeListener listener : listeners) {
+                    listener.stockChanged(product, price, category, delta, next);
+                }
+                return lsn;
+            }
+        } finally {
+            unlockForChange(journal);
+        }
+    }
+
+    /**
+     * 批量入库/出库：全部行都能执行时一起生效，任何一行失败时全部不执行
+     * 按商品ID顺序锁定涉及的商品（顺序一致，多个批次之间不会死锁），在锁定期间按行的顺序检查库存，
+     * 全部通过后先记录为一条日志（崩溃恢复时同样整体生效或整体丢弃），再写入每个商品的最终数量并解除锁定。
+     * 批次可能跨多个分片，在调用线程中执行；锁定期间各分片的写者对这些商品的入库/出库等待批次完成。
+     * 和单笔入库/出库一样先取快照读锁再锁定商品，等待中的快照不会和持有库存锁的一方互相等待。
+     * @param batch 批次，执行后可查询每一行的结果
+     * @return 批次是否已生效
+     */
+    public boolean applyStockBatch(StockBatch batch) {
+        int lines = batch.size();
+        StockBatch.Status[] statuses = new StockBatch.Status[lines];
+        int[] quantities = new int[lines];
+
+        // 检查数量并找到商品，按ID排序以固定加锁顺序
+        Map<String, Product> involved = new TreeMap<>();
+        boolean valid = true;
+        for (int i = 0; i < lines; i++) {
+            String id = batch.getId(i);
+            Product product = id == null ? null : findProductById(id);
+            if (batch.getDelta(i) == 0) {
+                statuses[i] = StockBatch.Status.INVALID_AMOUNT;
+                valid = false;
+            } else if (product == null) {
+                statuses[i] = StockBatch.Status.NOT_FOUND;
+                valid = false;
+            } else {
+                involved.put(product.getId(), product);
+            }
+        }
+        Map<Product, long[]> running = new LinkedHashMap<>();  // 商品 -> {锁定前的库存状态, 当前数量}
+        if (!valid) {
+            // 不会执行，只按当前库存检查其余各行，便于一次报告所有问题
+            for (Product product : involved.values()) {
+                long state = product.getStockState();
+                running.put(product, new long[] {state, Product.quantityOf(state)});
+            }
+            checkLines(batch, involved, running, statuses, quantities);
+            return abort(batch, statuses, quantities);
+        }
+
+        ProductJournal journal = this.journal;
+        long lsn = 0;
+        lockForChange(journal);
+        try {
+            for (Product product : involved.values()) {
+                long state = product.lockStock();
+                running.put(product, new long[] {state, Product.quantityOf(state)});
+            }
+            if (!checkLines(batch, involved, running, statuses, quantities)) {
+                return abort(batch, statuses, quantities);
+            }
+
+            // 全部通过：先在锁定期间记录日志（写入失败时全部不生效），再写入最终数量并通知监听器
+            // （价格和类别在锁定期间不会变化）
+            List<JournalRecord> entries = new ArrayList<>();
+            for (Map.Entry<Product, long[]> entry : running.entrySet()) {
+                Product product = entry.getKey();
+                int before = Product.quantityOf(entry.getValue()[0]);
+                int after = (int) entry.getValue()[1];
+                if (after != before) {
+                    byte type = after > before ? JournalRecord.STOCK_IN : JournalRecord.STOCK_OUT;
+                    long next = Product.unlockedState(product.getStockState(), after);
+                    entries.add(JournalRecord.stock(type, product, Math.abs(after - before), next));
+                }
+            }
+            if (journal != null && !entries.isEmpty()) {
+                lsn = journal.append(JournalRecord.stockBatch(entries));
+            }
+            for (Iterator<Map.Entry<Product, long[]>> it = running.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Product, long[]> entry = it.next();
+                Product product = entry.getKey();
+                int before = Product.quantityOf(entry.getValue()[0]);
+                int after = (int) entry.getValue()[1];
+                double price = product.getPrice();
+                String category = product.getCategory();
+                long next = product.unlockStock(after);
+                it.remove();
+                if (after != before) {
+                    shardOf(product.getId()).quantityIndex.reconcile(product);
+                    for (ProductChangeListener listener : listeners) {
+                        listener.stockChanged(product, price, category, after - before, next);
+                    }
+                }
+            }
+            if (!entries.isEmpty()) {
+                version.increment();
+            }
+        } finally {
+            // 失败或异常时解除仍持有的锁定，库存数量不变
+            for (Product product : running.keySet()) {
+                product.unlockStock();
+            }
+            unlockForChange(journal);
+        }
+        awaitDurable(journal, lsn);
+        batch.complete(statuses, quantities, true);
+        return true;
+    }
+
+    /**
+     * 按行的顺序检查库存并计算每行执行后的数量
+     * @return 是否所有行都能执行
+     */
+    private static boolean checkLines(StockBatch batch, Map<String, Product> involved, Map<Product, long[]> running,
+                                      StockBatch.Status[] statuses, int[] quantities) {
+        boolean valid = true;
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != null) {
+                valid = false;
+                continue;
+            }
+            long[] stock = running.get(involved.get(batch.getId(i)));
+            long quantity = stock[1] + batch.getDelta(i);
+            if (Product.isRetired(stock[0])) {
+                statuses[i] = StockBatch.Status.NOT_FOUND;
+            } else if (quantity < 0) {
+                statuses[i] = StockBatch.Status.INSUFFICIENT_STOCK;
+            } else if (quantity > Integer.MAX_VALUE) {
+                statuses[i] = StockBatch.Status.OVERFLOW;
+            } else {
+                statuses[i] = StockBatch.Status.OK;
+                quantities[i] = (int) quantity;
+                stock[1] = quantity;
+                continue;
+            }
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * 批次不执行：未失败的行标记为未执行
+     */
+    private static boolean abort(StockBatch batch, StockBatch.Status[] statuses, int[] quantities) {
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == null || statuses[i] == StockBatch.Status.OK) {
+                statuses[i] = StockBatch.Status.ABORTED;
+            }
+            quantities[i] = 0;
+        }
+        batch.complete(statuses, quantities, false);
+        return false;
+    }
+
+    /**
+     * 从快照恢复商品（仅在恢复阶段调用）
+     * 恢复阶段和副本上没有本地的写请求，恢复线程和复制线程直接修改分片，相当于所有分片的写者
+     */
+    void restoreProduct(Product product) {
+        installProduct(product);
+    }
+
+    /**
+     * 重放一条日志记录（在恢复阶段或副本的复制线程中调用）
+     */
+    void replay(JournalRecord record) {
+        Product product;
+        switch (record.type) {
+            case JournalRecord.ADD:
+                product = new Product(record.id, record.name, record.price, record.quantity, record.category);
+                product.setIncarnation(record.lsn);
+                installProduct(product);
+                break;
+            case JournalRecord.UPDATE:
+                product = findProductById(record.id);
+                if (product != null) {
+                    applyUpdate(shardOf(record.id), product, record.name, record.price, record.category, false);
+                }
+                break;
+            case JournalRecord.DELETE:
+                ProductShard shard = shardOf(record.id);
+                product = shard.products.remove(record.id);
+                if (product != null) {
+                    // 副本上可能有并发的查询和变更推送，与 deleteProduct 一样先标记删除
+                    removeProduct(shard, product, Product.quantityOf(product.retire()));
+                    shard.membershipChanged();
+                }
+                break;
+            case JournalRecord.STOCK_IN:
+            case JournalRecord.STOCK_OUT:
+                replayStock(record);
+                break;
+            case JournalRecord.STOCK_BATCH:
+                for (JournalRecord entry : record.entries) {
+                    replayStock(entry);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 为复制准备快照（主节点使用，需已启用持久化）：在没有进行中的新增/修改/删除时取日志序号
+     * 与定时快照相同，之后用 writeReplicationSnapshot 写出的商品加上该序号之后的日志就是完整的数据
+     * （快照期间并发的入库/出库按版本号重放，重复的会被跳过）
+     * @return 快照的起始日志序号
+     */
+    long prepareReplicationSnapshot() {
+        ProductJournal journal = this.journal;
+        if (journal == null) {
+            throw new IllegalStateException("未启用持久化，无法复制");
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            return journal.getLastAppendedLsn();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写出复制快照（格式与快照文件相同）
+     * @param snapshotLsn prepareReplicationSnapshot 返回的日志序号
+     */
+    void writeReplicationSnapshot(java.io.OutputStream out, long snapshotLsn) throws IOException {
+        ProductJournal.writeSnapshot(out, snapshotLsn, getAllProducts());
+    }
+
+    /**
+     * 用主节点的快照替换全部商品（副本使用，由复制线程串行调用）
+     * 逐个替换后再删除快照中没有的商品，加载期间查询不会看到空的商品列表
+     */
+    void loadReplicatedSnapshot(List<Product> snapshot) {
+        Set<String> ids = new HashSet<>(snapshot.size() * 2);
+        for (Product product : snapshot) {
+            installProduct(product);
+            ids.add(product.getId());
+        }
+        for (Product product : getAllProducts()) {
+            ProductShard shard = shardOf(product.getId());
+            if (!ids.contains(product.getId()) && shard.products.remove(product.getId(), product)) {
+                removeProduct(shard, product, Product.quantityOf(product.retire()));
+                shard.membershipChanged();
+            }
+        }
+        version.increment();
+    }
+
+    /**
+     * 应用主节点复制来的一批日志记录（副本使用，由复制线程串行调用）
+     */
+    void applyReplicated(List<JournalRecord> records) {
+        for (JournalRecord record : records) {
+            replay(record);
+        }
+        if (!records.isEmpty()) {
+            version.increment();
+        }
+    }
+
+    /**
+     * 重放入库/出库记录：只重放同一商品实例上、比当前版本更新的库存记录（快照中已包含的记录会被跳过）
+     */
+    private void replayStock(JournalRecord record) {
+        ProductShard shard = shardOf(record.id);
+        Product product = shard.products.get(record.id);
+        if (product != null && product.getIncarnation() == record.incarnation
+                && Product.isNewerVersion(record.version, Product.versionOf(product.getStockState()))) {
+            int delta = record.quantity - product.getQuantity();
+            product.restoreStock(record.quantity, record.version);
+            shard.quantityIndex.reconcile(product);
+            for (ProductChangeListener listener : listeners) {
+                listener.stockChanged(product, product.getPrice(), product.getCategory(), delta,
+                        product.getStockState());
+            }
+        }
+    }
+
+    /**
+     * 放入商品（替换同ID的旧商品），仅在恢复阶段调用
+     */
+    private void installProduct(Product product) {
+        ProductShard shard = shardOf(product.getId());
+        Product previous = shard.products.put(product.getId(), product);
+        if (previous != null) {
+            removeProduct(shard, previous, previous.getQuantity());
+        }
+        indexProduct(shard, product, true);
+        for (ProductChangeListener listener : listeners) {
+            listener.productAdded(product, product.getQuantity());
+        }
+        shard.membershipChanged();
+    }
+
+    /**
+     * 将已从Map中移除（或即将移除）的商品移出索引并通知监听器
+     */
+    private void removeProduct(ProductShard shard, Product product, int quantity) {
+        unindexProduct(shard, product);
+        for (ProductChangeListener listener : listeners) {
+            listener.productRemoved(product, quantity);
+        }
+    }
+
+    /**
+     * 修改商品字段并同步维护索引，调用方需保证同一商品的修改串行执行
+     * @param lockStock 修改价格/类别时是否锁定库存（恢复阶段单线程执行，不需要锁定）
+     */
+    private void applyUpdate(ProductShard shard, Product product, String name, double price, String category,
+                             boolean lockStock) {
+        String oldName = product.getName();
+        double oldPrice = product.getPrice();
+        String oldCategory = product.getCategory();
+        boolean priceChanged = price >= 0 && price != oldPrice;
+        boolean categoryChanged = category != null && !category.equals(oldCategory);
+
+        if (name != null && !name.equals(oldName)) {
+            product.setName(name);
+            shard.nameIndex.remove(product, oldName);
+            shard.nameIndex.add(product, name);
+        }
+
+        long stockState;
+        if (lockStock && (priceChanged || categoryChanged)) {
+            stockState = product.lockStock();
+            try {
+                applyPriceAndCategory(shard, product, priceChanged, price, categoryChanged, category);
+            } finally {
+                product.unlockStock();
+            }
+        } else {
+            stockState = product.getStockState();
+            applyPriceAndCategory(shard, product, priceChanged, price, categoryChanged, category);
+        }
+
+        for (ProductChangeListener listener : listeners) {
+            listener.productUpdated(product, oldName, oldPrice, oldCategory, Product.quantityOf(stockState));
+        }
+    }
+
+    private void applyPriceAndCategory(ProductShard shard, Product product, boolean priceChanged, double price,
+                                       boolean categoryChanged, String category) {
+        if (priceChanged) {
+            product.setPrice(price);
+        }
+        if (categoryChanged) {
+            String oldCategory = product.getCategory();
+            product.setCategory(canonicalCategory(category));
+            shard.categoryIndex.remove(product, oldCategory);
+            shard.categoryIndex.add(product, product.getCategory());
+        }
+    }
+
+    /**
+     * 将新商品加入各个索引
+     * @param withName 是否加入名称索引
+     */
+    private void indexProduct(ProductShard shard, Product product, boolean withName) {
+        product.setCategory(canonicalCategory(product.getCategory()));
+        shard.idOrder.put(product.getId(), product);
+        if (withName) {
+            shard.nameIndex.add(product, product.getName());
+        }
+        shard.categoryIndex.add(product, product.getCategory());
+        shard.quantityIndex.add(product);
+    }
+
+    /**
+     * 将被删除的商品从各个索引中移除
+     */
+    private void unindexProduct(ProductShard shard, Product product) {
+        shard.idOrder.remove(product.getId(), product);
+        shard.nameIndex.remove(product, product.getName());
+        shard.categoryIndex.remove(product, product.getCategory());
+        shard.quantityIndex.remove(product);
+    }
+
+    /**
+     * 类别字典中的类别实例（各分片的类别索引各自编码，但商品统一引用同一个实例）
+     */
+    private String canonicalCategory(String category) {
+        return category == null ? null : categoryNames.computeIfAbsent(category, Function.identity());
+    }
+
+    private int shardIndex(String id) {
+        int hash = id.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    private ProductShard shardOf(String id) {
+        return shards[shardIndex(id)];
+    }
+
+    /**
+     * 在每个分片上执行查询；parallel 为true时在公共ForkJoin线程池中并行执行（只用于读取整个分片的查询，
+     * 分页查询每个分片只读一小段，并行调度的开销比查询本身大）
+     */
+    private <T> List<T> fanOut(Function<ProductShard, T> query, boolean parallel) {
+        if (shards.length == 1) {
+            return Collections.singletonList(query.apply(shards[0]));
+        }
+        if (parallel && PARALLEL_FAN_OUT) {
+            return Arrays.stream(shards).parallel().map(query).collect(Collectors.toList());
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (ProductShard shard : shards) {
+            results.add(query.apply(shard));
+        }
+        return results;
+    }
+
+    /**
+     * 多路归并各分片的有序结果
+     * @param parts 各分片按 order 排好序的结果
+     * @param limit 最多返回的数量，不大于0时返回空列表
+     */
+    private static List<Product> merge(List<List<Product>> parts, Comparator<Product> order, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (parts.size() == 1) {
+            List<Product> only = parts.get(0);
+            return only.size() <= limit ? only : new ArrayList<>(only.subList(0, limit));
+        }
+        int total = 0;
+        for (List<Product> part : parts) {
+            total += part.size();
+        }
+        List<Product> result = new ArrayList<>(Math.min(total, limit));
+        // 堆中是各分片的读取位置 {分片, 下标}，按当前元素排序
+        PriorityQueue<int[]> heads = new PriorityQueue<>(parts.size(),
+                (a, b) -> order.compare(parts.get(a[0]).get(a[1]), parts.get(b[0]).get(b[1])));
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        while (result.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Product> part = parts.get(head[0]);
+            result.add(part.get(head[1]));
+            if (++head[1] < part.size()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private void lockForChange(ProductJournal journal) {
+        if (journal != null) {
+            checkpointLock.readLock().lock();
+        }
+    }
+
+    private void unlockForChange(ProductJournal journal) {
+        if (journal != null) {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private static void awaitDurable(ProductJournal journal, long lsn) {
+        if (lsn != 0) {
+            journal.awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * 按商品ID分页读取一个分片
+     */
+    private interface PageQuery {
+        List<Product> page(ProductShard shard, String after, int limit);
+    }
+
+    /**
+     * 分页查询的多路归并：每个分片先读取平均份额加少量余量，某个分片读完且可能还有更多时从它的最后一个ID续读，
+     * 总读取量约为 limit 加上每个分片的余量，而不是分片数乘以 limit
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     */
+    private List<Product> mergePages(PageQuery query, String after, int limit) {
+        if (shards.length == 1 || limit <= 0) {
+            return query.page(shards[0], after, shards.length == 1 ? limit : 0);
+        }
+        int share = Math.min(limit, limit / shards.length + PAGE_SLACK);
+        PriorityQueue<PageCursor> heads = new PriorityQueue<>(shards.length, Comparator.comparing(c -> c.id));
+        for (ProductShard shard : shards) {
+            PageCursor cursor = new PageCursor(shard, query.page(shard, after, share), share);
+            if (cursor.next()) {
+                heads.add(cursor);
+            }
+        }
+        List<Product> result = new ArrayList<>(Math.min(limit, 1024));
+        while (result.size() < limit && !heads.isEmpty()) {
+            PageCursor cursor = heads.poll();
+            result.add(cursor.product);
+            if (!cursor.next()) {
+                int remaining = limit - result.size();
+                if (cursor.page.size() < cursor.requested || remaining == 0) {
+                    continue;  // 该分片已经读完
+                }
+                cursor.requested = Math.min(remaining, share);
+                cursor.page = query.page(cursor.shard, cursor.id, cursor.requested);
+                cursor.index = 0;
+                if (!cursor.next()) {
+                    continue;
+                }
+            }
+            heads.add(cursor);
+        }
+        return result;
+    }
+
+    /**
+     * 分页归并中一个分片的读取位置（缓存当前商品的ID，堆中比较时不再经过商品对象）
+     */
+    private static class PageCursor {
+        final ProductShard shard;
+        List<Product> page;
+        int requested;
+        int index;
+        Product product;  // 当前商品
+        String id;        // 当前商品的ID；读完这一段后保留最后一个ID，用于续读
+
+        PageCursor(ProductShard shard, List<Product> page, int requested) {
+            this.shard = shard;
+            this.page = page;
+            this.requested = requested;
+        }
+
+        /**
+         * 移动到这一段中的下一个商品
+         * @return 这一段已读完时返回false
+         */
+        boolean next() {
+            if (index == page.size()) {
+                return false;
+            }
+            product = page.get(index++);
+            id = product.getId();
+            return true;
+        }
     }
 
     /**
@@ -42,45 +974,101 @@ public class ProductDao {
      * @return 商品对象，如果不存在则返回null
      */
     public Product findProductById(String id) {
-        return products.get(id);
+        return shardOf(id).products.get(id);
     }
 
     /**
-     * 根据名称查找商品（支持模糊搜索）
-     * @param name 商品名称
-     * @return 匹配的商品列表
+     * 根据名称查找商品（支持模糊搜索，通过N-gram倒排索引查找）
+     * @param name 商品名称（为空时查找全部商品）
+     * @return 匹配的商品列表，按商品ID升序
      */
     public List<Product> findProductsByName(String name) {
-        List<Product> result = new ArrayList<>();
-        for (Product product : products.values()) {
-            if (product.getName().contains(name)) {
-                result.add(product);
-            }
+        if (name == null || name.isEmpty()) {
+            // 各分片按ID排序的商品归并（getAllProducts 是分片拼接的顺序）
+            return merge(fanOut(shard -> new ArrayList<>(shard.idOrder.values()), true), ID_ORDER, Integer.MAX_VALUE);
         }
-        return result;
+        return merge(fanOut(shard -> shard.nameIndex.search(name), true), ID_ORDER, Integer.MAX_VALUE);
     }
 
     /**
-     * 根据类别查找商品
-     * @param category 商品类别
+     * 分页查找名称包含指定子串的商品，按商品ID升序
+     * @param name 商品名称（为空时查找全部商品）
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
      * @return 匹配的商品列表
      */
-    public List<Product> findProductsByCategory(String category) {
-        List<Product> result = new ArrayList<>();
-        for (Product product : products.values()) {
-            if (product.getCategory().equals(category)) {
-                result.add(product);
-            }
+    public List<Product> findProductsByName(String name, String after, int limit) {
+        if (name == null || name.isEmpty()) {
+            return getAllProducts(after, limit);
         }
-        return result;
+        return mergePages((shard, from, count) -> shard.nameIndex.search(name, from, count), after, limit);
     }
 
     /**
-     * 获取所有商品列表
+     * 根据类别查找商品（通过类别索引查找）
+     * @param category 商品类别
+     * @return 匹配的商品列表，按商品ID升序
+     */
+    public List<Product> findProductsByCategory(String category) {
+        return merge(fanOut(shard -> shard.categoryIndex.find(category), true), ID_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 分页查找指定类别的商品，按商品ID升序
+     * @param category 商品类别
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 匹配的商品列表
+     */
+    public List<Product> findProductsByCategory(String category, String after, int limit) {
+        return mergePages((shard, from, count) -> shard.categoryIndex.find(category, from, count), after, limit);
+    }
+
+    /**
+     * 查找库存数量小于阈值的商品（通过库存数量索引范围读取）
+     * @param threshold 库存阈值
+     * @param limit 最多返回的数量
+     * @return 按库存数量升序排列的商品列表
+     */
+    public List<Product> findProductsByQuantityBelow(int threshold, int limit) {
+        return merge(fanOut(shard -> shard.quantityIndex.below(threshold, limit), false), QUANTITY_ORDER, limit);
+    }
+
+    /**
+     * 获取所有商品列表（各分片已发布的商品列表拼接而成）
      * @return 所有商品的列表
      */
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products.values());
+        List<Product[]> views = fanOut(ProductShard::view, true);
+        int total = 0;
+        for (Product[] view : views) {
+            total += view.length;
+        }
+        List<Product> result = new ArrayList<>(total);
+        for (Product[] view : views) {
+            Collections.addAll(result, view);
+        }
+        return result;
+    }
+
+    /**
+     * 分页获取商品，按商品ID升序（从每个分片ID有序的索引中读取一页后归并，不复制全部商品）
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 商品列表
+     */
+    public List<Product> getAllProducts(String after, int limit) {
+        return mergePages((shard, from, count) -> {
+            NavigableMap<String, Product> range = from == null ? shard.idOrder : shard.idOrder.tailMap(from, false);
+            List<Product> page = new ArrayList<>(Math.min(Math.max(count, 0), 1024));
+            for (Product product : range.values()) {
+                if (page.size() >= count) {
+                    break;
+                }
+                page.add(product);
+            }
+            return page;
+        }, after, limit);
     }
 
     /**
@@ -88,19 +1076,22 @@ public class ProductDao {
      * @return 商品种类数
      */
     public int getProductCount() {
-        return products.size();
+        int count = 0;
+        for (ProductShard shard : shards) {
+            count += shard.products.size();
+        }
+        return count;
     }
 
     /**
-     * 获取所有类别
+     * 获取所有类别（从各分片的类别索引读取，与商品数量无关）
      * @return 类别集合
      */
     public Set<String> getAllCategories() {
-        Set<String> categories = new HashSet<>();
-        for (Product product : products.values()) {
-            categories.add(product.getCategory());
+        Set<String> result = new LinkedHashSet<>();
+        for (ProductShard shard : shards) {
+            result.addAll(shard.categoryIndex.categories());
         }
-        return categories;
+        return result;
     }
 }
-
@@ -0,0 +1,647 @@
+package dao;
+
+import model.Product;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 商品数据预写日志（WAL）与快照存储
+ *
+ * 目录结构：
+ *   journal-<首条日志序号>.log   日志段文件，每条记录为 [长度][CRC32][日志序号][记录内容]
+ *   snapshot-<起始日志序号>.snap 快照文件，包含该日志序号之前的全部数据
+ *
+ * 写入采用组提交：写线程只把记录追加到内存缓冲区，由后台刷盘线程批量写入并执行一次fsync，
+ * 同一批次内的所有写线程共享这一次fsync。快照完成后，旧的日志段和快照会被删除。
+ */
+public class ProductJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;  // "SNAP"
+    private static final int FRAME_HEADER_SIZE = 16;       // 长度(4) + CRC(4) + 日志序号(8)
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final File dir;
+    private final boolean syncOnCommit;                    // 提交时是否fsync
+    private final long snapshotIntervalMillis;             // 快照间隔
+    private final long snapshotJournalBytes;               // 日志超过该大小时提前做快照
+
+    // 追加缓冲区，由appendLock保护
+    private final Object appendLock = new Object();
+    private RecordBuffer pending = new RecordBuffer();
+    private long nextLsn = 1;
+    private long pendingLastLsn;
+    private final CRC32 crc = new CRC32();
+
+    // 日志段文件，由ioLock保护（刷盘线程和快照轮转互斥）
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private RecordBuffer spare = new RecordBuffer();
+    private FileChannel segment;
+    private volatile long segmentBytes;
+
+    private final Object durableMonitor = new Object();
+    private volatile long durableLsn;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile BatchListener batchListener;  // 复制：每批记录落盘后回调
+    private Thread flusher;
+    private Thread snapshotter;
+
+    /**
+     * 创建日志存储
+     * @param dir 数据目录
+     * @param syncOnCommit 提交时是否执行fsync（关闭后只保证写入操作系统缓存）
+     * @param snapshotIntervalSeconds 快照间隔（秒）
+     * @param snapshotJournalBytes 日志段超过该字节数时提前做快照
+     */
+    public ProductJournal(File dir, boolean syncOnCommit, long snapshotIntervalSeconds, long snapshotJournalBytes) {
+        this.dir = dir;
+        this.syncOnCommit = syncOnCommit;
+        this.snapshotIntervalMillis = snapshotIntervalSeconds * 1000;
+        this.snapshotJournalBytes = snapshotJournalBytes;
+    }
+
+    public ProductJournal(File dir) {
+        this(dir, true, 300, 64L * 1024 * 1024);
+    }
+
+    /**
+     * 日志批次监听器（复制使用）
+     * 在刷盘线程中、批次落盘之后按日志序号顺序回调，应尽快返回
+     */
+    interface BatchListener {
+        /**
+         * @param frames 批次内容的副本，与日志段文件中的格式相同（见 decodeFrames）
+         * @param lastLsn 批次中最后一条记录的日志序号
+         */
+        void batchWritten(byte[] frames, long lastLsn);
+    }
+
+    void setBatchListener(BatchListener listener) {
+        this.batchListener = listener;
+    }
+
+    /**
+     * 加载最新快照并重放其后的日志，然后打开新的日志段并启动刷盘线程
+     * @param dao 接收恢复数据的DAO
+     * @return 恢复的日志记录条数
+     */
+    long recover(ProductDao dao) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建数据目录: " + dir);
+        }
+
+        long snapshotLsn = loadLatestSnapshot(dao);
+        long lastLsn = snapshotLsn;
+        long replayed = 0;
+        for (File file : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            long[] result = replaySegment(file, snapshotLsn, dao);
+            lastLsn = Math.max(lastLsn, result[0]);
+            replayed += result[1];
+        }
+
+        nextLsn = lastLsn + 1;
+        durableLsn = lastLsn;
+        segment = openSegment(nextLsn);
+
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return replayed;
+    }
+
+    /**
+     * 启动后台快照线程
+     * @param checkpoint 执行一次快照的回调
+     */
+    void startSnapshots(Runnable checkpoint) {
+        snapshotter = new Thread(() -> {
+            long lastSnapshot = System.currentTimeMillis();
+            while (!closed) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long bytes = segmentBytes;
+                boolean due = System.currentTimeMillis() - lastSnapshot >= snapshotIntervalMillis;
+                if (bytes >= snapshotJournalBytes || (due && bytes > 0)) {
+                    try {
+                        checkpoint.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("快照失败: " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                    lastSnapshot = System.currentTimeMillis();
+                }
+            }
+        }, "journal-snapshotter");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    /**
+     * 追加一条记录到日志缓冲区（不等待落盘）
+     * @return 分配的日志序号
+     */
+    long append(JournalRecord record) {
+        RecordBuffer body = new RecordBuffer();
+        try {
+            record.writeTo(new DataOutputStream(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (appendLock) {
+            checkUsable();
+            long lsn = nextLsn++;
+            boolean wasEmpty = pending.size() == 0;
+            pending.writeInt(body.size());
+            pending.writeInt(frameCrc(crc, body.buffer(), 0, body.size(), lsn));
+            pending.writeLong(lsn);
+            pending.write(body.buffer(), 0, body.size());
+            pendingLastLsn = lsn;
+            record.lsn = lsn;
+            if (wasEmpty) {
+                appendLock.notify();
+            }
+            return lsn;
+        }
+    }
+
+    /**
+     * 等待指定日志序号之前的记录全部落盘（组提交）
+     */
+    void awaitDurable(long lsn) {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        synchronized (durableMonitor) {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("日志写入失败", failure);
+                }
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待日志落盘时被中断", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前已落盘的最大日志序号
+     */
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * 已分配的最大日志序号（可能尚未落盘）
+     */
+    long getLastAppendedLsn() {
+        synchronized (appendLock) {
+            return nextLsn - 1;
+        }
+    }
+
+    /**
+     * 当前日志段的大小（字节）
+     */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * 轮转日志段：把缓冲区中已有的记录写入当前日志段，之后的记录写入新日志段
+     * 调用方需保证此时没有进行中的新增/修改/删除操作
+     * @return 轮转点的日志序号（不超过该序号的记录都在旧日志段中）
+     */
+    long rotate() throws IOException {
+        ioLock.lock();
+        try {
+            long rotateLsn;
+            RecordBuffer batch;
+            synchronized (appendLock) {
+                checkUsable();
+                rotateLsn = nextLsn - 1;
+                batch = swapPending();
+            }
+            writeBatch(batch, rotateLsn);
+            segment.close();
+            segment = openSegment(rotateLsn + 1);
+            segmentBytes = 0;
+            return rotateLsn;
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * 写入快照，并删除快照之前的日志段和旧快照
+     * @param snapshotLsn 快照起始日志序号（由 rotate 返回）
+     * @param products 快照时刻的商品集合
+     */
+    void writeSnapshot(long snapshotLsn, Collection<Product> products) throws IOException {
+        File target = new File(dir, SNAPSHOT_PREFIX + format(snapshotLsn) + SNAPSHOT_SUFFIX);
+        File temp = new File(dir, target.getName() + ".tmp");
+
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            BufferedOutputStream out = new BufferedOutputStream(fos, 1 << 16);
+            writeSnapshot(out, snapshotLsn, products);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // 快照已落盘，删除被它覆盖的日志段和旧快照
+        for (File file : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (parseLsn(file, SEGMENT_PREFIX, SEGMENT_SUFFIX) <= snapshotLsn) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        for (File file : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (parseLsn(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < snapshotLsn) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * 写出快照内容（文件和复制使用同一格式）：魔数、起始日志序号、逐个商品、商品数、CRC32
+     */
+    static void writeSnapshot(OutputStream os, long snapshotLsn, Collection<Product> products) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(os, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(snapshotLsn);
+        int count = 0;
+        for (Product product : products) {
+            long stockState = product.getStockState();
+            out.writeBoolean(true);
+            out.writeUTF(product.getId());
+            out.writeUTF(product.getName());
+            out.writeDouble(product.getPrice());
+            out.writeInt(Product.quantityOf(stockState));
+            out.writeInt(Product.versionOf(stockState));
+            JournalRecord.writeNullableString(out, product.getCategory());
+            out.writeLong(product.getIncarnation());
+            count++;
+        }
+        out.writeBoolean(false);
+        out.writeInt(count);
+        out.flush();
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * 读取快照内容（不做缓冲，从网络读取时不会多读后面的数据）
+     * @return 快照中的商品，格式或校验错误时返回null
+     */
+    static List<Product> readSnapshot(InputStream is) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(is, new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            return null;
+        }
+        in.readLong();
+        List<Product> products = new ArrayList<>();
+        while (in.readBoolean()) {
+            String id = in.readUTF();
+            String name = in.readUTF();
+            double price = in.readDouble();
+            int quantity = in.readInt();
+            int version = in.readInt();
+            String category = JournalRecord.readNullableString(in);
+            Product product = new Product(id, name, price, quantity, category);
+            product.restoreStock(quantity, version);
+            product.setIncarnation(in.readLong());
+            products.add(product);
+        }
+        int count = in.readInt();
+        long expected = checked.getChecksum().getValue();
+        if (count != products.size() || in.readLong() != expected) {
+            return null;
+        }
+        return products;
+    }
+
+    /**
+     * 解析一段连续的日志帧（复制时使用，格式与日志段文件相同）
+     * @throws IOException 帧不完整或校验失败
+     */
+    static List<JournalRecord> decodeFrames(byte[] data, int length) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < FRAME_HEADER_SIZE) {
+                throw new IOException("日志帧不完整");
+            }
+            int size = buffer.getInt();
+            int storedCrc = buffer.getInt();
+            long lsn = buffer.getLong();
+            if (size <= 0 || size > buffer.remaining()) {
+                throw new IOException("日志帧长度错误: " + size);
+            }
+            int offset = buffer.position();
+            if (frameCrc(checksum, data, offset, size, lsn) != storedCrc) {
+                throw new IOException("日志帧校验失败，日志序号: " + lsn);
+            }
+            records.add(JournalRecord.readFrom(new DataInputStream(new ByteArrayInputStream(data, offset, size)), lsn));
+            buffer.position(offset + size);
+        }
+        return records;
+    }
+
+    /**
+     * 日志帧的校验值：记录内容和日志序号的CRC32
+     */
+    private static int frameCrc(CRC32 crc, byte[] body, int offset, int length, long lsn) {
+        crc.reset();
+        crc.update(body, offset, length);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (lsn >>> shift));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 刷出剩余记录并关闭日志
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appendLock.notifyAll();
+        }
+        if (snapshotter != null) {
+            snapshotter.interrupt();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ioLock.lock();
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * 刷盘线程：有待写记录时批量写入并fsync一次
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (appendLock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        appendLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0 && closed) {
+                    return;
+                }
+            }
+            ioLock.lock();
+            try {
+                RecordBuffer batch;
+                long lastLsn;
+                synchronized (appendLock) {
+                    lastLsn = pendingLastLsn;
+                    batch = swapPending();
+                }
+                writeBatch(batch, lastLsn);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 交换追加缓冲区，调用方需持有ioLock和appendLock
+     */
+    private RecordBuffer swapPending() {
+        RecordBuffer batch = pending;
+        pending = spare;
+        spare = batch;
+        return batch;
+    }
+
+    /**
+     * 写入一个批次并fsync，然后唤醒等待该批次的写线程，调用方需持有ioLock
+     */
+    private void writeBatch(RecordBuffer batch, long lastLsn) throws IOException {
+        byte[] replicated = null;
+        if (batch.size() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.buffer(), 0, batch.size());
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            if (syncOnCommit) {
+                segment.force(false);
+            }
+            segmentBytes += batch.size();
+            if (batchListener != null) {
+                replicated = Arrays.copyOf(batch.buffer(), batch.size());
+            }
+            batch.reset();
+        }
+        if (replicated != null) {
+            // 只复制已落盘的记录；调用方持有ioLock，回调按日志序号顺序进行
+            batchListener.batchWritten(replicated, lastLsn);
+        }
+        synchronized (durableMonitor) {
+            if (lastLsn > durableLsn) {
+                durableLsn = lastLsn;
+            }
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private void fail(IOException e) {
+        System.err.println("日志写入失败: " + e.getMessage());
+        synchronized (durableMonitor) {
+            failure = e;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("日志已不可用", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("日志已关闭");
+        }
+    }
+
+    /**
+     * 加载最新的有效快照
+     * @return 快照的起始日志序号，没有快照时返回0
+     */
+    private long loadLatestSnapshot(ProductDao dao) throws IOException {
+        List<File> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Collections.reverse(snapshots);
+        for (File file : snapshots) {
+            List<Product> products = readSnapshot(file);
+            if (products != null) {
+                for (Product product : products) {
+                    dao.restoreProduct(product);
+                }
+                return parseLsn(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            }
+            System.err.println("快照文件已损坏，跳过: " + file.getName());
+        }
+        return 0;
+    }
+
+    /**
+     * 读取快照文件，校验失败时返回null
+     */
+    private List<Product> readSnapshot(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            return readSnapshot(in);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 重放一个日志段中快照之后的记录，遇到残缺或损坏的记录时截断
+     * @return {最大日志序号, 重放条数}
+     */
+    private long[] replaySegment(File file, long snapshotLsn, ProductDao dao) throws IOException {
+        long lastLsn = 0;
+        long replayed = 0;
+        long validBytes = 0;
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] body = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                int storedCrc;
+                long lsn;
+                try {
+                    storedCrc = in.readInt();
+                    lsn = in.readLong();
+                    in.readFully(body, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (frameCrc(checksum, body, 0, length, lsn) != storedCrc) {
+                    break;
+                }
+                validBytes += FRAME_HEADER_SIZE + length;
+                lastLsn = lsn;
+                if (lsn > snapshotLsn) {
+                    dao.replay(JournalRecord.readFrom(new DataInputStream(new ByteArrayInputStream(body, 0, length)), lsn));
+                    replayed++;
+                }
+            }
+        }
+        if (validBytes < file.length()) {
+            System.err.println("日志段末尾存在不完整记录，已截断: " + file.getName());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+        return new long[]{lastLsn, replayed};
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        File file = new File(dir, SEGMENT_PREFIX + format(firstLsn) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+        return channel;
+    }
+
+    /**
+     * 按日志序号升序列出文件
+     */
+    private List<File> listFiles(String prefix, String suffix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(suffix));
+        List<File> result = new ArrayList<>();
+        if (files != null) {
+            result.addAll(Arrays.asList(files));
+        }
+        result.sort(Comparator.comparingLong(f -> parseLsn(f, prefix, suffix)));
+        return result;
+    }
+
+    private static long parseLsn(File file, String prefix, String suffix) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static String format(long lsn) {
+        return String.format("%020d", lsn);
+    }
+
+    /**
+     * 可直接访问内部数组的字节缓冲区
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package dao;
+
+import model.Product;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * 商品分片：按商品ID的哈希划分的一部分商品及其索引
+ * 分片的修改（新增/修改/删除、入库/出库）都作为任务放入分片的邮箱，同一时刻只有一个线程（分片的写者）
+ * 按顺序执行邮箱中的任务，同一分片内的修改不需要加锁，不同分片的修改互不争用。
+ * 写者不是专门的线程：提交任务的线程在没有写者时自己成为写者，把邮箱中的任务（包括其他线程提交的）一并执行，
+ * 其他线程挂起等待结果。没有竞争时修改直接在调用线程中执行，不需要线程切换；竞争时一个写者连续执行一批任务。
+ *
+ * 查询不经过邮箱，直接读取并发容器（读取无锁）；全部商品的列表按分片发布为不可变数组，
+ * 商品增删之后由下一次读取重建，入库/出库只修改商品本身，不影响已发布的列表。
+ */
+class ProductShard {
+    /** 修改未执行（商品不存在、ID已存在、库存不足等），其他返回值为日志序号（未启用持久化时为0） */
+    static final long REJECTED = -1;
+    /** 写者执行完自己的任务后最多再替其他线程执行的任务数，之后把写者交给下一个等待的线程 */
+    private static final int MAX_COMBINED = 256;
+
+    final Map<String, Product> products = new ConcurrentHashMap<>();
+    final NavigableMap<String, Product> idOrder = new ConcurrentSkipListMap<>();  // 按ID排序，用于分页
+    final NameIndex nameIndex = new NameIndex();
+    final CategoryIndex categoryIndex = new CategoryIndex();
+    final QuantityIndex quantityIndex = new QuantityIndex();
+    // 已加入分片、名称索引延后批量建立的商品（只由写者访问）
+    List<Product> deferredNames = new ArrayList<>();
+
+    private final Queue<Mutation> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Thread> writer = new AtomicReference<>();  // 当前的写者，为null时没有写者
+
+    // 商品增删计数（只由写者或恢复/复制线程修改），与已发布的商品列表比较判断列表是否过期
+    private volatile long membership;
+    private volatile View view = new View(0, new Product[0]);
+
+    /**
+     * 执行一个修改任务并返回结果（由分片的写者执行，可能是调用线程自己）
+     * 任务中抛出的异常原样抛给调用方
+     * @param mutation 返回日志序号或 REJECTED
+     */
+    long call(LongSupplier mutation) {
+        Thread current = Thread.currentThread();
+        if (writer.get() == current) {
+            // 写者执行的任务（如监听器回调）中再次修改本分片
+            return mutation.getAsLong();
+        }
+        Mutation task = new Mutation(mutation, current);
+        mailbox.offer(task);
+        while (!task.done) {
+            if (writer.get() == null && writer.compareAndSet(null, current)) {
+                try {
+                    drain(task);
+                } finally {
+                    writer.set(null);
+                }
+                // 先放弃写者再检查邮箱：放弃之后提交的任务，提交方会自己成为写者；之前的由这里唤醒
+                Mutation next = mailbox.peek();
+                if (next != null) {
+                    LockSupport.unpark(next.waiter);
+                }
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        return task.result();
+    }
+
+    /**
+     * 作为写者按顺序执行邮箱中的任务，执行完自己的任务并替其他线程执行一定数量之后返回
+     */
+    private void drain(Mutation own) {
+        int combined = 0;
+        Mutation task;
+        while ((task = mailbox.poll()) != null) {
+            task.run();
+            if (task != own) {
+                LockSupport.unpark(task.waiter);
+                if (own.done && ++combined >= MAX_COMBINED) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 商品已加入或移出分片（修改Map之后调用），之后的读取会重建商品列表
+     */
+    void membershipChanged() {
+        membership++;
+    }
+
+    /**
+     * 分片中全部商品的不可变列表（商品增删之后的第一次读取时重建，多个读取线程可能同时重建，结果相同）
+     */
+    Product[] view() {
+        View current = view;
+        long expected = membership;  // 先读计数再读Map：读到的商品不会比计数旧
+        if (current.membership == expected) {
+            return current.products;
+        }
+        Product[] products = this.products.values().toArray(new Product[0]);
+        view = new View(expected, products);
+        return products;
+    }
+
+    /**
+     * 邮箱中的修改任务
+     */
+    private static final class Mutation {
+        private final LongSupplier body;
+        final Thread waiter;  // 提交任务、等待结果的线程
+        private long result;
+        private Throwable failure;
+        volatile boolean done;  // 写入后 result/failure 对等待线程可见
+
+        Mutation(LongSupplier body, Thread waiter) {
+            this.body = body;
+            this.waiter = waiter;
+        }
+
+        void run() {
+            try {
+                result = body.getAsLong();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            done = true;
+        }
+
+        long result() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 已发布的商品列表
+     */
+    private static final class View {
+        final long membership;
+        final Product[] products;
+
+        View(long membership, Product[] products) {
+            this.membership = membership;
+            this.products = products;
+        }
+    }
+}
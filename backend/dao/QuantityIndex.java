@@ -0,0 +1,104 @@
+package dao;
+
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 按库存数量排序的商品索引
+ * 使用跳表按 (库存数量, 商品ID) 排序，"库存数量 < 阈值" 的查询是一次范围读取，代价为 O(log n + k)。
+ *
+ * 入库/出库是无锁的，多个线程可能同时修改同一商品的库存；每次修改后调用 reconcile，
+ * 在该商品的映射上串行地把索引项调整为商品当前的库存数量，最后一次调整总能看到最终数量。
+ */
+class QuantityIndex {
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int c = Integer.compare(a.quantity, b.quantity);
+        if (c != 0) {
+            return c;
+        }
+        // id为null的哨兵项排在同数量的所有商品之前
+        if (a.id == null || b.id == null) {
+            return a.id == null ? (b.id == null ? 0 : -1) : 1;
+        }
+        return a.id.compareTo(b.id);
+    };
+
+    private final ConcurrentSkipListSet<Entry> sorted = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Product, Entry> entries = new ConcurrentHashMap<>();  // 商品 -> 当前索引项
+
+    /**
+     * 加入新商品
+     */
+    void add(Product product) {
+        entries.compute(product, (key, previous) -> {
+            if (previous != null) {
+                sorted.remove(previous);
+            }
+            Entry entry = new Entry(product.getQuantity(), product.getId(), product);
+            sorted.add(entry);
+            return entry;
+        });
+    }
+
+    /**
+     * 移除商品
+     */
+    void remove(Product product) {
+        entries.computeIfPresent(product, (key, entry) -> {
+            sorted.remove(entry);
+            return null;
+        });
+    }
+
+    /**
+     * 库存变化后把索引项调整为商品当前的库存数量
+     */
+    void reconcile(Product product) {
+        entries.computeIfPresent(product, (key, entry) -> {
+            int quantity = product.getQuantity();
+            if (entry.quantity == quantity) {
+                return entry;
+            }
+            sorted.remove(entry);
+            Entry next = new Entry(quantity, entry.id, product);
+            sorted.add(next);
+            return next;
+        });
+    }
+
+    /**
+     * 查找库存数量小于阈值的商品，按库存数量升序
+     * @param threshold 库存阈值
+     * @param limit 最多返回的数量
+     */
+    List<Product> below(int threshold, int limit) {
+        List<Product> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        for (Entry entry : sorted.headSet(new Entry(threshold, null, null))) {
+            result.add(entry.product);
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 索引项（不可变，库存变化时替换为新的索引项）
+     */
+    private static class Entry {
+        final int quantity;
+        final String id;
+        final Product product;
+
+        Entry(int quantity, String id, Product product) {
+            this.quantity = quantity;
+            this.id = id;
+            this.product = product;
+        }
+    }
+}
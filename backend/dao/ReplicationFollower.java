@@ -0,0 +1,201 @@
+package dao;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import model.Product;
+
+/**
+ * 复制副本
+ * 连接主节点（见 ReplicationLeader 的协议说明），按顺序应用快照和日志批次到本地的 ProductDao，
+ * 连接断开后自动重连并从已应用的日志序号续传。副本的数据只保存在内存中，重启后从主节点的快照重新同步。
+ *
+ * 延迟统计：落后的日志条数按主节点最近告知的已落盘日志序号计算；
+ * 复制延迟为最近应用的批次在主节点落盘到在副本应用的时间（需要两台机器的时钟同步），已追上时为0。
+ */
+public class ReplicationFollower implements Closeable {
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = (int) ReplicationLeader.HEARTBEAT_MILLIS * 5;
+
+    private final ProductDao dao;
+    private final String host;
+    private final int port;
+
+    private volatile long leaderId;      // 当前数据来自的主节点，0表示尚未同步
+    private volatile long appliedLsn;    // 已应用的日志序号
+    private volatile long leaderLsn;     // 主节点最近告知的已落盘日志序号
+    private volatile long delayMillis;   // 最近应用的批次的复制延迟
+    private volatile long lastContact;   // 最近收到主节点消息的时间
+    private volatile boolean connected;
+    private final AtomicLong snapshotsLoaded = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    /**
+     * @param dao 接收复制数据的DAO（不应启用持久化，也不应在本地修改）
+     * @param host 主节点地址
+     * @param port 主节点的复制端口
+     */
+    public ReplicationFollower(ProductDao dao, String host, int port) {
+        this.dao = dao;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 启动复制线程
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    /**
+     * 落后主节点的日志条数
+     */
+    public long getLagRecords() {
+        return Math.max(0, leaderLsn - appliedLsn);
+    }
+
+    /**
+     * 复制延迟（秒）
+     */
+    public double getDelaySeconds() {
+        return getLagRecords() == 0 ? 0 : delayMillis / 1000.0;
+    }
+
+    /**
+     * 距最近一次收到主节点消息的秒数（主节点空闲时每秒发送心跳，持续增大说明连接有问题）
+     */
+    public double getSecondsSinceContact() {
+        return lastContact == 0 ? -1 : (System.currentTimeMillis() - lastContact) / 1000.0;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 是否已从主节点同步过数据
+     */
+    public boolean isSynchronized() {
+        return leaderId != 0;
+    }
+
+    public long getSnapshotsLoaded() {
+        return snapshotsLoaded.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(new InetSocketAddress(host, port), READ_TIMEOUT_MILLIS);
+                s.setSoTimeout(READ_TIMEOUT_MILLIS);
+                s.setTcpNoDelay(true);
+                connected = true;
+                replicate(s);
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    System.err.println("复制连接中断: " + e.getMessage() + "，" + RECONNECT_MILLIS + "毫秒后重连");
+                }
+            } finally {
+                connected = false;
+            }
+            if (closed) {
+                return;
+            }
+            reconnects.incrementAndGet();
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 发送握手，然后逐条处理主节点的消息直到连接断开
+     */
+    private void replicate(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeInt(ReplicationLeader.MAGIC);
+        out.writeLong(leaderId);
+        out.writeLong(appliedLsn);
+        out.flush();
+        byte[] frames = new byte[1 << 16];
+        while (!closed) {
+            byte type = in.readByte();
+            lastContact = System.currentTimeMillis();
+            switch (type) {
+                case ReplicationLeader.SNAPSHOT: {
+                    long id = in.readLong();
+                    long snapshotLsn = in.readLong();
+                    List<Product> products = ProductJournal.readSnapshot(in);
+                    if (products == null) {
+                        throw new IOException("快照校验失败");
+                    }
+                    dao.loadReplicatedSnapshot(products);
+                    leaderId = id;
+                    appliedLsn = snapshotLsn;
+                    leaderLsn = snapshotLsn;
+                    snapshotsLoaded.incrementAndGet();
+                    System.out.println("已从主节点加载快照: " + products.size() + " 个商品，日志序号: " + snapshotLsn);
+                    break;
+                }
+                case ReplicationLeader.BATCH: {
+                    long time = in.readLong();
+                    long lastLsn = in.readLong();
+                    int length = in.readInt();
+                    if (frames.length < length) {
+                        frames = new byte[Math.max(length, frames.length * 2)];
+                    }
+                    in.readFully(frames, 0, length);
+                    // 快照之后的第一批可能包含快照已覆盖的记录
+                    List<JournalRecord> records = new ArrayList<>();
+                    for (JournalRecord record : ProductJournal.decodeFrames(frames, length)) {
+                        if (record.lsn > appliedLsn) {
+                            records.add(record);
+                        }
+                    }
+                    dao.applyReplicated(records);
+                    appliedLsn = Math.max(appliedLsn, lastLsn);
+                    leaderLsn = Math.max(leaderLsn, lastLsn);
+                    delayMillis = Math.max(0, System.currentTimeMillis() - time);
+                    break;
+                }
+                case ReplicationLeader.HEARTBEAT:
+                    in.readLong();
+                    leaderLsn = in.readLong();
+                    break;
+                default:
+                    throw new IOException("未知的复制消息类型: " + type);
+            }
+            out.writeLong(appliedLsn);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package dao;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 复制主节点
+ * 把落盘后的日志批次按日志序号顺序通过TCP发送给副本（每个副本一个发送线程），副本重放后提供只读查询。
+ *
+ * 协议（DataOutputStream 格式）：
+ *   副本连接后发送  [MAGIC][主节点标识][已应用的日志序号]
+ *   主节点发送      'S' [主节点标识][快照起始日志序号][快照内容]   副本用快照替换全部商品
+ *                   'B' [落盘时间][最后的日志序号][长度][日志帧]   一批日志，格式与日志段文件相同
+ *                   'H' [当前时间][已落盘的日志序号]              没有新日志时每秒一次
+ *   副本每处理一条消息回复 [已应用的日志序号]，主节点据此统计副本的延迟。
+ *
+ * 主节点在内存中保留最近 bufferBytes 字节的日志批次。副本请求的位置还在缓冲区内时直接续传；
+ * 首次连接、落后超出缓冲区或主节点标识不同（主节点重启过）时先发送快照，再从快照的日志序号续传。
+ * 只发送已落盘的记录，副本不会领先于主节点重启后恢复的数据。
+ */
+public class ReplicationLeader implements ProductJournal.BatchListener, Closeable {
+    static final int MAGIC = 0x5245504C;  // "REPL"
+    static final byte SNAPSHOT = 'S';
+    static final byte BATCH = 'B';
+    static final byte HEARTBEAT = 'H';
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    private final ProductDao dao;
+    private final ProductJournal journal;
+    private final int port;
+    private final long bufferBytes;
+    private final long leaderId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);  // 每次启动不同
+
+    // 最近的日志批次，由 this 保护
+    private final ArrayDeque<Batch> batches = new ArrayDeque<>();
+    private long bufferedBytes;
+    private long startLsn;  // 缓冲区中最早的日志序号
+
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+    private final AtomicInteger senderCount = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * @param dao 商品DAO（需已启用持久化）
+     * @param journal dao使用的日志
+     * @param port 复制端口
+     * @param bufferBytes 内存中保留的日志批次字节数
+     */
+    public ReplicationLeader(ProductDao dao, ProductJournal journal, int port, long bufferBytes) {
+        this.dao = dao;
+        this.journal = journal;
+        this.port = port;
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * 开始记录日志批次并监听复制端口
+     */
+    public void start() throws IOException {
+        synchronized (this) {
+            startLsn = journal.getDurableLsn() + 1;
+        }
+        journal.setBatchListener(this);
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::acceptLoop, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("复制主节点已启动，端口: " + getPort());
+    }
+
+    /**
+     * 实际监听的端口（配置为0时由系统分配）
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    @Override
+    public synchronized void batchWritten(byte[] frames, long lastLsn) {
+        batches.addLast(new Batch(frames, lastLsn, System.currentTimeMillis()));
+        bufferedBytes += frames.length;
+        while (bufferedBytes > bufferBytes && batches.size() > 1) {
+            Batch evicted = batches.removeFirst();
+            bufferedBytes -= evicted.frames.length;
+            startLsn = evicted.lastLsn + 1;
+        }
+        notifyAll();
+    }
+
+    /**
+     * 副本数
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * 最慢的副本落后的日志条数（按副本回复的已应用日志序号计算）
+     */
+    public long getMaxFollowerLag() {
+        long durable = journal.getDurableLsn();
+        long lag = 0;
+        for (Follower follower : followers) {
+            lag = Math.max(lag, durable - follower.appliedLsn);
+        }
+        return lag;
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public long getSnapshotsSent() {
+        return snapshotsSent.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        journal.setBatchListener(null);
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Follower follower : followers) {
+            follower.socket.close();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + senderCount.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("复制端口接受连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 向一个副本发送快照和日志，直到连接断开
+     */
+    private void serve(Socket socket) {
+        Follower follower = new Follower(socket);
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            long followerLeaderId = in.readLong();
+            long position = in.readLong();
+            follower.appliedLsn = position;
+            followers.add(follower);
+            System.out.println("副本已连接: " + s.getRemoteSocketAddress() + "，日志序号: " + position);
+
+            // 副本来自另一次启动的主节点，或者比主节点还新（主节点的数据被替换过）时从快照开始
+            boolean needSnapshot = followerLeaderId != leaderId || position > journal.getLastAppendedLsn();
+            while (!closed) {
+                List<Batch> pending = needSnapshot ? null : awaitBatches(position);
+                if (pending == null) {
+                    long snapshotLsn = dao.prepareReplicationSnapshot();
+                    out.writeByte(SNAPSHOT);
+                    out.writeLong(leaderId);
+                    out.writeLong(snapshotLsn);
+                    dao.writeReplicationSnapshot(out, snapshotLsn);
+                    position = snapshotLsn;
+                    needSnapshot = false;
+                    snapshotsSent.incrementAndGet();
+                } else if (pending.isEmpty()) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(System.currentTimeMillis());
+                    out.writeLong(journal.getDurableLsn());
+                } else {
+                    for (Batch batch : pending) {
+                        out.writeByte(BATCH);
+                        out.writeLong(batch.time);
+                        out.writeLong(batch.lastLsn);
+                        out.writeInt(batch.frames.length);
+                        out.write(batch.frames);
+                    }
+                    position = pending.get(pending.size() - 1).lastLsn;
+                }
+                out.flush();
+                // 读取副本回复的进度（不阻塞）
+                while (in.available() >= 8) {
+                    follower.appliedLsn = in.readLong();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                System.out.println("副本已断开: " + socket.getRemoteSocketAddress() + "（" + e.getMessage() + "）");
+            }
+        } finally {
+            followers.remove(follower);
+        }
+    }
+
+    /**
+     * 等待日志序号 position 之后的批次，最多等待一个心跳间隔
+     * @return 批次列表（超时为空列表），position 之后的记录已不在缓冲区中时返回null
+     */
+    private synchronized List<Batch> awaitBatches(long position) {
+        long deadline = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+        while (true) {
+            if (position + 1 < startLsn) {
+                return null;
+            }
+            List<Batch> result = new ArrayList<>();
+            for (Iterator<Batch> it = batches.descendingIterator(); it.hasNext(); ) {
+                Batch batch = it.next();
+                if (batch.lastLsn <= position) {
+                    break;
+                }
+                result.add(batch);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (!result.isEmpty() || remaining <= 0 || closed) {
+                Collections.reverse(result);
+                return result;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * 一个落盘的日志批次
+     */
+    private static final class Batch {
+        final byte[] frames;
+        final long lastLsn;
+        final long time;  // 落盘时间
+
+        Batch(byte[] frames, long lastLsn, long time) {
+            this.frames = frames;
+            this.lastLsn = lastLsn;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 已连接的副本
+     */
+    private static final class Follower {
+        final Socket socket;
+        volatile long appliedLsn;
+
+        Follower(Socket socket) {
+            this.socket = socket;
+        }
+    }
+}
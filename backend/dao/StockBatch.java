@@ -0,0 +1,107 @@
+package dao;
+
+import java.util.*;
+
+/**
+ * 批量入库/出库
+ * 按顺序添加若干行（商品ID + 库存增量），交给 ProductDao.applyStockBatch 执行：
+ * 所有行都能执行时一起生效，任何一行失败时全部不执行。执行后可以查询每一行的结果。
+ */
+public class StockBatch {
+
+    /**
+     * 单行的执行结果
+     */
+    public enum Status {
+        OK("成功"),
+        INVALID_AMOUNT("数量必须为正数"),
+        NOT_FOUND("商品不存在"),
+        INSUFFICIENT_STOCK("库存不足"),
+        OVERFLOW("库存数量超出上限"),
+        ABORTED("未执行（批次中其他行失败）");
+
+        private final String message;
+
+        Status(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<Integer> deltas = new ArrayList<>();
+    private Status[] statuses;
+    private int[] quantities;
+    private boolean applied;
+
+    /**
+     * 添加入库行
+     */
+    public StockBatch stockIn(String id, int amount) {
+        return add(id, amount > 0 ? amount : 0);
+    }
+
+    /**
+     * 添加出库行
+     */
+    public StockBatch stockOut(String id, int amount) {
+        return add(id, amount > 0 ? -amount : 0);
+    }
+
+    private StockBatch add(String id, int delta) {
+        ids.add(id);
+        deltas.add(delta);
+        return this;
+    }
+
+    /**
+     * 行数
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    public String getId(int line) {
+        return ids.get(line);
+    }
+
+    /**
+     * 库存增量（入库为正，出库为负，数量无效时为0）
+     */
+    public int getDelta(int line) {
+        return deltas.get(line);
+    }
+
+    /**
+     * 整个批次是否已生效
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+
+    /**
+     * 某一行的执行结果
+     */
+    public Status getStatus(int line) {
+        return statuses[line];
+    }
+
+    /**
+     * 执行该行之后的库存数量（批次生效时有效）
+     */
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    /**
+     * 记录执行结果（由 ProductDao 调用）
+     */
+    void complete(Status[] statuses, int[] quantities, boolean applied) {
+        this.statuses = statuses;
+        this.quantities = quantities;
+        this.applied = applied;
+    }
+}
@@ -1,22 +1,37 @@
 package model;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 /**
  * 商品实体类
  * 表示库存系统中的商品信息
  */
 public class Product {
-    private String id;          // 商品ID
-    private String name;        // 商品名称
-    private double price;       // 商品价格
-    private int quantity;       // 商品数量
-    private String category;    // 商品类别
+    // 库存状态通过CAS更新，多个请求线程并发入库/出库时不会丢失更新
+    private static final AtomicLongFieldUpdater<Product> STOCK_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Product.class, "stock");
+
+    // 库存状态各位的含义：低32位为库存数量，32~59位为库存版本号，60位为锁定标记，61位为删除标记
+    private static final int VERSION_MASK = 0x0FFFFFFF;
+    private static final long LOCKED = 1L << 60;
+    private static final long RETIRED = 1L << 61;
+
+    /** 库存操作失败时的返回值 */
+    public static final long STOCK_UNCHANGED = -1L;
+
+    private volatile String id;          // 商品ID
+    private volatile String name;        // 商品名称
+    private volatile double price;       // 商品价格
+    private volatile long stock;         // 库存状态：库存数量、库存版本号和锁定/删除标记
+    private volatile String category;    // 商品类别
+    private volatile long incarnation;   // 持久化模式下为创建该商品的日志序号，用于区分删除后重建的同ID商品
 
     // 构造函数
     public Product(String id, String name, double price, int quantity, String category) {
         this.id = id;
         this.name = name;
         this.price = price;
-        this.quantity = quantity;
+        this.stock = stockState(quantity, 0);
         this.category = category;
     }
 
@@ -46,11 +61,17 @@ public class Product {
     }
 
     public int getQuantity() {
-        return quantity;
+        return quantityOf(stock);
     }
 
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        while (true) {
+            long current = stock;
+            long next = stockState(quantity, nextVersion(versionOf(current))) | (current & (LOCKED | RETIRED));
+            if (STOCK_UPDATER.compareAndSet(this, current, next)) {
+                return;
+            }
+        }
     }
 
     public String getCategory() {
@@ -61,27 +82,137 @@ public class Product {
         this.category = category;
     }
 
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public void setIncarnation(long incarnation) {
+        this.incarnation = incarnation;
+    }
+
     /**
-     * 增加库存数量
-     * @param amount 增加的数量
+     * 获取库存状态（数量和版本号打包在一个long中，可用 quantityOf/versionOf 拆分）
+     */
+    public long getStockState() {
+        return stock;
+    }
+
+    /**
+     * CAS更新库存状态
+     */
+    public boolean compareAndSetStockState(long expect, long update) {
+        return STOCK_UPDATER.compareAndSet(this, expect, update);
+    }
+
+    /**
+     * 直接恢复库存数量和版本号（仅用于从快照或日志恢复数据）
+     */
+    public void restoreStock(int quantity, int version) {
+        this.stock = stockState(quantity, version);
+    }
+
+    /**
+     * 锁定库存状态，锁定期间入库/出库会等待
+     * 修改价格和类别时使用，保证每次库存变化都能对应到确定的价格和类别
+     * @return 锁定前的库存状态
+     */
+    public long lockStock() {
+        while (true) {
+            long current = stock;
+            if (isLocked(current)) {
+                Thread.onSpinWait();
+            } else if (STOCK_UPDATER.compareAndSet(this, current, current | LOCKED)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 锁定库存状态（当前状态必须仍为 expect 且未锁定），锁定期间其他修改等待，
+     * 由锁定方用 compareAndSetStockState 把锁定后的状态替换为最终状态
+     * @return 锁定后的状态，状态已变化或已被锁定时返回 STOCK_UNCHANGED
+     */
+    public long tryLockStock(long expect) {
+        long locked = expect | LOCKED;
+        return !isLocked(expect) && STOCK_UPDATER.compareAndSet(this, expect, locked) ? locked : STOCK_UNCHANGED;
+    }
+
+    /**
+     * 解除锁定并递增库存版本号
+     */
+    public void unlockStock() {
+        while (true) {
+            long current = stock;
+            long next = stockState(quantityOf(current), nextVersion(versionOf(current))) | (current & RETIRED);
+            if (STOCK_UPDATER.compareAndSet(this, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 设置库存数量，解除锁定并递增库存版本号（批量入库/出库在锁定期间计算出最终数量后调用）
+     * @return 解锁后的库存状态
+     */
+    public long unlockStock(int quantity) {
+        while (true) {
+            long current = stock;
+            long next = unlockedState(current, quantity);
+            if (STOCK_UPDATER.compareAndSet(this, current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 标记商品已删除，之后的入库/出库都会失败
+     * @return 删除时的库存状态
      */
-    public void addQuantity(int amount) {
-        if (amount > 0) {
-            this.quantity += amount;
+    public long retire() {
+        while (true) {
+            long current = stock;
+            if (isLocked(current)) {
+                Thread.onSpinWait();
+            } else if (STOCK_UPDATER.compareAndSet(this, current, current | RETIRED)) {
+                return current;
+            }
         }
     }
 
     /**
-     * 减少库存数量
+     * 增加库存数量（CAS无锁更新）
+     * @param amount 增加的数量
+     * @return 是否成功增加（数量非正、结果溢出或商品已删除时返回false）
+     */
+    public boolean addQuantity(int amount) {
+        return amount > 0 && changeQuantity(amount) != STOCK_UNCHANGED;
+    }
+
+    /**
+     * 减少库存数量（CAS无锁检查并扣减，库存不足时不会扣成负数）
      * @param amount 减少的数量
      * @return 是否成功减少
      */
     public boolean reduceQuantity(int amount) {
-        if (amount > 0 && this.quantity >= amount) {
-            this.quantity -= amount;
-            return true;
+        return amount > 0 && changeQuantity(-amount) != STOCK_UNCHANGED;
+    }
+
+    /**
+     * 按增量修改库存数量
+     * @return 更新后的库存状态，库存不足、溢出或商品已删除时返回 STOCK_UNCHANGED
+     */
+    private long changeQuantity(int delta) {
+        while (true) {
+            long current = stock;
+            if (isLocked(current)) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long next = applyDelta(current, delta);
+            if (next == STOCK_UNCHANGED || STOCK_UPDATER.compareAndSet(this, current, next)) {
+                return next;
+            }
         }
-        return false;
     }
 
     /**
@@ -89,13 +220,74 @@ public class Product {
      * @return 总价值
      */
     public double getTotalValue() {
-        return price * quantity;
+        return price * getQuantity();
+    }
+
+    /**
+     * 从库存状态中取出库存数量
+     */
+    public static int quantityOf(long stockState) {
+        return (int) stockState;
+    }
+
+    /**
+     * 从库存状态中取出库存版本号
+     */
+    public static int versionOf(long stockState) {
+        return (int) (stockState >>> 32) & VERSION_MASK;
+    }
+
+    /**
+     * 锁定状态 unlockStock(quantity) 之后的状态（批量入库/出库在解除锁定之前记录日志时使用）
+     */
+    public static long unlockedState(long lockedState, int quantity) {
+        return stockState(quantity, nextVersion(versionOf(lockedState))) | (lockedState & RETIRED);
+    }
+
+    public static boolean isLocked(long stockState) {
+        return (stockState & LOCKED) != 0;
+    }
+
+    public static boolean isRetired(long stockState) {
+        return (stockState & RETIRED) != 0;
+    }
+
+    /**
+     * 计算库存增减后的状态（版本号加1）
+     * @param current 当前库存状态（未锁定）
+     * @param delta 数量增量
+     * @return 新的库存状态，库存不足、溢出或商品已删除时返回 STOCK_UNCHANGED
+     */
+    public static long applyDelta(long current, int delta) {
+        if (isRetired(current)) {
+            return STOCK_UNCHANGED;
+        }
+        long quantity = (long) quantityOf(current) + delta;
+        if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+            return STOCK_UNCHANGED;
+        }
+        return stockState((int) quantity, nextVersion(versionOf(current)));
+    }
+
+    /**
+     * 判断库存版本号 candidate 是否比 current 更新（按28位序号回绕比较）
+     */
+    public static boolean isNewerVersion(int candidate, int current) {
+        int distance = (candidate - current) & VERSION_MASK;
+        return distance != 0 && distance < (VERSION_MASK + 1) / 2;
+    }
+
+    private static long stockState(int quantity, int version) {
+        return ((long) (version & VERSION_MASK) << 32) | (quantity & 0xFFFFFFFFL);
+    }
+
+    private static int nextVersion(int version) {
+        return (version + 1) & VERSION_MASK;
     }
 
     @Override
     public String toString() {
         return String.format("商品ID: %s | 名称: %s | 价格: ¥%.2f | 数量: %d | 类别: %s | 总价值: ¥%.2f",
-                id, name, price, quantity, category, getTotalValue());
+                id, name, price, getQuantity(), category, getTotalValue());
     }
 }
-
@@ -3,23 +3,45 @@ package service;
 import dao.UserDao;
 import model.User;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 认证业务逻辑层
  * 处理用户登录、token生成和验证等业务逻辑
+ *
+ * 两种token模式：
+ *   会话模式（默认）  token为随机字符串，会话保存在本进程内存中
+ *   签名模式          token携带用户名、角色和过期时间并用HMAC签名，验证不依赖进程内状态，
+ *                     多个实例使用相同密钥即可共同验证；登出的token记入吊销列表直到过期
  */
 public class AuthService {
     private UserDao userDao;
-    private Map<String, String> tokens;  // token -> 用户名
-    private Map<String, Long> tokenExpiry;  // token -> 过期时间
+    // 会话模式：token -> 会话；签名模式：已登出（吊销）的token。过期的条目由后台时间轮清除
+    private final SessionStore sessions;
+    private final TokenSigner signer;  // 为null时使用会话模式
+    private final long tokenExpiryTime;
     private static final long TOKEN_EXPIRY_TIME = 24 * 60 * 60 * 1000; // 24小时
     private static final String TOKEN_PREFIX = "token_";
 
     public AuthService(UserDao userDao) {
+        this(userDao, TOKEN_EXPIRY_TIME);
+    }
+
+    /**
+     * @param tokenExpiryTime token有效期（毫秒）
+     */
+    public AuthService(UserDao userDao, long tokenExpiryTime) {
+        this(userDao, tokenExpiryTime, null);
+    }
+
+    /**
+     * @param tokenExpiryTime token有效期（毫秒）
+     * @param signingKey 签名密钥，不为null时使用签名模式
+     */
+    public AuthService(UserDao userDao, long tokenExpiryTime, byte[] signingKey) {
         this.userDao = userDao;
-        this.tokens = new ConcurrentHashMap<>();
-        this.tokenExpiry = new ConcurrentHashMap<>();
+        this.tokenExpiryTime = tokenExpiryTime;
+        this.signer = signingKey != null ? new TokenSigner(signingKey) : null;
+        this.sessions = new SessionStore(tokenExpiryTime);
     }
 
     /**
@@ -31,10 +53,13 @@ public class AuthService {
     public String login(String username, String password) {
         User user = userDao.findUserByUsername(username);
         if (user != null && user.getPassword().equals(password)) {
+            long expiresAt = System.currentTimeMillis() + tokenExpiryTime;
+            if (signer != null) {
+                return signer.issue(user.getUsername(), user.getRole(), expiresAt);
+            }
             // 生成token
             String token = generateToken(username);
-            tokens.put(token, username);
-            tokenExpiry.put(token, System.currentTimeMillis() + TOKEN_EXPIRY_TIME);
+            sessions.put(token, username, expiresAt);
             return token;
         }
         return null;
@@ -46,20 +71,21 @@ public class AuthService {
      * @return 如果token有效返回用户名，否则返回null
      */
     public String validateToken(String token) {
-        if (token == null || !tokens.containsKey(token)) {
+        if (token == null) {
             return null;
         }
-        
-        // 检查token是否过期
-        Long expiry = tokenExpiry.get(token);
-        if (expiry == null || System.currentTimeMillis() > expiry) {
-            // token已过期，清除
-            tokens.remove(token);
-            tokenExpiry.remove(token);
-            return null;
+        long now = System.currentTimeMillis();
+        if (signer != null) {
+            String username = signer.verify(token, now);
+            // 吊销列表为空时（通常如此）不需要查找
+            if (username != null && !sessions.isEmpty() && sessions.get(revocationKey(token), now) != null) {
+                return null;
+            }
+            return username;
         }
-        
-        return tokens.get(token);
+        // 一次查找，已过期的token会被清除
+        SessionStore.Session session = sessions.get(token, now);
+        return session != null ? session.username : null;
     }
 
     /**
@@ -67,8 +93,65 @@ public class AuthService {
      * @param token token字符串
      */
     public void logout(String token) {
-        tokens.remove(token);
-        tokenExpiry.remove(token);
+        if (signer != null) {
+            // 签名的token无法收回，记入吊销列表，保留到token过期为止
+            long now = System.currentTimeMillis();
+            String username = signer.verify(token, now);
+            if (username != null) {
+                sessions.put(revocationKey(token), username, now + tokenExpiryTime);
+            }
+            return;
+        }
+        sessions.remove(token);
+    }
+
+    /**
+     * 吊销列表的key：签名部分的base64编码不唯一，只使用受签名保护的内容部分
+     */
+    private static String revocationKey(String token) {
+        return token.substring(0, token.indexOf('.'));
+    }
+
+    /**
+     * 是否使用签名模式
+     */
+    public boolean isSignedTokens() {
+        return signer != null;
+    }
+
+    /**
+     * 当前会话数（包括已过期但尚未被清除的会话；签名模式下为吊销列表的长度）
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 后台时间轮清除的过期会话数
+     */
+    public long getExpiredSessionCount() {
+        return sessions.getExpiredCount();
+    }
+
+    /**
+     * 验证时发现已过期而清除的会话数
+     */
+    public long getExpiredOnAccessCount() {
+        return sessions.getExpiredOnAccessCount();
+    }
+
+    /**
+     * 登出的会话数
+     */
+    public long getLoggedOutCount() {
+        return sessions.getLoggedOutCount();
+    }
+
+    /**
+     * 停止后台清理线程
+     */
+    public void close() {
+        sessions.close();
     }
 
     /**
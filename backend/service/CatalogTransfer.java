@@ -0,0 +1,553 @@
+package service;
+
+import model.Product;
+import util.CsvUtil;
+import util.JsonUtil;
+import util.JsonWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 商品目录的批量导入和导出（CSV / NDJSON）
+ * 导入：读取线程把请求体按约1MB的块（在记录边界处切分）交给解析线程池并行解析，
+ * 再按文件顺序分批写入 ProductDao（同一文件中ID重复时前面的行生效），每批只等待一次日志落盘；
+ * 同时在处理中的块数有上限，内存占用与文件大小无关。
+ * 名称索引在导入结束时（包括出错结束）一次性建立，导入过程中新商品按名称暂时查不到。
+ * 每行的校验规则与 addProduct 相同，失败的行记录行号和原因，不影响其他行。
+ * 导出：按商品ID顺序分页读取并直接写入输出流，不在内存中生成完整的目录。
+ */
+public class CatalogTransfer {
+    /** CSV表头中的列名 */
+    public static final String[] COLUMNS = {"id", "name", "price", "quantity", "category"};
+    /** 返回的失败行明细的最大条数（失败行数不受限制） */
+    public static final int MAX_ERRORS = 1000;
+
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    private static final int BATCH_SIZE = 1000;
+    private static final int EXPORT_PAGE = 1000;
+
+    /**
+     * 导入导出格式
+     */
+    public enum Format {
+        CSV("text/csv"),
+        NDJSON("application/x-ndjson");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * 按格式名或媒体类型识别格式
+         * @return 无法识别时返回null
+         */
+        public static Format of(String value) {
+            if (value == null) {
+                return null;
+            }
+            String lower = value.toLowerCase(Locale.ROOT);
+            if (lower.contains("csv")) {
+                return CSV;
+            }
+            if (lower.contains("ndjson") || lower.contains("jsonl")) {
+                return NDJSON;
+            }
+            return null;
+        }
+    }
+
+    private final ProductService productService;
+    private final int parallelism;
+    private final ExecutorService parsers;
+
+    public CatalogTransfer(ProductService productService) {
+        this(productService, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 解析线程数
+     */
+    public CatalogTransfer(ProductService productService, int parallelism) {
+        this.productService = productService;
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger counter = new AtomicInteger();
+        this.parsers = Executors.newFixedThreadPool(this.parallelism, task -> {
+            Thread thread = new Thread(task, "catalog-parser-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 导入商品
+     * CSV的第一行为表头，至少包含 id 和 name 列（列的顺序不限，多余的列忽略）；
+     * NDJSON每行一个与 POST /api/products 请求体相同的JSON对象。空行忽略。
+     * @param in 输入（读到末尾为止，不关闭）
+     * @param format 格式
+     * @param progress 导入进度，导入过程中随时更新
+     * @throws IllegalArgumentException 表头无效或单条记录过大（之前的块已经导入）
+     * @throws IllegalStateException 解析线程异常或导入线程被中断（之前的块已经导入）
+     */
+    public void importCatalog(InputStream in, Format format, ImportProgress progress) throws IOException {
+        boolean csv = format == Format.CSV;
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+        int window = parallelism * 2;  // 同时在解析中或等待写入的块数
+        int[] columns = null;
+        long row = 1;  // 下一块第一条记录的行号
+        byte[] buffer = new byte[CHUNK_BYTES];
+        int length = 0;
+        boolean first = true;
+        boolean eof = false;
+        try {
+            while (!eof) {
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    length += n;
+                    progress.bytesRead += n;
+                    if (length < buffer.length) {
+                        continue;
+                    }
+                }
+
+                // 找到最后一个完整记录的结尾，之后的部分留到下一块
+                long[] records = new long[1];
+                int boundary = lastRecordEnd(buffer, length, csv, records);
+                if (eof && boundary < length) {
+                    boundary = length;
+                    records[0]++;
+                }
+                if (boundary <= 0 && !eof) {
+                    if (buffer.length >= MAX_RECORD_BYTES) {
+                        throw new IllegalArgumentException("第" + row + "行超过" + (MAX_RECORD_BYTES >> 20) + "MB");
+                    }
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+
+                int from = 0;
+                if (first) {
+                    first = false;
+                    from = bomLength(buffer, boundary);
+                    if (csv && records[0] > 0) {
+                        List<String> header = new ArrayList<>();
+                        from = CsvUtil.parseRecord(buffer, from, boundary, header);
+                        columns = mapColumns(header);
+                        records[0]--;
+                        row++;
+                    } else if (csv) {
+                        throw new IllegalArgumentException("缺少CSV表头");
+                    }
+                }
+
+                byte[] chunk = buffer;
+                int chunkFrom = from;
+                int chunkTo = boundary;
+                long chunkRow = row;
+                int[] chunkColumns = columns;
+                pending.add(parsers.submit(() -> csv
+                        ? parseCsv(chunk, chunkFrom, chunkTo, chunkRow, chunkColumns)
+                        : parseNdjson(chunk, chunkFrom, chunkTo, chunkRow)));
+                row += records[0];
+
+                // 未处理的部分移到新的缓冲区，旧缓冲区交给解析线程
+                int remaining = length - boundary;
+                buffer = new byte[Math.max(CHUNK_BYTES, remaining * 2)];
+                System.arraycopy(chunk, boundary, buffer, 0, remaining);
+                length = remaining;
+
+                // 按顺序写入已解析完的块；在处理中的块达到上限时等待最早的一块
+                while (!pending.isEmpty() && (pending.size() >= window || pending.peek().isDone())) {
+                    insert(pending.poll(), progress);
+                }
+            }
+            while (!pending.isEmpty()) {
+                insert(pending.poll(), progress);
+            }
+        } finally {
+            for (Future<ParsedChunk> future : pending) {
+                future.cancel(true);
+            }
+            productService.buildDeferredNameIndex();
+            progress.finished = true;
+        }
+    }
+
+    /**
+     * 导出全部商品，按商品ID升序
+     * @param out 输出流（不关闭）
+     * @param format 格式
+     * @return 导出的商品数
+     */
+    public long exportCatalog(OutputStream out, Format format) throws IOException {
+        long count = 0;
+        String after = null;
+        if (format == Format.NDJSON) {
+            JsonWriter writer = new JsonWriter(out, 64 * 1024);
+            while (true) {
+                List<Product> page = productService.getAllProducts(after, EXPORT_PAGE);
+                for (Product product : page) {
+                    writer.product(product).newline();
+                }
+                count += page.size();
+                if (page.size() < EXPORT_PAGE) {
+                    break;
+                }
+                after = page.get(page.size() - 1).getId();
+            }
+            writer.flush();
+            return count;
+        }
+
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        StringBuilder line = new StringBuilder(256);
+        line.append(String.join(",", COLUMNS)).append('\n');
+        buffered.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        while (true) {
+            List<Product> page = productService.getAllProducts(after, EXPORT_PAGE);
+            for (Product product : page) {
+                long stockState = product.getStockState();
+                line.setLength(0);
+                CsvUtil.appendField(line, product.getId()).append(',');
+                CsvUtil.appendField(line, product.getName()).append(',');
+                line.append(formatPrice(product.getPrice())).append(',');
+                line.append(Product.quantityOf(stockState)).append(',');
+                CsvUtil.appendField(line, product.getCategory()).append('\n');
+                buffered.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            count += page.size();
+            if (page.size() < EXPORT_PAGE) {
+                break;
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+        buffered.flush();
+        return count;
+    }
+
+    /**
+     * 写入一个已解析的块（分批添加），更新进度并记录失败的行
+     */
+    private void insert(Future<ParsedChunk> future, ImportProgress progress) {
+        ParsedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("导入被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("解析失败", e.getCause());
+        }
+        List<RowError> errors = chunk.errors;
+        progress.rows += chunk.records;
+        for (int from = 0; from < chunk.products.size(); from += BATCH_SIZE) {
+            List<Product> batch = chunk.products.subList(from, Math.min(from + BATCH_SIZE, chunk.products.size()));
+            String[] results = productService.addProducts(batch, true);
+            int added = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    added++;
+                } else {
+                    errors.add(new RowError(chunk.rows[from + i], batch.get(i).getId(), results[i]));
+                }
+            }
+            progress.imported += added;
+        }
+        errors.sort(Comparator.comparingLong(RowError::getRow));
+        progress.failed += errors.size();
+        for (RowError error : errors) {
+            if (progress.errors.size() >= MAX_ERRORS) {
+                break;
+            }
+            progress.errors.add(error);
+        }
+    }
+
+    /**
+     * 解析CSV块
+     * @param columns 每个列名在记录中的位置（没有该列时为-1）
+     */
+    private static ParsedChunk parseCsv(byte[] data, int from, int to, long firstRow, int[] columns) {
+        ParsedChunk chunk = new ParsedChunk();
+        List<String> fields = new ArrayList<>();
+        long row = firstRow;
+        int position = from;
+        while (position < to) {
+            int end = CsvUtil.recordEnd(data, position, to);
+            if (end < 0) {
+                end = to;
+            }
+            if (!isBlank(data, position, end)) {
+                chunk.records++;
+                String id = null;
+                try {
+                    CsvUtil.parseRecord(data, position, end, fields);
+                    if (fields.size() != columns[COLUMNS.length]) {
+                        throw new IllegalArgumentException("字段数与表头不一致");
+                    }
+                    id = field(fields, columns[0]);
+                    Product product = new Product(id, fields.get(columns[1]),
+                            parsePrice(field(fields, columns[2])), parseQuantity(field(fields, columns[3])),
+                            field(fields, columns[4]));
+                    chunk.add(product, row);
+                } catch (IllegalArgumentException e) {
+                    chunk.error(row, id, e.getMessage());
+                }
+            }
+            row++;
+            position = end;
+        }
+        return chunk;
+    }
+
+    /**
+     * 解析NDJSON块
+     */
+    private static ParsedChunk parseNdjson(byte[] data, int from, int to, long firstRow) {
+        ParsedChunk chunk = new ParsedChunk();
+        long row = firstRow;
+        int position = from;
+        while (position < to) {
+            int end = position;
+            while (end < to && data[end] != '\n') {
+                end++;
+            }
+            if (!isBlank(data, position, end)) {
+                chunk.records++;
+                try {
+                    chunk.add(JsonUtil.fromJson(data, position, end - position, Product.class), row);
+                } catch (IllegalArgumentException e) {
+                    chunk.error(row, null, e.getMessage());
+                }
+            }
+            row++;
+            position = end + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * 按表头确定各列的位置，最后一个元素为表头的列数
+     */
+    private static int[] mapColumns(List<String> header) {
+        int[] columns = new int[COLUMNS.length + 1];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                if (COLUMNS[c].equals(name) && columns[c] < 0) {
+                    columns[c] = i;
+                }
+            }
+        }
+        if (columns[0] < 0 || columns[1] < 0) {
+            throw new IllegalArgumentException("CSV表头必须包含id和name列");
+        }
+        columns[COLUMNS.length] = header.size();
+        return columns;
+    }
+
+    private static String field(List<String> fields, int column) {
+        if (column < 0) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static double parsePrice(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            double price = Double.parseDouble(value);
+            if (Double.isFinite(price)) {
+                return price;
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一报错
+        }
+        throw new IllegalArgumentException("价格格式错误");
+    }
+
+    private static int parseQuantity(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("库存数量格式错误");
+        }
+    }
+
+    /**
+     * 价格按最多两位小数的定点格式输出（与JSON输出一致），其他值使用 Double.toString
+     */
+    private static String formatPrice(double price) {
+        long cents = Math.round(price * 100);
+        if (Math.abs(price) < 1e15 && cents / 100.0 == price) {
+            return BigDecimal.valueOf(cents, 2).stripTrailingZeros().toPlainString();
+        }
+        return Double.toString(price);
+    }
+
+    /**
+     * 找到最后一个完整记录的结尾
+     * @param records 输出完整记录的条数
+     * @return 最后一个完整记录结尾之后的位置，没有完整记录时返回0
+     */
+    private static int lastRecordEnd(byte[] data, int length, boolean csv, long[] records) {
+        int last = 0;
+        if (csv) {
+            int position = 0;
+            while (true) {
+                int end = CsvUtil.recordEnd(data, position, length);
+                if (end < 0) {
+                    break;
+                }
+                records[0]++;
+                last = position = end;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n') {
+                    records[0]++;
+                    last = i + 1;
+                }
+            }
+        }
+        return last;
+    }
+
+    private static int bomLength(byte[] data, int length) {
+        return length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一块解析结果
+     */
+    private static class ParsedChunk {
+        final List<Product> products = new ArrayList<>();
+        long[] rows = new long[256];  // 与 products 对应的行号
+        final List<RowError> errors = new ArrayList<>();
+        long records;  // 非空记录数
+
+        void add(Product product, long row) {
+            if (products.size() == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            }
+            rows[products.size()] = row;
+            products.add(product);
+        }
+
+        void error(long row, String id, String message) {
+            errors.add(new RowError(row, id, message));
+        }
+    }
+
+    /**
+     * 导入失败的行
+     */
+    public static class RowError {
+        private final long row;
+        private final String id;
+        private final String message;
+
+        RowError(long row, String id, String message) {
+            this.row = row;
+            this.id = id;
+            this.message = message;
+        }
+
+        /** 行号（从1开始，CSV的表头为第1行；CSV字段中含换行时按记录计数） */
+        public long getRow() {
+            return row;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * 导入进度，由导入线程更新，其他线程可以随时读取
+     */
+    public static class ImportProgress {
+        private final Format format;
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long bytesRead;
+        private volatile long rows;
+        private volatile long imported;
+        private volatile long failed;
+        private volatile boolean finished;
+        private final List<RowError> errors = new CopyOnWriteArrayList<>();
+
+        public ImportProgress(Format format) {
+            this.format = format;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /** 已处理的非空记录数 */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public long getElapsedMillis() {
+            return System.currentTimeMillis() - startedAt;
+        }
+
+        /** 失败行的明细（按行号排序，最多 MAX_ERRORS 条） */
+        public List<RowError> getErrors() {
+            return errors;
+        }
+    }
+}
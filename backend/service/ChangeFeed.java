@@ -0,0 +1,371 @@
+package service;
+
+import config.ServerExecutors;
+import dao.ProductChangeListener;
+import model.Product;
+import util.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品变更推送
+ * 作为 ProductChangeListener 只记录发生变化的商品ID（同一商品多次变化只记一次），
+ * 后台线程每隔 INTERVAL_MILLIS 收集一次，把这段时间内的变化合并成一批增量推送给所有订阅者。
+ * 增量在序列化时读取商品的当前状态，合并后总是最新值：
+ *   库存变化   {"id":"P001","quantity":12,"version":5}
+ *   新增或修改 另外包含 name、price、category
+ *   删除       {"id":"P001","deleted":true}
+ * version 是商品的库存版本号，客户端可以据此丢弃比已有数据旧的增量。
+ *
+ * 每批增量只序列化一次（连同事件格式），所有订阅者共享同一份数据。订阅者不占用线程，由写线程按需发送
+ * （Java 21+ 使用虚拟线程，一个慢连接阻塞的写操作不影响其他订阅者；低版本为 WRITER_THREADS 个平台线程）。
+ * 背压：订阅者上次还没写完时新的批次先排队，下次一起写出（订阅者很多、写线程忙不过来时自然变成更少、更大的写入）；
+ * 排队超过 MAX_QUEUED_BATCHES 个批次的慢订阅者改为把变化合并到它自己的待发送集合中（同一商品只发最新状态），
+ * 待发送的商品数超过 MAX_PENDING 时丢弃这些增量，改为发送 resync 通知客户端重新加载；
+ * 一次写入超过 WRITE_TIMEOUT_MILLIS 仍未完成的订阅者被移除。
+ * 没有订阅者时监听回调直接返回，不影响修改的性能。
+ */
+public class ChangeFeed implements ProductChangeListener {
+    public static final int INTERVAL_MILLIS = Integer.getInteger("inventory.events.intervalMillis", 100);
+    public static final int MAX_PENDING = Integer.getInteger("inventory.events.maxPending", 10000);
+    public static final int MAX_SUBSCRIBERS = Integer.getInteger("inventory.events.maxSubscribers", 10000);
+    public static final int WRITER_THREADS = Integer.getInteger("inventory.events.writerThreads", 4);
+    public static final int MAX_QUEUED_BATCHES = 20;
+    public static final long HEARTBEAT_MILLIS = 15000;
+    public static final long WRITE_TIMEOUT_MILLIS = 30000;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes();
+    private static final byte[] EVENT_END = "\n\n".getBytes();
+
+    private final ConcurrentHashMap<String, Change> changes = new ConcurrentHashMap<>();  // 上次收集之后变化的商品
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();  // 事件序号
+    private final AtomicLong droppedCount = new AtomicLong();  // 因写入超时被移除的订阅者数
+    private final AtomicLong resyncCount = new AtomicLong();   // 因积压过多发送的 resync 数
+    private ScheduledExecutorService dispatcher;  // 第一次订阅时启动
+    private ExecutorService writers;
+    private long lastHeartbeat;
+
+    /**
+     * 订阅者（一个事件流连接）
+     * 同一订阅者的方法不会被并发调用
+     */
+    public interface Subscriber {
+        /**
+         * 写入若干个完整的事件（text/event-stream 格式）并立即发送，阻塞到写完
+         */
+        void send(List<byte[]> events) throws IOException;
+
+        /**
+         * 订阅已被移除（写入失败，或写入超时后阻塞的写操作返回），在写线程中调用
+         */
+        void close();
+    }
+
+    /**
+     * 添加订阅者
+     * @return 订阅者已达上限时返回false
+     */
+    public boolean subscribe(Subscriber subscriber) {
+        if (subscriptions.size() >= MAX_SUBSCRIBERS) {
+            return false;
+        }
+        start();
+        subscriptions.add(new Subscription(subscriber));
+        return true;
+    }
+
+    /**
+     * 订阅者数量
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getResyncCount() {
+        return resyncCount.get();
+    }
+
+    private synchronized void start() {
+        if (dispatcher != null) {
+            return;
+        }
+        writers = ServerExecutors.virtualThreads();
+        if (writers == null) {
+            AtomicInteger counter = new AtomicInteger();
+            writers = Executors.newFixedThreadPool(WRITER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "change-feed-writer-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastHeartbeat = System.currentTimeMillis();
+        dispatcher.scheduleWithFixedDelay(this::dispatch, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void productAdded(Product product, int quantity) {
+        record(product, true);
+    }
+
+    @Override
+    public void productRemoved(Product product, int quantity) {
+        record(product, false);
+    }
+
+    @Override
+    public void productUpdated(Product product, String oldName, double oldPrice, String oldCategory, int quantity) {
+        record(product, true);
+    }
+
+    @Override
+    public void stockChanged(Product product, double price, String category, int delta, long stockState) {
+        record(product, false);
+    }
+
+    private void record(Product product, boolean fields) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        Change change = changes.get(product.getId());
+        // 同一商品在一个周期内反复变化时不重复分配
+        if (change == null || change.product != product || (fields && !change.fields)) {
+            changes.merge(product.getId(), new Change(product, fields), Change::merge);
+        }
+    }
+
+    /**
+     * 收集这一周期的变化并分发给订阅者（后台线程）
+     */
+    private void dispatch() {
+        try {
+            List<Change> batch = new ArrayList<>();
+            // 按值移除：取出之后 record 合并进来的新变化留在表中，下一周期发送
+            for (Map.Entry<String, Change> entry : changes.entrySet()) {
+                if (changes.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            long now = System.currentTimeMillis();
+            boolean heartbeat = now - lastHeartbeat >= HEARTBEAT_MILLIS;
+            if (heartbeat) {
+                lastHeartbeat = now;
+            }
+            if (batch.isEmpty() && !heartbeat) {
+                return;
+            }
+            Batch shared = batch.isEmpty() ? null : new Batch(batch, encode(batch, sequence.incrementAndGet()));
+            for (Subscription subscription : subscriptions) {
+                long started = subscription.writeStarted;
+                if (started != 0 && now - started > WRITE_TIMEOUT_MILLIS) {
+                    // 写操作阻塞在这个连接上，不再向它分发；连接由写线程返回后关闭（要等TCP超时）
+                    if (subscriptions.remove(subscription)) {
+                        droppedCount.incrementAndGet();
+                    }
+                    continue;
+                }
+                if (subscription.offer(shared, heartbeat)) {
+                    writers.execute(subscription::flush);
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 把一批变化序列化为一个 changes 事件（text/event-stream 格式，data为增量数组）
+     */
+    private static byte[] encode(Collection<Change> batch, long id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(batch.size() * 48 + 32);
+        try {
+            JsonWriter writer = new JsonWriter(out, 4096);
+            out.write(("event: changes\nid: " + id + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            writer.beginArray();
+            boolean first = true;
+            for (Change change : batch) {
+                if (!first) {
+                    writer.comma();
+                }
+                first = false;
+                Product product = change.product;
+                long stockState = product.getStockState();
+                writer.beginObject().name("id").string(product.getId());
+                if (Product.isRetired(stockState)) {
+                    writer.comma().name("deleted").bool(true);
+                } else {
+                    writer.comma().name("quantity").number(Product.quantityOf(stockState));
+                    writer.comma().name("version").number(Product.versionOf(stockState));
+                    if (change.fields) {
+                        writer.comma().name("name").string(product.getName());
+                        writer.comma().name("price").number(product.getPrice());
+                        writer.comma().name("category").string(product.getCategory());
+                    }
+                }
+                writer.endObject();
+            }
+            writer.endArray().flush();
+            out.write(EVENT_END);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 一个商品的变化
+     */
+    private static final class Change {
+        final Product product;
+        final boolean fields;  // 名称、价格或类别是否变化（新增也算）
+
+        Change(Product product, boolean fields) {
+            this.product = product;
+            this.fields = fields;
+        }
+
+        /**
+         * 合并同一ID的两次变化（删除后重新添加时以新商品为准）
+         */
+        static Change merge(Change older, Change newer) {
+            if (newer.fields || !older.fields) {
+                return newer;
+            }
+            return new Change(newer.product, true);
+        }
+    }
+
+    /**
+     * 一个收集周期的变化及其序列化结果（所有订阅者共享）
+     */
+    private static final class Batch {
+        final List<Change> changes;
+        final byte[] event;
+
+        Batch(List<Change> changes, byte[] event) {
+            this.changes = changes;
+            this.event = event;
+        }
+    }
+
+    /**
+     * 一个订阅者的发送状态
+     * 写得及时的订阅者只排队共享的批次，写任务一次写出排队的所有批次；
+     * 排队超过 MAX_QUEUED_BATCHES 个批次时把它们合并到该订阅者自己的 merged 中，之后的批次也合并进去，
+     * 下次写入时按合并后的变化重新序列化。
+     */
+    private final class Subscription {
+        final Subscriber subscriber;
+        // 以下字段由 this 保护
+        boolean writing;  // 已提交写任务（排队或正在写）
+        final ArrayDeque<Batch> queued = new ArrayDeque<>();
+        final Map<String, Change> merged = new HashMap<>();
+        boolean resync;
+        boolean heartbeat;
+        volatile long writeStarted;  // 正在写入时为开始时间，否则为0
+
+        Subscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * 分发一个批次
+         * @param batch 批次（没有变化时为null）
+         * @param heartbeat 是否需要心跳
+         * @return 需要提交写任务时返回true
+         */
+        synchronized boolean offer(Batch batch, boolean heartbeat) {
+            if (batch != null && !resync) {
+                if (!merged.isEmpty()) {
+                    merge(batch);
+                } else {
+                    queued.add(batch);
+                    if (queued.size() > MAX_QUEUED_BATCHES) {
+                        for (Batch older : queued) {
+                            merge(older);
+                        }
+                        queued.clear();
+                    }
+                }
+                if (merged.size() > MAX_PENDING) {
+                    merged.clear();
+                    resync = true;
+                    resyncCount.incrementAndGet();
+                }
+            }
+            this.heartbeat |= heartbeat;
+            if (writing) {
+                return false;
+            }
+            writing = true;
+            return true;
+        }
+
+        private void merge(Batch batch) {
+            for (Change change : batch.changes) {
+                merged.merge(change.product.getId(), change, Change::merge);
+            }
+        }
+
+        /**
+         * 写出所有待发送的事件（写线程）
+         */
+        void flush() {
+            try {
+                while (true) {
+                    List<byte[]> events = new ArrayList<>();
+                    List<Change> backlog = null;
+                    synchronized (this) {
+                        if (resync) {
+                            resync = false;
+                            queued.clear();
+                            events.add(("event: resync\nid: " + sequence.incrementAndGet() + "\ndata: {}\n\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+                        } else if (!merged.isEmpty()) {
+                            backlog = new ArrayList<>(merged.values());
+                            merged.clear();
+                        } else if (!queued.isEmpty()) {
+                            for (Batch batch : queued) {
+                                events.add(batch.event);
+                            }
+                            queued.clear();
+                        } else if (heartbeat) {
+                            events.add(HEARTBEAT);
+                        } else {
+                            writing = false;
+                            return;
+                        }
+                        heartbeat = false;  // 发送了事件就不需要心跳
+                    }
+                    if (backlog != null) {
+                        events.add(encode(backlog, sequence.incrementAndGet()));
+                    }
+                    writeStarted = System.currentTimeMillis();
+                    subscriber.send(events);
+                    writeStarted = 0;
+                    if (!subscriptions.contains(this)) {
+                        subscriber.close();
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // 客户端已断开
+                subscriptions.remove(this);
+                subscriber.close();
+            }
+        }
+    }
+}
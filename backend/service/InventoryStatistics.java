@@ -0,0 +1,131 @@
+package service;
+
+import dao.ProductChangeListener;
+import model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 库存统计聚合
+ * 监听商品数据的每一次变更，增量维护商品总数、库存总价值（整数分）以及每个类别的商品数和价值，
+ * 查询统计信息时不需要遍历商品。
+ */
+public class InventoryStatistics implements ProductChangeListener {
+    private final LongAdder productCount = new LongAdder();
+    private final LongAdder totalValueCents = new LongAdder();
+    private final Map<String, CategoryStatistics> categories = new ConcurrentHashMap<>();
+
+    /**
+     * 价格换算为整数分
+     */
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    @Override
+    public void productAdded(Product product, int quantity) {
+        long value = toCents(product.getPrice()) * quantity;
+        productCount.increment();
+        totalValueCents.add(value);
+        CategoryStatistics stats = categoryOf(product.getCategory());
+        if (stats != null) {
+            stats.productCount.increment();
+            stats.valueCents.add(value);
+        }
+    }
+
+    @Override
+    public void productRemoved(Product product, int quantity) {
+        long value = toCents(product.getPrice()) * quantity;
+        productCount.decrement();
+        totalValueCents.add(-value);
+        CategoryStatistics stats = categoryOf(product.getCategory());
+        if (stats != null) {
+            stats.productCount.decrement();
+            stats.valueCents.add(-value);
+        }
+    }
+
+    @Override
+    public void productUpdated(Product product, String oldName, double oldPrice, String oldCategory, int quantity) {
+        String newCategory = product.getCategory();
+        long oldValue = toCents(oldPrice) * quantity;
+        long newValue = toCents(product.getPrice()) * quantity;
+        if (oldValue == newValue && Objects.equals(oldCategory, newCategory)) {
+            return;
+        }
+        totalValueCents.add(newValue - oldValue);
+        CategoryStatistics oldStats = categoryOf(oldCategory);
+        if (oldStats != null) {
+            oldStats.productCount.decrement();
+            oldStats.valueCents.add(-oldValue);
+        }
+        CategoryStatistics newStats = categoryOf(newCategory);
+        if (newStats != null) {
+            newStats.productCount.increment();
+            newStats.valueCents.add(newValue);
+        }
+    }
+
+    @Override
+    public void stockChanged(Product product, double price, String category, int delta, long stockState) {
+        long value = toCents(price) * delta;
+        totalValueCents.add(value);
+        CategoryStatistics stats = categoryOf(category);
+        if (stats != null) {
+            stats.valueCents.add(value);
+        }
+    }
+
+    /**
+     * 获取商品总数
+     */
+    public int getProductCount() {
+        return (int) productCount.sum();
+    }
+
+    /**
+     * 获取库存总价值（分）
+     */
+    public long getTotalValueCents() {
+        return totalValueCents.sum();
+    }
+
+    /**
+     * 获取各类别的统计信息（只包含当前有商品的类别）
+     * @return 类别 -> 统计信息
+     */
+    public Map<String, CategoryStatistics> getCategoryStatistics() {
+        Map<String, CategoryStatistics> result = new TreeMap<>();
+        for (Map.Entry<String, CategoryStatistics> entry : categories.entrySet()) {
+            if (entry.getValue().getProductCount() > 0) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private CategoryStatistics categoryOf(String category) {
+        if (category == null) {
+            return null;
+        }
+        return categories.computeIfAbsent(category, key -> new CategoryStatistics());
+    }
+
+    /**
+     * 单个类别的统计信息
+     */
+    public static class CategoryStatistics {
+        private final LongAdder productCount = new LongAdder();
+        private final LongAdder valueCents = new LongAdder();
+
+        public int getProductCount() {
+            return (int) productCount.sum();
+        }
+
+        public long getValueCents() {
+            return valueCents.sum();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package service;
 
 import dao.ProductDao;
+import dao.StockBatch;
 import model.Product;
 import java.util.*;
 
@@ -10,9 +11,22 @@ import java.util.*;
  */
 public class ProductService {
     private ProductDao productDao;
+    private InventoryStatistics statistics;  // 增量维护的库存统计
+    private final ChangeFeed changeFeed;     // 向订阅者推送商品变更
 
     public ProductService(ProductDao productDao) {
         this.productDao = productDao;
+        this.statistics = new InventoryStatistics();
+        productDao.addChangeListener(statistics);
+        this.changeFeed = new ChangeFeed();
+        productDao.addChangeListener(changeFeed);
+    }
+
+    /**
+     * 商品变更推送（所有修改商品或库存的操作都会通过它推送给订阅者）
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
     }
 
     /**
@@ -21,20 +35,72 @@ public class ProductService {
      * @return 是否添加成功
      */
     public boolean addProduct(Product product) {
-        // 业务逻辑：验证商品信息
-        if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
+        if (validate(product) != null) {
             return false;
         }
+        return productDao.addProduct(product);
+    }
+
+    /**
+     * 批量添加新商品（导入时使用），每个商品的校验规则与 addProduct 相同
+     * @param products 商品列表
+     * @return 与商品列表一一对应的失败原因，添加成功的位置为null
+     */
+    public String[] addProducts(List<Product> products) {
+        return addProducts(products, false);
+    }
+
+    /**
+     * 批量添加新商品，可以延后建立名称索引（大批量导入时使用，之后调用 buildDeferredNameIndex）
+     * @param products 商品列表
+     * @param deferNameIndex 是否延后建立名称索引
+     * @return 与商品列表一一对应的失败原因，添加成功的位置为null
+     */
+    public String[] addProducts(List<Product> products, boolean deferNameIndex) {
+        String[] errors = new String[products.size()];
+        List<Product> valid = new ArrayList<>(products.size());
+        int[] positions = new int[products.size()];
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = validate(products.get(i));
+            if (errors[i] == null) {
+                positions[valid.size()] = i;
+                valid.add(products.get(i));
+            }
+        }
+        boolean[] added = productDao.addProducts(valid, deferNameIndex);
+        for (int i = 0; i < added.length; i++) {
+            if (!added[i]) {
+                errors[positions[i]] = "商品ID已存在";
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * 为延后建立名称索引的商品批量建立名称索引
+     */
+    public void buildDeferredNameIndex() {
+        productDao.buildDeferredNameIndex();
+    }
+
+    /**
+     * 业务逻辑：验证商品信息
+     * @return 信息不完整或无效时返回原因，否则返回null
+     */
+    public String validate(Product product) {
+        if (product == null || product.getId() == null || product.getId().trim().isEmpty()) {
+            return "商品ID不能为空";
+        }
         if (product.getName() == null || product.getName().trim().isEmpty()) {
-            return false;
+            return "商品名称不能为空";
         }
         if (product.getPrice() < 0) {
-            return false;
+            return "价格不能为负数";
         }
         if (product.getQuantity() < 0) {
-            return false;
+            return "库存数量不能为负数";
         }
-        return productDao.addProduct(product);
+        return null;
     }
 
     /**
@@ -64,6 +130,17 @@ public class ProductService {
         return productDao.findProductsByName(name);
     }
 
+    /**
+     * 分页查找名称包含关键词的商品，按商品ID升序
+     * @param name 商品名称关键词（为空时查找全部商品）
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 匹配的商品列表
+     */
+    public List<Product> findProductsByName(String name, String after, int limit) {
+        return productDao.findProductsByName(name, after, limit);
+    }
+
     /**
      * 根据类别查找商品
      * @param category 商品类别
@@ -73,6 +150,17 @@ public class ProductService {
         return productDao.findProductsByCategory(category);
     }
 
+    /**
+     * 分页查找指定类别的商品，按商品ID升序
+     * @param category 商品类别
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 匹配的商品列表
+     */
+    public List<Product> findProductsByCategory(String category, String after, int limit) {
+        return productDao.findProductsByCategory(category, after, limit);
+    }
+
     /**
      * 获取所有商品列表
      * @return 所有商品的列表
@@ -81,6 +169,16 @@ public class ProductService {
         return productDao.getAllProducts();
     }
 
+    /**
+     * 分页获取商品，按商品ID升序
+     * @param after 上一页最后一个商品的ID，为null时从第一页开始
+     * @param limit 最多返回的数量
+     * @return 商品列表
+     */
+    public List<Product> getAllProducts(String after, int limit) {
+        return productDao.getAllProducts(after, limit);
+    }
+
     /**
      * 商品入库（增加库存）
      * @param id 商品ID
@@ -91,12 +189,7 @@ public class ProductService {
         if (amount <= 0) {
             return false;
         }
-        Product product = productDao.findProductById(id);
-        if (product != null) {
-            product.addQuantity(amount);
-            return true;
-        }
-        return false;
+        return productDao.stockIn(id, amount);
     }
 
     /**
@@ -109,11 +202,7 @@ public class ProductService {
         if (amount <= 0) {
             return false;
         }
-        Product product = productDao.findProductById(id);
-        if (product != null) {
-            return product.reduceQuantity(amount);
-        }
-        return false;
+        return productDao.stockOut(id, amount);
     }
 
     /**
@@ -125,33 +214,45 @@ public class ProductService {
      * @return 是否更新成功
      */
     public boolean updateProduct(String id, String name, double price, String category) {
-        Product product = productDao.findProductById(id);
-        if (product != null) {
-            if (name != null && !name.trim().isEmpty()) {
-                product.setName(name);
-            }
-            if (price >= 0) {
-                product.setPrice(price);
-            }
-            if (category != null && !category.trim().isEmpty()) {
-                product.setCategory(category);
-            }
-            return true;
+        if (name != null && name.trim().isEmpty()) {
+            name = null;
         }
-        return false;
+        if (category != null && category.trim().isEmpty()) {
+            category = null;
+        }
+        return productDao.updateProduct(id, name, price, category);
     }
 
     /**
-     * 获取库存总价值
+     * 批量入库/出库（全部成功或全部不执行）
+     * @param batch 批次，执行后可查询每一行的结果
+     * @return 批次是否已生效
+     */
+    public boolean applyStockBatch(StockBatch batch) {
+        return productDao.applyStockBatch(batch);
+    }
+
+    /**
+     * 获取库存总价值（由增量聚合直接读取，与商品数量无关）
      * @return 总价值
      */
     public double getTotalInventoryValue() {
-        double total = 0;
-        List<Product> products = productDao.getAllProducts();
-        for (Product product : products) {
-            total += product.getTotalValue();
-        }
-        return total;
+        return statistics.getTotalValueCents() / 100.0;
+    }
+
+    /**
+     * 获取库存总价值（分）
+     * @return 总价值（分）
+     */
+    public long getTotalInventoryValueCents() {
+        return statistics.getTotalValueCents();
+    }
+
+    /**
+     * 库存数据版本（任何修改后增大），用于判断查询结果是否变化
+     */
+    public long getInventoryVersion() {
+        return productDao.getVersion();
     }
 
     /**
@@ -159,7 +260,15 @@ public class ProductService {
      * @return 商品种类数
      */
     public int getProductCount() {
-        return productDao.getProductCount();
+        return statistics.getProductCount();
+    }
+
+    /**
+     * 获取各类别的商品数和库存价值
+     * @return 类别 -> 统计信息
+     */
+    public Map<String, InventoryStatistics.CategoryStatistics> getCategoryStatistics() {
+        return statistics.getCategoryStatistics();
     }
 
     /**
@@ -173,17 +282,20 @@ public class ProductService {
     /**
      * 检查是否有库存不足的商品（数量小于阈值）
      * @param threshold 库存阈值
-     * @return 库存不足的商品列表
+     * @return 库存不足的商品列表（按库存数量升序）
      */
     public List<Product> getLowStockProducts(int threshold) {
-        List<Product> result = new ArrayList<>();
-        List<Product> products = productDao.getAllProducts();
-        for (Product product : products) {
-            if (product.getQuantity() < threshold) {
-                result.add(product);
-            }
-        }
-        return result;
+        return getLowStockProducts(threshold, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 检查是否有库存不足的商品（数量小于阈值），最多返回limit个
+     * @param threshold 库存阈值
+     * @param limit 最多返回的数量
+     * @return 库存不足的商品列表（按库存数量升序）
+     */
+    public List<Product> getLowStockProducts(int threshold, int limit) {
+        return productDao.findProductsByQuantityBelow(threshold, limit);
     }
 }
 
@@ -0,0 +1,214 @@
+package service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录会话存储
+ * 一个 token -> 会话 的Map，验证token只需一次查找；过期会话由后台线程通过哈希时间轮清除：
+ * 会话按过期时间放入时间轮的某个槽（槽内为双向链表，登出时O(1)摘除），
+ * 每个刻度只处理到期的那一个槽，不需要扫描全部会话，无人再使用的会话也会按时释放。
+ */
+class SessionStore {
+    private static final int WHEEL_SIZE = 1024;  // 槽数（2的幂）
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Slot[] wheel = new Slot[WHEEL_SIZE];
+    private final long tickMillis;   // 每个槽覆盖的时间，一圈不短于会话有效期，每个会话最多被访问两次
+    private long nextTick;           // 下一个要处理的刻度（只由清理线程访问）
+    private volatile boolean closed;
+
+    private final LongAdder expired = new LongAdder();         // 时间轮清除的会话数
+    private final LongAdder expiredOnAccess = new LongAdder(); // 验证时发现已过期而清除的会话数
+    private final LongAdder loggedOut = new LongAdder();       // 登出的会话数
+
+    /**
+     * @param ttlMillis 会话有效期
+     */
+    SessionStore(long ttlMillis) {
+        this.tickMillis = Math.max(10, (ttlMillis + WHEEL_SIZE - 2) / (WHEEL_SIZE - 1));
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Slot();
+        }
+        this.nextTick = System.currentTimeMillis() / tickMillis;
+        Thread reaper = new Thread(this::reapLoop, "session-expiry");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * 保存新会话
+     */
+    void put(String token, String username, long expiresAt) {
+        Session session = new Session(token, username, expiresAt);
+        // 先放入时间轮再放入Map：能查到的会话一定已在时间轮中，登出时可以摘除
+        wheel[slotOf(expiresAt)].link(session);
+        sessions.put(token, session);
+    }
+
+    /**
+     * 查找未过期的会话
+     * @return 会话不存在或已过期时返回null
+     */
+    Session get(String token, long now) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (now > session.expiresAt) {
+            if (remove(session)) {
+                expiredOnAccess.increment();
+            }
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * 删除会话（登出）
+     */
+    void remove(String token) {
+        Session session = sessions.get(token);
+        if (session != null && remove(session)) {
+            loggedOut.increment();
+        }
+    }
+
+    /**
+     * 从Map和时间轮中删除会话
+     * @return 是否由本次调用删除
+     */
+    private boolean remove(Session session) {
+        if (!sessions.remove(session.token, session)) {
+            return false;
+        }
+        wheel[slotOf(session.expiresAt)].unlink(session);
+        return true;
+    }
+
+    private int slotOf(long expiresAt) {
+        return (int) ((expiresAt / tickMillis) & (WHEEL_SIZE - 1));
+    }
+
+    /**
+     * 清理线程：每个刻度结束后处理该刻度对应的槽
+     */
+    private void reapLoop() {
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            long currentTick = now / tickMillis;
+            // 线程被延迟时补上错过的刻度（最多一圈）
+            if (currentTick - nextTick > WHEEL_SIZE) {
+                nextTick = currentTick - WHEEL_SIZE;
+            }
+            while (nextTick < currentTick) {
+                expired.add(wheel[(int) (nextTick & (WHEEL_SIZE - 1))].expire(now, sessions));
+                nextTick++;
+            }
+            try {
+                Thread.sleep(Math.max(1, (currentTick + 1) * tickMillis - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 停止清理线程
+     */
+    void close() {
+        closed = true;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    long getExpiredCount() {
+        return expired.sum();
+    }
+
+    long getExpiredOnAccessCount() {
+        return expiredOnAccess.sum();
+    }
+
+    long getLoggedOutCount() {
+        return loggedOut.sum();
+    }
+
+    /**
+     * 会话
+     */
+    static class Session {
+        final String token;
+        final String username;
+        final long expiresAt;
+        Session prev;  // 所在槽的链表（由槽的锁保护）
+        Session next;
+        boolean linked;
+
+        Session(String token, String username, long expiresAt) {
+            this.token = token;
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 时间轮的一个槽：会话的双向链表
+     */
+    private static class Slot {
+        private Session head;
+
+        synchronized void link(Session session) {
+            session.next = head;
+            if (head != null) {
+                head.prev = session;
+            }
+            head = session;
+            session.linked = true;
+        }
+
+        synchronized void unlink(Session session) {
+            if (!session.linked) {
+                return;
+            }
+            if (session.prev != null) {
+                session.prev.next = session.next;
+            } else {
+                head = session.next;
+            }
+            if (session.next != null) {
+                session.next.prev = session.prev;
+            }
+            session.prev = null;
+            session.next = null;
+            session.linked = false;
+        }
+
+        /**
+         * 删除槽中已过期的会话（过期时间在下一圈的会话保留）
+         * @return 删除的会话数
+         */
+        synchronized int expire(long now, Map<String, Session> sessions) {
+            int count = 0;
+            Session session = head;
+            while (session != null) {
+                Session next = session.next;
+                if (now > session.expiresAt) {
+                    unlink(session);
+                    if (sessions.remove(session.token, session)) {
+                        count++;
+                    }
+                }
+                session = next;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC签名的无状态token
+ * 格式为 base64url(内容) + "." + base64url(HMAC-SHA256(base64url(内容)))，
+ * 内容依次为：过期时间(8字节) | 随机数(8字节) | 角色长度(1字节) | 角色 | 用户名。
+ * 验证只需要密钥，不依赖任何共享状态；签名按固定时间比较。
+ * 初始化好的Mac和缓冲区放在一个小池中借还（虚拟线程执行模型下每个请求都是新线程，按线程缓存不会命中），
+ * 池中有空闲时验证过程除返回的用户名外不分配对象。
+ */
+class TokenSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+    private static final int SIGNATURE_CHARS = 43;      // 32字节的base64url（无填充）长度
+    private static final int MAX_PAYLOAD_BYTES = 192;   // 内容上限（用户名和角色的总长度约170字节）
+    private static final int MAX_PAYLOAD_CHARS = (MAX_PAYLOAD_BYTES + 2) / 3 * 4;
+    private static final int HEADER_BYTES = 17;
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+    private final Queue<Buffers> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param secret 签名密钥（多个实例必须使用相同的密钥）
+     */
+    TokenSigner(byte[] secret) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        release(new Buffers(newMac()));  // 密钥无效时在启动阶段失败
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("无法初始化token签名: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从池中借出Mac和缓冲区，池为空时新建
+     */
+    private Buffers acquire() {
+        Buffers b = free.poll();
+        if (b == null) {
+            return new Buffers(newMac());
+        }
+        pooled.decrementAndGet();
+        return b;
+    }
+
+    /**
+     * 归还Mac和缓冲区，池中最多保留 MAX_POOLED 个，超出的交给GC回收
+     */
+    private void release(Buffers b) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            free.offer(b);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * 签发token
+     */
+    String issue(String username, String role, long expiresAt) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] roleBytes = (role != null ? role : "").getBytes(StandardCharsets.UTF_8);
+        if (roleBytes.length > 255 || HEADER_BYTES + roleBytes.length + name.length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("用户名或角色过长");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(HEADER_BYTES + roleBytes.length + name.length);
+        payload.putLong(expiresAt).putLong(random.nextLong()).put((byte) roleBytes.length).put(roleBytes).put(name);
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(payload.array());
+        Buffers b = acquire();
+        byte[] signature;
+        try {
+            signature = b.mac.doFinal(encoded.getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            release(b);
+        }
+        return encoded + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    /**
+     * 验证签名和有效期
+     * @return 有效时返回用户名，否则返回null
+     */
+    String verify(String token, long now) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot > MAX_PAYLOAD_CHARS || token.length() - dot - 1 != SIGNATURE_CHARS) {
+            return null;
+        }
+        Buffers b = acquire();
+        try {
+            return verifyWith(b, token, dot, now);
+        } finally {
+            release(b);
+        }
+    }
+
+    /**
+     * 用借出的Mac和缓冲区验证token
+     * @param dot 内容和签名之间的分隔符位置
+     */
+    private static String verifyWith(Buffers b, String token, int dot, long now) {
+        // 先验证签名（对编码后的内容签名），通过后才解析内容
+        for (int i = 0; i < dot; i++) {
+            b.encoded[i] = (byte) token.charAt(i);
+        }
+        try {
+            b.mac.update(b.encoded, 0, dot);
+            b.mac.doFinal(b.expected, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        if (decode(token, dot + 1, token.length(), b.signature) != MAC_BYTES
+                || !MessageDigest.isEqual(b.expected, b.signature)) {
+            return null;
+        }
+        int length = decode(token, 0, dot, b.payload);
+        if (length < HEADER_BYTES) {
+            return null;
+        }
+        byte[] payload = b.payload;
+        long expiresAt = 0;
+        for (int i = 0; i < 8; i++) {
+            expiresAt = (expiresAt << 8) | (payload[i] & 0xFF);
+        }
+        if (now > expiresAt) {
+            return null;
+        }
+        int nameOffset = HEADER_BYTES + (payload[16] & 0xFF);
+        if (nameOffset > length) {
+            return null;
+        }
+        return new String(payload, nameOffset, length - nameOffset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * base64url解码到指定数组
+     * @return 解码得到的字节数，字符无效或超出数组长度时返回-1
+     */
+    private static int decode(String s, int from, int to, byte[] out) {
+        if (from > to) {
+            return -1;
+        }
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                if (length == out.length) {
+                    return -1;
+                }
+                out[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 池中复用的Mac和缓冲区（同一时间只由一个请求使用）
+     */
+    private static class Buffers {
+        final Mac mac;
+        final byte[] encoded = new byte[MAX_PAYLOAD_CHARS];
+        final byte[] payload = new byte[MAX_PAYLOAD_BYTES];
+        final byte[] expected = new byte[MAC_BYTES];
+        final byte[] signature = new byte[MAC_BYTES];
+
+        Buffers(Mac mac) {
+            this.mac = mac;
+        }
+    }
+}
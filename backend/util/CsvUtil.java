@@ -0,0 +1,124 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * CSV工具类（RFC 4180）
+ * 逗号分隔，含逗号、双引号或换行的字段用双引号括起，字段内的双引号写成两个；记录以 \n 或 \r\n 结束。
+ * 直接在UTF-8字节上解析，只为字段值分配字符串。格式错误时抛出 IllegalArgumentException。
+ */
+public class CsvUtil {
+
+    /**
+     * 解析一条记录
+     * @param data 数据
+     * @param position 记录开始的位置
+     * @param end 数据结束的位置（不含）
+     * @param fields 用于存放字段值（先清空）
+     * @return 下一条记录开始的位置
+     */
+    public static int parseRecord(byte[] data, int position, int end, List<String> fields) {
+        fields.clear();
+        while (true) {
+            if (position < end && data[position] == '"') {
+                // 带引号的字段：找到结束引号，"" 表示一个引号
+                int start = ++position;
+                boolean escaped = false;
+                while (true) {
+                    if (position >= end) {
+                        throw new IllegalArgumentException("引号未闭合");
+                    }
+                    if (data[position] == '"') {
+                        if (position + 1 < end && data[position + 1] == '"') {
+                            escaped = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                String value = new String(data, start, position - start, StandardCharsets.UTF_8);
+                fields.add(escaped ? value.replace("\"\"", "\"") : value);
+                position++;
+                if (position < end && data[position] != ',' && data[position] != '\n' && data[position] != '\r') {
+                    throw new IllegalArgumentException("引号之后应为逗号或换行");
+                }
+            } else {
+                int start = position;
+                while (position < end && data[position] != ',' && data[position] != '\n' && data[position] != '\r') {
+                    position++;
+                }
+                fields.add(new String(data, start, position - start, StandardCharsets.UTF_8));
+            }
+            if (position >= end) {
+                return end;
+            }
+            byte b = data[position++];
+            if (b == '\r') {
+                return position < end && data[position] == '\n' ? position + 1 : position;
+            }
+            if (b == '\n') {
+                return position;
+            }
+            // 逗号：继续下一个字段
+        }
+    }
+
+    /**
+     * 查找记录的结束位置（不解析字段，引号的处理与 parseRecord 一致：只有字段开头的引号开始带引号的字段）
+     * @param data 数据
+     * @param position 记录开始的位置
+     * @param end 数据结束的位置（不含）
+     * @return 记录结束换行之后的位置，end 之前没有完整的记录时返回-1
+     */
+    public static int recordEnd(byte[] data, int position, int end) {
+        boolean quoted = false;
+        boolean fieldStart = true;
+        for (int i = position; i < end; i++) {
+            byte b = data[i];
+            if (quoted) {
+                if (b == '"') {
+                    if (i + 1 < end && data[i + 1] == '"') {
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                }
+            } else if (b == '\n') {
+                return i + 1;
+            } else {
+                quoted = b == '"' && fieldStart;
+                fieldStart = b == ',';
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把字段写成CSV格式追加到sb（需要时加引号）
+     */
+    public static StringBuilder appendField(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
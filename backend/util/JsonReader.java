@@ -0,0 +1,545 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节级JSON读取器
+ * 直接在请求体的UTF-8字节上单遍扫描，按字段依次读取值：字段名在原始字节上比较，不生成字符串；
+ * 数字直接从字节解析；只有字符串类型的字段值才会分配对象。格式错误时抛出 IllegalArgumentException。
+ *
+ * 用法：
+ * <pre>
+ * reader.beginObject();
+ * while (reader.nextField()) {
+ *     if (reader.nameEquals("id")) { id = reader.nextString(); }
+ *     else { reader.skipValue(); }
+ * }
+ * reader.endDocument();
+ * </pre>
+ */
+public class JsonReader {
+    private static final int MAX_DEPTH = 32;
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private int position;
+    private int nameStart;      // 当前字段名在data中的范围（不含引号）
+    private int nameEnd;
+    private final boolean[] first = new boolean[MAX_DEPTH + 1];  // 每层对象/数组是否还没有读过成员
+    private int depth;
+    private byte[] scratch;     // 解码带转义字符的字符串时使用
+
+    public JsonReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.start = offset;
+        this.end = offset + length;
+        this.position = offset;
+    }
+
+    /**
+     * 读取对象的开始
+     */
+    public void beginObject() {
+        expect('{');
+        push();
+    }
+
+    /**
+     * 读取数组的开始
+     */
+    public void beginArray() {
+        expect('[');
+        push();
+    }
+
+    /**
+     * 下一个值是否为数组
+     */
+    public boolean isNextArray() {
+        return peek() == '[';
+    }
+
+    /**
+     * 移动到数组的下一个元素
+     * @return 有下一个元素时返回true（之后读取元素值），数组结束时返回false
+     */
+    public boolean nextElement() {
+        if (peek() == ']') {
+            position++;
+            depth--;
+            return false;
+        }
+        if (!first[depth]) {
+            expect(',');
+        }
+        first[depth] = false;
+        return true;
+    }
+
+    /**
+     * 移动到下一个字段
+     * @return 有下一个字段时返回true（之后可用 nameEquals 判断字段名，再读取字段值），对象结束时返回false
+     */
+    public boolean nextField() {
+        byte c = peek();
+        if (c == '}') {
+            position++;
+            depth--;
+            return false;
+        }
+        if (!first[depth]) {
+            expect(',');
+            c = peek();
+        }
+        first[depth] = false;
+        if (c != '"') {
+            throw error("应为字段名");
+        }
+        position++;
+        nameStart = position;
+        while (true) {
+            if (position >= end) {
+                throw error("字段名未结束");
+            }
+            byte b = data[position];
+            if (b == '"') {
+                break;
+            }
+            position += b == '\\' ? 2 : 1;
+        }
+        nameEnd = position++;
+        expect(':');
+        return true;
+    }
+
+    /**
+     * 判断当前字段名是否等于给定的名称（按原始字节比较，只适用于ASCII字段名）
+     */
+    public boolean nameEquals(String name) {
+        int length = nameEnd - nameStart;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[nameStart + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取字符串值（null字面量返回null，数字和布尔值按原文返回）
+     */
+    public String nextString() {
+        byte c = peek();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        int from = position;
+        skipScalar();
+        return new String(data, from, position - from, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 当前值为null时读取它并返回true
+     */
+    public boolean nextNull() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取整数值（也接受内容为整数的字符串）
+     */
+    public int nextInt() {
+        if (peek() == '"') {
+            String text = readString();
+            try {
+                return Integer.parseInt(text.trim());
+            } catch (NumberFormatException e) {
+                throw error("应为整数");
+            }
+        }
+        boolean negative = false;
+        if (position < end && data[position] == '-') {
+            negative = true;
+            position++;
+        }
+        int from = position;
+        long value = 0;
+        while (position < end && data[position] >= '0' && data[position] <= '9') {
+            value = value * 10 + (data[position++] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error("整数超出范围");
+            }
+        }
+        if (position == from || (position < end && isNumberPart(data[position]))) {
+            throw error("应为整数");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("整数超出范围");
+        }
+        return (int) value;
+    }
+
+    /**
+     * 读取数字值（也接受内容为数字的字符串）
+     * 不超过15位有效数字且没有指数部分的数字直接由字节计算（结果与 Double.parseDouble 相同），其他情况交给 Double.parseDouble
+     */
+    public double nextDouble() {
+        if (peek() == '"') {
+            String text = readString();
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                throw error("应为数字");
+            }
+        }
+        int from = position;
+        boolean negative = false;
+        if (position < end && data[position] == '-') {
+            negative = true;
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean simple = true;
+        while (position < end) {
+            byte b = data[position];
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    scale++;
+                }
+                if (digits > 15 || scale >= POW10.length) {
+                    simple = false;
+                    break;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (position < end && isNumberPart(data[position])) {
+            simple = false;
+        }
+        if (simple) {
+            if (position == from + (negative ? 1 : 0)) {
+                throw error("应为数字");
+            }
+            double value = mantissa / POW10[scale];
+            return negative ? -value : value;
+        }
+        position = from;
+        skipScalar();
+        try {
+            return Double.parseDouble(new String(data, from, position - from, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw error("应为数字");
+        }
+    }
+
+    /**
+     * 跳过当前值（包括嵌套的对象和数组）
+     */
+    public void skipValue() {
+        skipValue(0);
+    }
+
+    /**
+     * 确认除空白外没有多余内容
+     */
+    public void endDocument() {
+        skipWhitespace();
+        if (position != end) {
+            throw error("多余的内容");
+        }
+    }
+
+    /**
+     * 是否只有空白内容
+     */
+    public boolean isEmpty() {
+        skipWhitespace();
+        return position == end;
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw error("嵌套层数过多");
+        }
+        first[++depth] = true;
+    }
+
+    private void skipValue(int level) {
+        if (level > MAX_DEPTH) {
+            throw error("嵌套层数过多");
+        }
+        byte c = peek();
+        if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            position++;
+            if (peek() == close) {
+                position++;
+                return;
+            }
+            do {
+                if (c == '{') {
+                    skipName();
+                }
+                skipValue(level + 1);
+            } while (skipComma());
+            expect(close);
+        } else if (c == '"') {
+            skipString();
+        } else {
+            skipScalar();
+        }
+    }
+
+    private boolean skipComma() {
+        if (peek() == ',') {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipName() {
+        if (peek() != '"') {
+            throw error("应为字段名");
+        }
+        skipString();
+        expect(':');
+    }
+
+    private String readString() {
+        position++;  // 开始引号
+        int from = position;
+        while (position < end) {
+            byte b = data[position];
+            if (b == '"') {
+                return new String(data, from, position++ - from, StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                return readEscapedString(from);
+            }
+            if (b >= 0 && b < 0x20) {
+                throw error("字符串中有控制字符");
+            }
+            position++;
+        }
+        throw error("字符串未结束");
+    }
+
+    /**
+     * 解码带转义字符的字符串（from为字符串内容的开始位置，position指向第一个反斜杠）
+     */
+    private String readEscapedString(int from) {
+        int capacity = end - from;
+        if (scratch == null || scratch.length < capacity) {
+            scratch = new byte[capacity];
+        }
+        int length = position - from;
+        System.arraycopy(data, from, scratch, 0, length);
+        while (position < end) {
+            byte b = data[position++];
+            if (b == '"') {
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            if (b >= 0 && b < 0x20) {
+                throw error("字符串中有控制字符");
+            }
+            if (b != '\\') {
+                scratch[length++] = b;
+                continue;
+            }
+            if (position >= end) {
+                break;
+            }
+            byte e = data[position++];
+            switch (e) {
+                case '"': case '\\': case '/':
+                    scratch[length++] = e;
+                    break;
+                case 'n':
+                    scratch[length++] = '\n';
+                    break;
+                case 'r':
+                    scratch[length++] = '\r';
+                    break;
+                case 't':
+                    scratch[length++] = '\t';
+                    break;
+                case 'b':
+                    scratch[length++] = '\b';
+                    break;
+                case 'f':
+                    scratch[length++] = '\f';
+                    break;
+                case 'u':
+                    length = appendCodePoint(length, readUnicodeEscape());
+                    break;
+                default:
+                    throw error("无效的转义字符");
+            }
+        }
+        throw error("字符串未结束");
+    }
+
+    /**
+     * 读取\\u转义（position指向4位十六进制数），代理对合并为一个码点
+     */
+    private int readUnicodeEscape() {
+        int c = readHex4();
+        if (Character.isHighSurrogate((char) c) && position + 1 < end
+                && data[position] == '\\' && data[position + 1] == 'u') {
+            int saved = position;
+            position += 2;
+            int low = readHex4();
+            if (Character.isLowSurrogate((char) low)) {
+                return Character.toCodePoint((char) c, (char) low);
+            }
+            position = saved;
+        }
+        return Character.isSurrogate((char) c) ? '?' : c;
+    }
+
+    private int readHex4() {
+        if (position + 4 > end) {
+            throw error("无效的\\u转义");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(data[position++], 16);
+            if (digit < 0) {
+                throw error("无效的\\u转义");
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * 把码点按UTF-8写入scratch（转义序列至少6字节，编码结果最多4字节，不会超出容量）
+     */
+    private int appendCodePoint(int length, int codePoint) {
+        if (codePoint < 0x80) {
+            scratch[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[length++] = (byte) (0xC0 | (codePoint >> 6));
+            scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            scratch[length++] = (byte) (0xE0 | (codePoint >> 12));
+            scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            scratch[length++] = (byte) (0xF0 | (codePoint >> 18));
+            scratch[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            scratch[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return length;
+    }
+
+    private void skipString() {
+        position++;
+        while (position < end) {
+            byte b = data[position++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                position++;
+            }
+        }
+        throw error("字符串未结束");
+    }
+
+    /**
+     * 跳过数字、true、false或null
+     */
+    private void skipScalar() {
+        byte c = peek();
+        if (c == 't') {
+            expectLiteral("true");
+        } else if (c == 'f') {
+            expectLiteral("false");
+        } else if (c == 'n') {
+            expectLiteral("null");
+        } else {
+            int from = position;
+            while (position < end && isNumberPart(data[position])) {
+                position++;
+            }
+            if (position == from) {
+                throw error("应为值");
+            }
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (position >= end || data[position++] != literal.charAt(i)) {
+                throw error("无效的值");
+            }
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("应为 '" + c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * 跳过空白并返回下一个字节（不移动位置）
+     */
+    private byte peek() {
+        skipWhitespace();
+        if (position >= end) {
+            throw error("内容意外结束");
+        }
+        return data[position];
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = data[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private static boolean isNumberPart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON格式错误: " + message + "（位置 " + (position - start) + "）");
+    }
+}
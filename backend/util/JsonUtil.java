@@ -3,6 +3,12 @@ package util;
 import model.Product;
 import controller.ProductController;
 import controller.AuthController;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -10,138 +16,143 @@ import java.util.*;
  * 简单的JSON序列化和反序列化工具
  */
 public class JsonUtil {
+    /** 请求体的最大字节数，可通过 -Dinventory.http.maxRequestBytes 调整 */
+    public static final int MAX_REQUEST_BYTES = Integer.getInteger("inventory.http.maxRequestBytes", 64 * 1024);
     
     /**
      * 将对象转换为JSON字符串
      */
     public static String toJson(Object obj) {
-        if (obj == null) {
-            return "null";
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        JsonWriter writer = new JsonWriter(out, 512);
+        try {
+            writer.value(obj);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // 写入内存不会失败
         }
-        
-        if (obj instanceof Product) {
-            return productToJson((Product) obj);
-        }
-        
-        if (obj instanceof List) {
-            return listToJson((List<?>) obj);
-        }
-        
-        if (obj instanceof Map) {
-            return mapToJson((Map<?, ?>) obj);
-        }
-        
-        if (obj instanceof String) {
-            return "\"" + escapeJson((String) obj) + "\"";
-        }
-        
-        if (obj instanceof Number || obj instanceof Boolean) {
-            return obj.toString();
-        }
-        
-        return "\"" + escapeJson(obj.toString()) + "\"";
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
     
     /**
-     * Product对象转JSON
+     * 将对象以UTF-8编码的JSON直接写入输出流（不生成中间字符串，不关闭输出流）
      */
-    private static String productToJson(Product product) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"id\":").append(toJson(product.getId())).append(",");
-        sb.append("\"name\":").append(toJson(product.getName())).append(",");
-        sb.append("\"price\":").append(product.getPrice()).append(",");
-        sb.append("\"quantity\":").append(product.getQuantity()).append(",");
-        sb.append("\"category\":").append(toJson(product.getCategory())).append(",");
-        sb.append("\"totalValue\":").append(product.getTotalValue());
-        sb.append("}");
-        return sb.toString();
+    public static void writeJson(Object obj, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.value(obj);
+        writer.flush();
     }
     
     /**
-     * List转JSON
+     * 从JSON字符串反序列化为对象
      */
-    private static String listToJson(List<?> list) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < list.size(); i++) {
-            if (i > 0) sb.append(",");
-            sb.append(toJson(list.get(i)));
+    public static <T> T fromJson(String json, Class<T> clazz) {
+        if (json == null) {
+            return null;
         }
-        sb.append("]");
-        return sb.toString();
+        byte[] data = json.getBytes(StandardCharsets.UTF_8);
+        return fromJson(data, 0, data.length, clazz);
     }
     
     /**
-     * Map转JSON
+     * 读取请求体并反序列化为对象
+     * @param in 请求体输入流
+     * @param contentLength 请求头中声明的长度，未知时为-1
+     * @param clazz 目标类型
+     * @return 请求体为空时返回null
+     * @throws RequestTooLargeException 请求体超过 MAX_REQUEST_BYTES
+     * @throws IllegalArgumentException JSON格式错误
      */
-    private static String mapToJson(Map<?, ?> map) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        boolean first = true;
-        for (Map.Entry<?, ?> entry : map.entrySet()) {
-            if (!first) sb.append(",");
-            first = false;
-            sb.append(toJson(entry.getKey().toString()));
-            sb.append(":");
-            sb.append(toJson(entry.getValue()));
+    public static <T> T fromJson(InputStream in, long contentLength, Class<T> clazz) throws IOException {
+        if (contentLength > MAX_REQUEST_BYTES) {
+            throw new RequestTooLargeException(contentLength);
         }
-        sb.append("}");
-        return sb.toString();
-    }
-    
-    /**
-     * 转义JSON字符串
-     */
-    private static String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                  .replace("\"", "\\\"")
-                  .replace("\n", "\\n")
-                  .replace("\r", "\\r")
-                  .replace("\t", "\\t");
+        // 长度已知时一次分配正好的大小，否则从小缓冲区开始按需扩大
+        byte[] buffer = new byte[contentLength >= 0 ? (int) contentLength : 512];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // 缓冲区已满：读到末尾则结束，否则扩大缓冲区（实际内容比声明的长或长度未知）
+                int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                if (length >= MAX_REQUEST_BYTES) {
+                    throw new RequestTooLargeException(-1);
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(Math.max(buffer.length * 2, 512), MAX_REQUEST_BYTES));
+                buffer[length++] = (byte) next;
+                continue;
+            }
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return fromJson(buffer, 0, length, clazz);
     }
     
     /**
-     * 从JSON字符串反序列化为对象
+     * 从UTF-8字节反序列化为对象（单遍扫描，不生成中间字符串）
+     * @return 内容为空时返回null
+     * @throws IllegalArgumentException JSON格式错误
      */
     @SuppressWarnings("unchecked")
-    public static <T> T fromJson(String json, Class<T> clazz) {
-        if (json == null || json.trim().isEmpty()) {
+    public static <T> T fromJson(byte[] data, int offset, int length, Class<T> clazz) {
+        JsonReader reader = new JsonReader(data, offset, length);
+        if (reader.isEmpty()) {
             return null;
         }
         
-        json = json.trim();
-        
+        Object result;
         if (clazz == Product.class) {
-            return (T) parseProduct(json);
-        }
-        
-        if (clazz == ProductController.ProductUpdateRequest.class) {
-            return (T) parseProductUpdateRequest(json);
-        }
-        
-        if (clazz == ProductController.StockOperation.class) {
-            return (T) parseStockOperation(json);
-        }
-        
-        if (clazz == AuthController.LoginRequest.class) {
-            return (T) parseLoginRequest(json);
+            result = parseProduct(reader);
+        } else if (clazz == ProductController.ProductUpdateRequest.class) {
+            result = parseProductUpdateRequest(reader);
+        } else if (clazz == ProductController.StockOperation.class) {
+            result = parseStockOperation(reader);
+        } else if (clazz == ProductController.StockBatchRequest.class) {
+            result = parseStockBatchRequest(reader);
+        } else if (clazz == AuthController.LoginRequest.class) {
+            result = parseLoginRequest(reader);
+        } else {
+            return null;
         }
-        
-        return null;
+        reader.endDocument();
+        return (T) result;
     }
     
     /**
      * 解析Product对象
      */
-    private static Product parseProduct(String json) {
-        Map<String, String> map = parseJsonObject(json);
-        String id = map.get("id");
-        String name = map.get("name");
-        double price = Double.parseDouble(map.getOrDefault("price", "0"));
-        int quantity = Integer.parseInt(map.getOrDefault("quantity", "0"));
-        String category = map.get("category");
+    private static Product parseProduct(JsonReader reader) {
+        String id = null;
+        String name = null;
+        double price = 0;
+        int quantity = 0;
+        String category = null;
+        
+        reader.beginObject();
+        while (reader.nextField()) {
+            if (reader.nameEquals("id")) {
+                id = reader.nextString();
+            } else if (reader.nameEquals("name")) {
+                name = reader.nextString();
+            } else if (reader.nameEquals("price")) {
+                if (!reader.nextNull()) {
+                    price = reader.nextDouble();
+                }
+            } else if (reader.nameEquals("quantity")) {
+                if (!reader.nextNull()) {
+                    quantity = reader.nextInt();
+                }
+            } else if (reader.nameEquals("category")) {
+                category = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
         
         return new Product(id, name, price, quantity, category);
     }
@@ -149,90 +160,116 @@ public class JsonUtil {
     /**
      * 解析ProductUpdateRequest对象
      */
-    private static ProductController.ProductUpdateRequest parseProductUpdateRequest(String json) {
-        Map<String, String> map = parseJsonObject(json);
+    private static ProductController.ProductUpdateRequest parseProductUpdateRequest(JsonReader reader) {
         ProductController.ProductUpdateRequest req = new ProductController.ProductUpdateRequest();
-        req.name = map.get("name");
-        if (map.containsKey("price")) {
-            req.price = Double.parseDouble(map.get("price"));
+        reader.beginObject();
+        while (reader.nextField()) {
+            if (reader.nameEquals("name")) {
+                req.name = reader.nextString();
+            } else if (reader.nameEquals("price")) {
+                if (!reader.nextNull()) {
+                    req.price = reader.nextDouble();
+                }
+            } else if (reader.nameEquals("category")) {
+                req.category = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
         }
-        req.category = map.get("category");
         return req;
     }
     
     /**
      * 解析StockOperation对象
      */
-    private static ProductController.StockOperation parseStockOperation(String json) {
-        Map<String, String> map = parseJsonObject(json);
+    private static ProductController.StockOperation parseStockOperation(JsonReader reader) {
         ProductController.StockOperation op = new ProductController.StockOperation();
-        op.id = map.get("id");
-        op.amount = Integer.parseInt(map.getOrDefault("amount", "0"));
+        reader.beginObject();
+        while (reader.nextField()) {
+            if (reader.nameEquals("id")) {
+                op.id = reader.nextString();
+            } else if (reader.nameEquals("amount")) {
+                if (!reader.nextNull()) {
+                    op.amount = reader.nextInt();
+                }
+            } else if (reader.nameEquals("type")) {
+                op.type = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
         return op;
     }
     
     /**
-     * 解析LoginRequest对象
+     * 解析StockBatchRequest对象（{"operations": [...]} 或直接是数组）
      */
-    private static AuthController.LoginRequest parseLoginRequest(String json) {
-        Map<String, String> map = parseJsonObject(json);
-        AuthController.LoginRequest req = new AuthController.LoginRequest();
-        req.username = map.get("username");
-        req.password = map.get("password");
+    private static ProductController.StockBatchRequest parseStockBatchRequest(JsonReader reader) {
+        ProductController.StockBatchRequest req = new ProductController.StockBatchRequest();
+        if (reader.isNextArray()) {
+            parseStockOperations(reader, req.operations);
+            return req;
+        }
+        reader.beginObject();
+        while (reader.nextField()) {
+            if (reader.nameEquals("operations")) {
+                parseStockOperations(reader, req.operations);
+            } else {
+                reader.skipValue();
+            }
+        }
         return req;
     }
     
-    /**
-     * 解析JSON对象为Map
-     */
-    private static Map<String, String> parseJsonObject(String json) {
-        Map<String, String> map = new HashMap<>();
-        json = json.trim();
-        
-        if (json.startsWith("{") && json.endsWith("}")) {
-            json = json.substring(1, json.length() - 1);
+    private static void parseStockOperations(JsonReader reader, List<ProductController.StockOperation> operations) {
+        reader.beginArray();
+        while (reader.nextElement()) {
+            operations.add(parseStockOperation(reader));
         }
-        
-        String[] pairs = json.split(",");
-        for (String pair : pairs) {
-            String[] keyValue = pair.split(":", 2);
-            if (keyValue.length == 2) {
-                String key = unquote(keyValue[0].trim());
-                String value = unquote(keyValue[1].trim());
-                map.put(key, value);
-            }
-        }
-        
-        return map;
     }
     
     /**
-     * 移除JSON字符串的引号
+     * 解析LoginRequest对象
      */
-    private static String unquote(String str) {
-        str = str.trim();
-        if (str.startsWith("\"") && str.endsWith("\"")) {
-            str = str.substring(1, str.length() - 1);
+    private static AuthController.LoginRequest parseLoginRequest(JsonReader reader) {
+        AuthController.LoginRequest req = new AuthController.LoginRequest();
+        reader.beginObject();
+        while (reader.nextField()) {
+            if (reader.nameEquals("username")) {
+                req.username = reader.nextString();
+            } else if (reader.nameEquals("password")) {
+                req.password = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
         }
-        return str.replace("\\\"", "\"")
-                  .replace("\\n", "\n")
-                  .replace("\\r", "\r")
-                  .replace("\\t", "\t")
-                  .replace("\\\\", "\\");
+        return req;
     }
     
     /**
      * 创建成功响应JSON
      */
     public static String success(String message) {
-        return "{\"success\":true,\"message\":\"" + escapeJson(message) + "\"}";
+        return "{\"success\":true,\"message\":" + toJson(message) + "}";
     }
     
     /**
      * 创建错误响应JSON
      */
     public static String error(String message) {
-        return "{\"success\":false,\"message\":\"" + escapeJson(message) + "\"}";
+        return "{\"success\":false,\"message\":" + toJson(message) + "}";
     }
-}
+    
+    /**
+     * 请求体超过长度限制
+     */
+    public static class RequestTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
 
+        public RequestTooLargeException(long contentLength) {
+            super(contentLength >= 0
+                    ? "请求体过大: " + contentLength + " 字节，上限 " + MAX_REQUEST_BYTES + " 字节"
+                    : "请求体超过上限 " + MAX_REQUEST_BYTES + " 字节");
+        }
+    }
+}
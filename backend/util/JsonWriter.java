@@ -0,0 +1,336 @@
+package util;
+
+import model.Product;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * 流式JSON写入器
+ * 直接把UTF-8字节写入输出流（通过一个固定大小的缓冲区），字符串和数字都不经过中间String，
+ * 序列化大列表时堆上只有这一个缓冲区，而不是整个响应的多份拷贝。
+ */
+public class JsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private long written;  // 已写入输出流的字节数
+
+    public JsonWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * 写入任意支持的对象（Product、List、Map、String、Number、Boolean）
+     */
+    public JsonWriter value(Object obj) throws IOException {
+        if (obj == null) {
+            return nullValue();
+        }
+        if (obj instanceof Product) {
+            return product((Product) obj);
+        }
+        if (obj instanceof List) {
+            beginArray();
+            boolean first = true;
+            for (Object item : (List<?>) obj) {
+                if (!first) {
+                    comma();
+                }
+                first = false;
+                value(item);
+            }
+            return endArray();
+        }
+        if (obj instanceof Map) {
+            beginObject();
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                if (!first) {
+                    comma();
+                }
+                first = false;
+                name(entry.getKey().toString());
+                value(entry.getValue());
+            }
+            return endObject();
+        }
+        if (obj instanceof String) {
+            return string((String) obj);
+        }
+        if (obj instanceof Integer || obj instanceof Long || obj instanceof Short || obj instanceof Byte) {
+            return number(((Number) obj).longValue());
+        }
+        if (obj instanceof Double || obj instanceof Float) {
+            return number(((Number) obj).doubleValue());
+        }
+        if (obj instanceof Number) {
+            return raw(obj.toString());
+        }
+        if (obj instanceof Boolean) {
+            return bool((Boolean) obj);
+        }
+        return string(obj.toString());
+    }
+
+    /**
+     * 写入商品对象
+     */
+    public JsonWriter product(Product product) throws IOException {
+        long stockState = product.getStockState();
+        int quantity = Product.quantityOf(stockState);
+        double price = product.getPrice();
+        beginObject();
+        name("id").string(product.getId()).comma();
+        name("name").string(product.getName()).comma();
+        name("price").number(price).comma();
+        name("quantity").number(quantity).comma();
+        name("category").string(product.getCategory()).comma();
+        name("totalValue").number(price * quantity);
+        return endObject();
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return writeByte('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return writeByte('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return writeByte('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return writeByte(']');
+    }
+
+    public JsonWriter comma() throws IOException {
+        return writeByte(',');
+    }
+
+    /**
+     * 写入换行（NDJSON中分隔记录）
+     */
+    public JsonWriter newline() throws IOException {
+        return writeByte('\n');
+    }
+
+    /**
+     * 写入对象的字段名和冒号
+     */
+    public JsonWriter name(String name) throws IOException {
+        string(name);
+        return writeByte(':');
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        return writeBytes(NULL);
+    }
+
+    public JsonWriter bool(boolean value) throws IOException {
+        return writeBytes(value ? TRUE : FALSE);
+    }
+
+    /**
+     * 写入JSON字符串（转义并编码为UTF-8）
+     */
+    public JsonWriter string(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    ensure(2);
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else {
+                    ensure(1);
+                    buffer[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                ensure(1);
+                buffer[position++] = '?';  // 不成对的代理字符
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return writeByte('"');
+    }
+
+    /**
+     * 写入整数（直接生成数字字节）
+     */
+    public JsonWriter number(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return raw(Long.toString(value));
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        writeDigits(value, 1);
+        return this;
+    }
+
+    /**
+     * 写入浮点数
+     * 价格、金额这类最多两位小数的值直接按定点格式生成字节，其他值回退到 Double.toString
+     */
+    public JsonWriter number(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        if (Math.abs(value) < 1e15) {
+            long cents = Math.round(value * 100);
+            if (cents / 100.0 == value) {
+                ensure(24);
+                if (cents < 0) {
+                    buffer[position++] = '-';
+                    cents = -cents;
+                }
+                writeDigits(cents / 100, 1);
+                buffer[position++] = '.';
+                int fraction = (int) (cents % 100);
+                if (fraction == 0) {
+                    buffer[position++] = '0';
+                } else if (fraction % 10 == 0) {
+                    buffer[position++] = (byte) ('0' + fraction / 10);
+                } else {
+                    writeDigits(fraction, 2);
+                }
+                return this;
+            }
+        }
+        return raw(Double.toString(value));
+    }
+
+    /**
+     * 把缓冲区中的内容写入输出流
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * 已写出的总字节数（包括缓冲区中尚未刷出的部分）
+     */
+    public long getBytesWritten() {
+        return written + position;
+    }
+
+    /**
+     * 写入非负整数的十进制数字，至少minDigits位（不足补0）
+     */
+    private void writeDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeControl(char c) throws IOException {
+        ensure(6);
+        buffer[position++] = '\\';
+        switch (c) {
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+                break;
+        }
+    }
+
+    /**
+     * 写入ASCII文本（只用于少见的数字格式）
+     */
+    private JsonWriter raw(String text) throws IOException {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    private JsonWriter writeByte(char c) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    private JsonWriter writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图（HDR风格的对数-线性分桶）
+ * 每个2的幂区间再等分为32个子桶，相对误差约3%，覆盖1纳秒到约18分钟；
+ * 记录一次只是一次数组下标计算和一次原子加，可以在请求路径上使用，多个线程并发记录不需要加锁。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;           // 每个2的幂区间的子桶数
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;                 // 小于该值时每个值一个桶
+    private static final int MAX_EXPONENT = 40;                              // 2^40纳秒，约18分钟
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒（负数按0记录，超过上限的按最大的桶记录）
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+        count.increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    /**
+     * 记录的次数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 所有记录的耗时之和（纳秒）
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * 百分位数对应的耗时（所在桶的上界，纳秒）
+     * @param percentile 0-100
+     * @return 没有记录时返回0
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    /**
+     * 耗时不超过指定值的记录数（按桶统计，用于导出固定边界的累计分布）
+     */
+    public long countAtOrBelow(long nanos) {
+        int last = bucketOf(Math.max(0, nanos));
+        // 所在桶的上界超过nanos时，该桶不计入（保证不多计）
+        if (upperBoundOf(last) > nanos) {
+            last--;
+        }
+        long total = 0;
+        for (int i = 0; i <= last; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS
+                + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int offset = bucket - LINEAR_LIMIT;
+        int exponent = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long sub = offset % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
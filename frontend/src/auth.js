@@ -68,3 +68,19 @@ export async function authFetch(url, options = {}) {
     return response;
 }
 
+
+/**
+ * 订阅商品变更（/api/events，Server-Sent Events）
+ * EventSource 不能设置请求头，token放在查询参数中；断线后浏览器自动重连，重连时会再次收到 hello。
+ * @param onChanges 收到一批增量时调用，参数为 [{id, quantity, version, name?, price?, category?, deleted?}]
+ * @param onResync 连接建立（hello）或服务器要求重新加载（resync）时调用，此时应重新查询完整数据
+ * @returns 取消订阅的函数
+ */
+export function subscribeChanges(onChanges, onResync) {
+    const token = getToken();
+    const source = new EventSource(`/api/events?token=${encodeURIComponent(token || '')}`);
+    source.addEventListener('changes', (event) => onChanges(JSON.parse(event.data)));
+    source.addEventListener('hello', () => onResync());
+    source.addEventListener('resync', () => onResync());
+    return () => source.close();
+}
@@ -1,6 +1,6 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { Modal, Button, Table, InputNumber, Space, Tag, message } from 'antd';
-import { authFetch } from '../auth';
+import { authFetch, subscribeChanges } from '../auth';
 
 const API_BASE = '/api';
 
@@ -22,10 +22,49 @@ function LowStockModal({ visible, onClose }) {
         }
     };
 
+    // 打开时查询一次；打开期间订阅商品变更：已在列表中的商品就地更新，有商品新跌破阈值时才重新查询
+    // （事件流不可用时列表仍然可用，只是不再自动更新）
+    const thresholdRef = useRef(threshold);
+    thresholdRef.current = threshold;
+    const productsRef = useRef(products);
+    productsRef.current = products;
     useEffect(() => {
-        if (visible) {
-            checkLowStock();
+        if (!visible) {
+            return undefined;
         }
+        checkLowStock();
+        let reloadTimer = null;
+        const scheduleReload = () => {
+            if (!reloadTimer) {
+                reloadTimer = setTimeout(() => {
+                    reloadTimer = null;
+                    checkLowStock();
+                }, 500);
+            }
+        };
+        const unsubscribe = subscribeChanges((changes) => {
+            const byId = new Map(productsRef.current.map((product) => [product.id, product]));
+            let needReload = false;
+            for (const change of changes) {
+                const existing = byId.get(change.id);
+                if (change.deleted || change.quantity >= thresholdRef.current) {
+                    byId.delete(change.id);
+                } else if (existing) {
+                    byId.set(change.id, { ...existing, ...change });
+                } else {
+                    needReload = true;
+                }
+            }
+            productsRef.current = Array.from(byId.values());
+            setProducts(productsRef.current);
+            if (needReload) {
+                scheduleReload();
+            }
+        }, checkLowStock);
+        return () => {
+            clearTimeout(reloadTimer);
+            unsubscribe();
+        };
     }, [visible]);
 
     const columns = [
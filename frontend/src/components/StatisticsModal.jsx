@@ -1,7 +1,29 @@
-import React from 'react';
+import React, { useEffect } from 'react';
 import { Modal, Button, Statistic, Row, Col, Divider, Space, Tag } from 'antd';
+import { subscribeChanges } from '../auth';
+
+function StatisticsModal({ visible, onClose, stats, onRefresh }) {
+    // 打开期间订阅商品变更，有变化时刷新统计（每秒最多一次，未变化时服务器返回304）
+    useEffect(() => {
+        if (!visible || !onRefresh) {
+            return undefined;
+        }
+        let refreshTimer = null;
+        const scheduleRefresh = () => {
+            if (!refreshTimer) {
+                refreshTimer = setTimeout(() => {
+                    refreshTimer = null;
+                    onRefresh();
+                }, 1000);
+            }
+        };
+        const unsubscribe = subscribeChanges(scheduleRefresh, scheduleRefresh);
+        return () => {
+            clearTimeout(refreshTimer);
+            unsubscribe();
+        };
+    }, [visible]);
 
-function StatisticsModal({ visible, onClose, stats }) {
     return (
         <Modal
             title="📊 库存统计"
@@ -520,6 +520,7 @@ function ProductManagement() {
                 visible={statisticsModalVisible}
                 onClose={() => setStatisticsModalVisible(false)}
                 stats={stats}
+                onRefresh={loadStatistics}
             />
 
             {/* 低库存预警模态框 */}